@@ -1,16 +1,22 @@
 package org.spin.common.config;
 
 import org.spin.common.redis.lock.RedisDistributedLock;
+import org.spin.common.web.interceptor.PermissionCache;
 import org.spin.core.concurrent.DistributedLock;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -42,4 +48,32 @@ public class RedisExtendsAutoConfiguration {
             redisTemplate.setHashKeySerializer(redisSerializer);
         };
     }
+
+    /**
+     * 用户权限本地缓存，需要配置permission.cache.enabled=true开启，permission.cache.maxSize为0时不缓存
+     * <p>权限数据的变更方未发布失效消息时(见{@link PermissionCache#publishInvalidation})，
+     * 权限的收回最长延迟permission.cache.ttl(默认30秒)才会生效</p>
+     */
+    @Bean
+    @ConditionalOnBean(StringRedisTemplate.class)
+    @ConditionalOnProperty(prefix = "permission.cache", name = "enabled", havingValue = "true")
+    public PermissionCache permissionCache(StringRedisTemplate redisTemplate,
+                                           @Value("${permission.cache.maxSize:10000}") int maxSize,
+                                           @Value("${permission.cache.ttl:30000}") long ttl,
+                                           @Value("${permission.cache.negativeTtl:10000}") long negativeTtl) {
+        return new PermissionCache(key -> redisTemplate.opsForValue().get(key), maxSize, ttl, negativeTtl);
+    }
+
+    /**
+     * 订阅权限缓存失效消息
+     */
+    @Bean
+    @ConditionalOnBean(PermissionCache.class)
+    public RedisMessageListenerContainer permissionCacheListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                          PermissionCache permissionCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(permissionCache, new ChannelTopic(PermissionCache.INVALIDATE_CHANNEL));
+        return container;
+    }
 }
@@ -1,14 +1,19 @@
 package org.spin.common.config;
 
 import com.netflix.discovery.EurekaClient;
+import org.spin.common.internal.InternalAddressRegistry;
 import org.spin.common.redis.RedisUtil;
 import org.spin.common.service.remote.PermissionService;
 import org.spin.common.util.PermissionUtils;
 import org.spin.common.web.InternalWhiteList;
+import org.spin.common.web.config.AuthMetadataController;
+import org.spin.common.web.config.HandlerMetadataRegistry;
 import org.spin.common.web.config.RequestMappingBeanValidator;
 import org.spin.common.web.converter.JsonHttpMessageConverter;
 import org.spin.common.web.handler.ReplacementReturnValueHandler;
 import org.spin.common.web.handler.WrappedRequestResponseBodyProcessor;
+import org.spin.common.web.interceptor.PermissionCache;
+import org.spin.common.web.interceptor.RepeatSubmissionBodyFilter;
 import org.spin.common.web.interceptor.RepeatSubmissionInterceptor;
 import org.spin.common.web.interceptor.UserAuthInterceptor;
 import org.spin.common.web.interceptor.UserEnterpriseIntercepter;
@@ -18,6 +23,7 @@ import org.spin.core.gson.JsonSerializer;
 import org.spin.core.util.CollectionUtils;
 import org.spin.core.util.JsonUtils;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
@@ -65,11 +71,27 @@ public class WebMvcAutoConfiguration implements WebMvcConfigurer {
 
     private final EurekaClient eurekaClient;
 
+    private final ObjectProvider<PermissionCache> permissionCache;
+
+    @Value("${internal.addressMaxAge:90000}")
+    private long internalAddressMaxAge;
+
+    @Value("${repeatSubmission.localMaxSize:10000}")
+    private int repeatSubmissionLocalMaxSize;
+
+    @Value("${repeatSubmission.localMaxTtl:1000}")
+    private long repeatSubmissionLocalMaxTtl;
+
+    @Value("${repeatSubmission.maxBodySize:1048576}")
+    private int repeatSubmissionMaxBodySize;
+
     @Autowired(required = false)
-    public WebMvcAutoConfiguration(DiscoveryClient discoveryClient, RedisUtil redisUtil, EurekaClient eurekaClient) {
+    public WebMvcAutoConfiguration(DiscoveryClient discoveryClient, RedisUtil redisUtil, EurekaClient eurekaClient,
+                                   ObjectProvider<PermissionCache> permissionCache) {
         this.discoveryClient = discoveryClient;
         this.redisUtil = redisUtil;
         this.eurekaClient = eurekaClient;
+        this.permissionCache = permissionCache;
     }
 
     @Bean
@@ -83,6 +105,19 @@ public class WebMvcAutoConfiguration implements WebMvcConfigurer {
         return registration;
     }
 
+    /**
+     * 防重复提交接口的请求体预读，使请求体可以计入防重复提交的摘要
+     */
+    @Bean
+    public FilterRegistrationBean<RepeatSubmissionBodyFilter> repeatSubmissionBodyFilterRegistration() {
+        FilterRegistrationBean<RepeatSubmissionBodyFilter> registration = new FilterRegistrationBean<>();
+        registration.setFilter(new RepeatSubmissionBodyFilter(handlerMetadataRegistry(), repeatSubmissionMaxBodySize));
+        registration.addUrlPatterns("/*");
+        registration.setName("repeatSubmissionBodyFilter");
+        registration.setOrder(2);
+        return registration;
+    }
+
     @Bean
     public HttpMessageConverters customConverters() {
         Collection<HttpMessageConverter<?>> messageConverters = new ArrayList<>();
@@ -90,11 +125,34 @@ public class WebMvcAutoConfiguration implements WebMvcConfigurer {
         return new HttpMessageConverters(true, messageConverters);
     }
 
+    @Bean
+    public InternalAddressRegistry internalAddressRegistry() {
+        return new InternalAddressRegistry(discoveryClient, eurekaClient, internalAddressMaxAge);
+    }
+
+    @Bean
+    public HandlerMetadataRegistry handlerMetadataRegistry() {
+        return new HandlerMetadataRegistry();
+    }
+
+    /**
+     * 防重复提交拦截器，注册为Bean以便读取放行与拒绝的计数
+     */
+    @Bean
+    public RepeatSubmissionInterceptor repeatSubmissionInterceptor() {
+        return new RepeatSubmissionInterceptor(redisUtil, handlerMetadataRegistry(), repeatSubmissionLocalMaxSize, repeatSubmissionLocalMaxTtl);
+    }
+
     @Bean
     public RequestMappingBeanValidator requestMappingBeanValidator() {
         return new RequestMappingBeanValidator();
     }
 
+    @Bean
+    public AuthMetadataController authMetadataController() {
+        return new AuthMetadataController();
+    }
+
     /**
      * springfox Json To Gson
      */
@@ -114,9 +172,9 @@ public class WebMvcAutoConfiguration implements WebMvcConfigurer {
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new UserAuthInterceptor(discoveryClient,eurekaClient,redisUtil)).addPathPatterns("/**")
+        registry.addInterceptor(new UserAuthInterceptor(handlerMetadataRegistry(), internalAddressRegistry(), redisUtil, permissionCache.getIfAvailable())).addPathPatterns("/**")
             .excludePathPatterns("/swagger-ui.html/**", "/webjars/**", "/swagger-resources/**", "/v2/api-docs", "/error", "/job/executor/**");
-        registry.addInterceptor(new RepeatSubmissionInterceptor(redisUtil)).addPathPatterns("/**")
+        registry.addInterceptor(repeatSubmissionInterceptor()).addPathPatterns("/**")
             .excludePathPatterns("/swagger-ui.html/**", "/webjars/**", "/swagger-resources/**", "/v2/api-docs", "/error", "/job/executor/**");
         //企业拦截器
         registry.addInterceptor(new UserEnterpriseIntercepter(redisUtil)).addPathPatterns("/**")
@@ -125,7 +183,8 @@ public class WebMvcAutoConfiguration implements WebMvcConfigurer {
 
     @Bean
     @ConditionalOnBean(RequestMappingHandlerAdapter.class)
-    public InitializingBean procReturnValueHandlerBean(RequestMappingHandlerAdapter handlerAdapter, List<ReplacementReturnValueHandler> customerHandlers) {
+    public InitializingBean procReturnValueHandlerBean(RequestMappingHandlerAdapter handlerAdapter, List<ReplacementReturnValueHandler> customerHandlers,
+                                                       HandlerMetadataRegistry handlerMetadataRegistry) {
         return () -> {
             handlerAdapter.afterPropertiesSet();
             List<HandlerMethodReturnValueHandler> originHandlers = handlerAdapter.getReturnValueHandlers();
@@ -140,7 +199,7 @@ public class WebMvcAutoConfiguration implements WebMvcConfigurer {
 
             List<ReplacementReturnValueHandler> collect = null == customerHandlers ? Collections.emptyList() : customerHandlers.stream().sorted(Comparator.comparingInt(Ordered::getOrder)).collect(Collectors.toList());
             List<HandlerMethodReturnValueHandler> handlers = new ArrayList<>(originHandlers.size() + 1);
-            handlers.add(new WrappedRequestResponseBodyProcessor(handler));
+            handlers.add(new WrappedRequestResponseBodyProcessor(handler, handlerMetadataRegistry));
             for (HandlerMethodReturnValueHandler originHandler : originHandlers) {
                 ReplacementReturnValueHandler matched = getMatched(originHandler, collect);
                 handlers.add(null != matched ? matched : originHandler);
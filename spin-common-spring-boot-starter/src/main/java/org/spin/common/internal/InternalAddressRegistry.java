@@ -0,0 +1,295 @@
+package org.spin.common.internal;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 内部服务实例地址表
+ * <p>保存注册中心中除网关外所有服务实例的IP地址，用于判断请求是否来自内部服务；网关实例的地址单独保存。
+ * IPv4地址压缩为int保存在开放寻址的散列表中，其他地址保存在不可变集合中，查询为O(1)且不需要访问注册中心。</p>
+ * <p>地址表在每次Eureka本地缓存刷新(HeartbeatEvent)时重建。appsHashCode只统计各状态的实例数量，
+ * 实例滚动发布更换IP时保持不变，不能用于判断地址是否变化。
+ * 超过maxAge未重建时，由查询线程同步重建一次，作为事件丢失时的兜底</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class InternalAddressRegistry implements ApplicationListener<HeartbeatEvent>, InitializingBean {
+    private static final Logger logger = LoggerFactory.getLogger(InternalAddressRegistry.class);
+
+    /**
+     * 网关服务名，网关实例单独记录，网关转发的请求不属于内部调用
+     */
+    public static final String GATEWAY_SERVICE = "bnd-gateway";
+
+    /**
+     * 地址表默认的最长有效时间(毫秒)，与internal.addressMaxAge的默认值一致
+     */
+    public static final long DEFAULT_MAX_AGE = 90_000L;
+
+    private final DiscoveryClient discoveryClient;
+    private final EurekaClient eurekaClient;
+    private final long maxAge;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param discoveryClient 服务发现客户端
+     * @param eurekaClient    Eureka客户端
+     * @param maxAge          地址表的最长有效时间(毫秒)
+     */
+    public InternalAddressRegistry(DiscoveryClient discoveryClient, EurekaClient eurekaClient, long maxAge) {
+        this.discoveryClient = discoveryClient;
+        this.eurekaClient = eurekaClient;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        refresh();
+    }
+
+    @Override
+    public void onApplicationEvent(HeartbeatEvent event) {
+        refresh();
+    }
+
+    /**
+     * 地址是否属于内部服务实例
+     *
+     * @param address IP地址
+     * @return 是否属于内部服务实例
+     */
+    public boolean contains(String address) {
+        Snapshot current = current(address);
+        return null != current && current.internal.contains(address);
+    }
+
+    /**
+     * 地址是否属于网关实例
+     * <p>网关转发的请求同样来自网关地址，调用方需要自行区分网关自身发起的调用与转发的请求</p>
+     *
+     * @param address IP地址
+     * @return 是否属于网关实例
+     */
+    public boolean isGateway(String address) {
+        Snapshot current = current(address);
+        return null != current && current.gateway.contains(address);
+    }
+
+    private Snapshot current(String address) {
+        if (null == address || address.isEmpty()) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        if (null == current || System.currentTimeMillis() - current.refreshTime > maxAge) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * 重建地址表，同一时刻只允许一个线程重建，其他线程沿用当前地址表
+     */
+    public void refresh() {
+        if (null == discoveryClient || null == eurekaClient) {
+            return;
+        }
+        if (null != snapshot ? !rebuildLock.tryLock() : !lockInterruptibly()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            AddressSet.Builder internal = new AddressSet.Builder();
+            AddressSet.Builder gateway = new AddressSet.Builder();
+            for (String service : discoveryClient.getServices()) {
+                AddressSet.Builder target = GATEWAY_SERVICE.equalsIgnoreCase(service) ? gateway : internal;
+                List<InstanceInfo> instances = eurekaClient.getInstancesByVipAddress(service, false);
+                for (InstanceInfo instance : instances) {
+                    target.add(instance.getIPAddr());
+                }
+            }
+            snapshot = new Snapshot(internal.build(), gateway.build(), now);
+            logger.debug("内部服务地址表已重建: {}", snapshot.internal.size());
+        } catch (Exception e) {
+            logger.warn("内部服务地址表重建失败", e);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    public int size() {
+        Snapshot current = snapshot;
+        return null == current ? 0 : current.internal.size();
+    }
+
+    private boolean lockInterruptibly() {
+        try {
+            rebuildLock.lockInterruptibly();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static final class Snapshot {
+        private final AddressSet internal;
+        private final AddressSet gateway;
+        private final long refreshTime;
+
+        private Snapshot(AddressSet internal, AddressSet gateway, long refreshTime) {
+            this.internal = internal;
+            this.gateway = gateway;
+            this.refreshTime = refreshTime;
+        }
+    }
+
+    /**
+     * 不可变的地址集合，IPv4地址保存在{@link IpV4Set}中，其他地址保存在不可变集合中
+     */
+    private static final class AddressSet {
+        private final IpV4Set v4;
+        private final Set<String> others;
+
+        private AddressSet(IpV4Set v4, Set<String> others) {
+            this.v4 = v4;
+            this.others = others;
+        }
+
+        private boolean contains(String address) {
+            int packed = IpV4Set.pack(address);
+            return packed == IpV4Set.INVALID ? others.contains(address) : v4.contains(packed);
+        }
+
+        private int size() {
+            return v4.size() + others.size();
+        }
+
+        private static final class Builder {
+            private final Set<Integer> v4 = new HashSet<>();
+            private final Set<String> others = new HashSet<>();
+
+            private void add(String ip) {
+                if (null == ip || ip.isEmpty()) {
+                    return;
+                }
+                int packed = IpV4Set.pack(ip);
+                if (packed == IpV4Set.INVALID) {
+                    others.add(ip);
+                } else {
+                    v4.add(packed);
+                }
+            }
+
+            private AddressSet build() {
+                return new AddressSet(new IpV4Set(v4), Collections.unmodifiableSet(others));
+            }
+        }
+    }
+
+    /**
+     * 不可变的IPv4地址集合，线性探测的开放寻址散列表，0.0.0.0作为空槽单独记录
+     */
+    static final class IpV4Set {
+        static final int INVALID = -1;
+
+        private final int[] table;
+        private final int mask;
+        private final int size;
+        private final boolean containsZero;
+
+        IpV4Set(Set<Integer> addresses) {
+            int capacity = 4;
+            while (capacity < addresses.size() * 2) {
+                capacity <<= 1;
+            }
+            table = new int[capacity];
+            mask = capacity - 1;
+            boolean zero = false;
+            for (int address : addresses) {
+                if (address == 0) {
+                    zero = true;
+                    continue;
+                }
+                int idx = hash(address) & mask;
+                while (table[idx] != 0) {
+                    idx = (idx + 1) & mask;
+                }
+                table[idx] = address;
+            }
+            containsZero = zero;
+            size = addresses.size();
+        }
+
+        boolean contains(int address) {
+            if (address == 0) {
+                return containsZero;
+            }
+            int idx = hash(address) & mask;
+            int value;
+            while ((value = table[idx]) != 0) {
+                if (value == address) {
+                    return true;
+                }
+                idx = (idx + 1) & mask;
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * 将点分十进制的IPv4地址压缩为int，不是合法的IPv4地址时返回{@link #INVALID}
+         * <p>255.255.255.255与INVALID相同，按非IPv4地址处理</p>
+         */
+        static int pack(String address) {
+            int result = 0;
+            int part = 0;
+            int digits = 0;
+            int dots = 0;
+            for (int i = 0; i < address.length(); ++i) {
+                char c = address.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    part = part * 10 + (c - '0');
+                    if (++digits > 3 || part > 255) {
+                        return INVALID;
+                    }
+                } else if (c == '.' && digits > 0 && dots < 3) {
+                    result = (result << 8) | part;
+                    part = 0;
+                    digits = 0;
+                    ++dots;
+                } else {
+                    return INVALID;
+                }
+            }
+            if (dots != 3 || digits == 0) {
+                return INVALID;
+            }
+            return (result << 8) | part;
+        }
+
+        private static int hash(int address) {
+            int h = address * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.spin.common.vo;
+
+import java.util.List;
+
+/**
+ * 接口授权信息
+ * <p>由服务对外发布，网关据此在转发前完成认证与可见范围校验</p>
+ * <p>Created by xuweinan on 2019/12/15</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class ApiAuthInfo {
+
+    /**
+     * 接口路径(Ant风格，包含context-path)
+     */
+    private String path;
+
+    /**
+     * 授权资源名称
+     */
+    private String name;
+
+    /**
+     * 是否需要认证
+     */
+    private boolean auth;
+
+    /**
+     * 所需权限
+     */
+    private List<String> permissions;
+
+    /**
+     * 是否仅允许内部调用
+     */
+    private boolean internal;
+
+    /**
+     * 请求方法，为空表示不限
+     */
+    private List<String> methods;
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isAuth() {
+        return auth;
+    }
+
+    public void setAuth(boolean auth) {
+        this.auth = auth;
+    }
+
+    public List<String> getPermissions() {
+        return permissions;
+    }
+
+    public void setPermissions(List<String> permissions) {
+        this.permissions = permissions;
+    }
+
+    public boolean isInternal() {
+        return internal;
+    }
+
+    public void setInternal(boolean internal) {
+        this.internal = internal;
+    }
+
+    public List<String> getMethods() {
+        return methods;
+    }
+
+    public void setMethods(List<String> methods) {
+        this.methods = methods;
+    }
+}
@@ -0,0 +1,121 @@
+package org.spin.common.web.config;
+
+import org.spin.common.vo.ApiAuthInfo;
+import org.spin.common.web.ScopeType;
+import org.spin.common.web.annotation.Auth;
+import org.spin.common.web.annotation.Plain;
+import org.spin.core.util.DigestUtils;
+import org.spin.core.util.JsonUtils;
+import org.spin.core.util.StringUtils;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 接口授权信息发布
+ * <p>收集所有标注了{@link Auth}的Web接口，供网关建立授权索引，在转发前拦截未认证或仅限内部调用的请求。</p>
+ * <p>接口信息在首次请求时生成，附带版本号(ETag)，网关通过If-None-Match增量拉取</p>
+ * <p>接口仅允许内部服务与网关自身直接调用，经网关转发的请求由{@link org.spin.common.web.interceptor.UserAuthInterceptor}拒绝</p>
+ * <p>Created by xuweinan on 2019/12/15</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@RestController
+public class AuthMetadataController implements ApplicationContextAware {
+    public static final String PATH = "/internal/auth/metadata";
+
+    private ApplicationContext applicationContext;
+    private volatile AuthMetadata metadata;
+
+    @Override
+    public void setApplicationContext(@NonNull ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Plain
+    @Auth(value = false, scope = ScopeType.INTERNAL)
+    @GetMapping(PATH)
+    public AuthMetadata metadata(ServletWebRequest request) {
+        AuthMetadata m = metadata;
+        if (null == m) {
+            m = buildMetadata(request.getRequest().getContextPath());
+            metadata = m;
+        }
+        if (request.checkNotModified(m.getVersion())) {
+            return null;
+        }
+        return m;
+    }
+
+    private AuthMetadata buildMetadata(String contextPath) {
+        String prefix = StringUtils.trimToEmpty(contextPath);
+        if (prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        List<ApiAuthInfo> apis = new ArrayList<>();
+        Map<String, HandlerMapping> allRequestMappings = BeanFactoryUtils.beansOfTypeIncludingAncestors(applicationContext, HandlerMapping.class, true, false);
+        for (HandlerMapping handlerMapping : allRequestMappings.values()) {
+            if (!(handlerMapping instanceof RequestMappingHandlerMapping)) {
+                continue;
+            }
+            for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : ((RequestMappingHandlerMapping) handlerMapping).getHandlerMethods().entrySet()) {
+                Auth authAnno = AnnotatedElementUtils.getMergedAnnotation(entry.getValue().getMethod(), Auth.class);
+                if (null == authAnno) {
+                    continue;
+                }
+                List<String> methods = entry.getKey().getMethodsCondition().getMethods().stream()
+                    .map(RequestMethod::name).sorted().collect(Collectors.toList());
+                for (String pattern : entry.getKey().getPatternsCondition().getPatterns()) {
+                    ApiAuthInfo api = new ApiAuthInfo();
+                    api.setPath(prefix + (pattern.startsWith("/") ? pattern : "/" + pattern));
+                    api.setName(authAnno.name());
+                    api.setAuth(authAnno.value());
+                    api.setPermissions(Arrays.asList(authAnno.permissions()));
+                    api.setInternal(authAnno.scope() != ScopeType.OPEN);
+                    api.setMethods(methods);
+                    apis.add(api);
+                }
+            }
+        }
+        apis.sort(Comparator.comparing(ApiAuthInfo::getPath).thenComparing(it -> it.getMethods().toString()));
+        AuthMetadata result = new AuthMetadata();
+        result.setApis(apis);
+        result.setVersion(DigestUtils.md5HexL(JsonUtils.toJson(apis)));
+        return result;
+    }
+
+    public static class AuthMetadata {
+        private String version;
+        private List<ApiAuthInfo> apis;
+
+        public String getVersion() {
+            return version;
+        }
+
+        public void setVersion(String version) {
+            this.version = version;
+        }
+
+        public List<ApiAuthInfo> getApis() {
+            return apis;
+        }
+
+        public void setApis(List<ApiAuthInfo> apis) {
+            this.apis = apis;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.spin.common.web.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.common.web.ScopeType;
+import org.spin.common.web.annotation.Auth;
+import org.spin.common.web.annotation.Plain;
+import org.spin.common.web.annotation.RepeatSubmission;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Web接口元数据注册表
+ * <p>容器刷新完成时遍历所有{@link RequestMappingHandlerMapping}中的接口方法，一次性解析{@link Auth}、{@link RepeatSubmission}、
+ * 返回值包装策略等注解信息，保存为不可变的映射表，拦截器与返回值处理器每次请求只需要一次查表。</p>
+ * <p>注册表构建之前或不在注册表中的方法(如运行时动态注册的接口)，查询时即时解析，结果不缓存</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class HandlerMetadataRegistry implements ApplicationContextAware, ApplicationListener<ContextRefreshedEvent> {
+    private static final Logger logger = LoggerFactory.getLogger(HandlerMetadataRegistry.class);
+
+    private ApplicationContext applicationContext;
+    private volatile Map<Method, HandlerMetadata> registry = Collections.emptyMap();
+    private volatile List<RequestMappingHandlerMapping> repeatSubmissionMappings = Collections.emptyList();
+
+    @Override
+    public void setApplicationContext(@NonNull ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull ContextRefreshedEvent event) {
+        if (event.getApplicationContext() == applicationContext) {
+            build();
+        }
+    }
+
+    /**
+     * 获取接口方法的元数据
+     *
+     * @param method 接口方法
+     * @return 元数据
+     */
+    public HandlerMetadata get(Method method) {
+        HandlerMetadata metadata = registry.get(method);
+        return null == metadata ? new HandlerMetadata(method) : metadata;
+    }
+
+    /**
+     * 获取接口方法的元数据
+     *
+     * @param handlerMethod 接口方法
+     * @return 元数据
+     */
+    public HandlerMetadata get(HandlerMethod handlerMethod) {
+        return get(handlerMethod.getMethod());
+    }
+
+    /**
+     * 查找请求对应的接口方法上的防重复提交注解，在DispatcherServlet之前(如过滤器中)使用
+     * <p>没有任何接口标注{@link RepeatSubmission}时直接返回null，不进行接口匹配</p>
+     *
+     * @param request 请求
+     * @return 防重复提交注解，接口不存在或没有标注时返回null
+     */
+    public RepeatSubmission findRepeatSubmission(HttpServletRequest request) {
+        for (RequestMappingHandlerMapping mapping : repeatSubmissionMappings) {
+            try {
+                HandlerExecutionChain chain = mapping.getHandler(request);
+                if (null != chain && chain.getHandler() instanceof HandlerMethod) {
+                    return get((HandlerMethod) chain.getHandler()).getRepeatSubmission();
+                }
+            } catch (Exception e) {
+                logger.debug("接口匹配失败: {}", request.getRequestURI(), e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return registry.size();
+    }
+
+    private void build() {
+        List<HandlerMethod> handlerMethods = new ArrayList<>();
+        List<RequestMappingHandlerMapping> mappings = new ArrayList<>();
+        Map<String, HandlerMapping> allRequestMappings = BeanFactoryUtils.beansOfTypeIncludingAncestors(applicationContext, HandlerMapping.class, true, false);
+        for (HandlerMapping handlerMapping : allRequestMappings.values()) {
+            if (handlerMapping instanceof RequestMappingHandlerMapping) {
+                mappings.add((RequestMappingHandlerMapping) handlerMapping);
+                handlerMethods.addAll(((RequestMappingHandlerMapping) handlerMapping).getHandlerMethods().values());
+            }
+        }
+        build(handlerMethods);
+        repeatSubmissionMappings = registry.values().stream().anyMatch(it -> null != it.getRepeatSubmission())
+            ? Collections.unmodifiableList(mappings) : Collections.emptyList();
+    }
+
+    void build(Collection<HandlerMethod> handlerMethods) {
+        Map<Method, Map<Class<?>, Boolean>> wrapPolicies = new HashMap<>();
+        for (HandlerMethod handlerMethod : handlerMethods) {
+            Class<?> beanType = handlerMethod.getBeanType();
+            Method method = handlerMethod.getMethod();
+            wrapPolicies.computeIfAbsent(method, k -> new HashMap<>(2))
+                .computeIfAbsent(beanType, k -> wrapResponse(beanType, method));
+        }
+        Map<Method, HandlerMetadata> result = new HashMap<>(wrapPolicies.size() * 2);
+        wrapPolicies.forEach((method, policies) -> result.put(method, new HandlerMetadata(method,
+            policies.size() == 1 ? Collections.singletonMap(policies.keySet().iterator().next(), policies.values().iterator().next())
+                : Collections.unmodifiableMap(policies))));
+        registry = Collections.unmodifiableMap(result);
+        logger.info("Web接口元数据注册表已建立: {}", result.size());
+    }
+
+    /**
+     * 是否包装返回值: 标注了{@link ResponseBody}与{@link Auth}，并且没有标注{@link Plain}
+     *
+     * @param containingClass 接口所在的类
+     * @param method          接口方法
+     * @return 是否包装返回值
+     */
+    public static boolean wrapResponse(Class<?> containingClass, Method method) {
+        return (AnnotatedElementUtils.hasAnnotation(containingClass, ResponseBody.class) || AnnotatedElementUtils.hasAnnotation(method, ResponseBody.class))
+            && (AnnotatedElementUtils.hasAnnotation(containingClass, Auth.class) || AnnotatedElementUtils.hasAnnotation(method, Auth.class))
+            && !AnnotatedElementUtils.hasAnnotation(containingClass, Plain.class)
+            && !AnnotatedElementUtils.hasAnnotation(method, Plain.class);
+    }
+
+    /**
+     * 单个接口方法的元数据，创建后不可变
+     */
+    public static final class HandlerMetadata {
+        private final Method method;
+        private final Auth auth;
+        private final RepeatSubmission repeatSubmission;
+        private final boolean innerApi;
+        private final Map<Class<?>, Boolean> wrapPolicies;
+
+        private HandlerMetadata(Method method) {
+            this(method, Collections.emptyMap());
+        }
+
+        private HandlerMetadata(Method method, Map<Class<?>, Boolean> wrapPolicies) {
+            this.method = method;
+            this.auth = AnnotatedElementUtils.getMergedAnnotation(method, Auth.class);
+            this.repeatSubmission = method.getAnnotation(RepeatSubmission.class);
+            this.innerApi = null != auth && (auth.scope() == ScopeType.INTERNAL || auth.scope() == ScopeType.OPEN_UNAUTH);
+            this.wrapPolicies = wrapPolicies;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * 合并后的{@link Auth}注解，未标注时为null
+         */
+        public Auth getAuth() {
+            return auth;
+        }
+
+        /**
+         * 防重复提交策略，未标注时为null
+         */
+        public RepeatSubmission getRepeatSubmission() {
+            return repeatSubmission;
+        }
+
+        /**
+         * 是否仅允许内部调用(INTERNAL或OPEN_UNAUTH)
+         */
+        public boolean isInnerApi() {
+            return innerApi;
+        }
+
+        /**
+         * 在指定的类中，是否包装返回值
+         *
+         * @param containingClass 接口所在的类
+         * @return 是否包装返回值
+         */
+        public boolean isWrapResponse(Class<?> containingClass) {
+            Boolean wrap = wrapPolicies.get(containingClass);
+            return null == wrap ? wrapResponse(containingClass, method) : wrap;
+        }
+    }
+}
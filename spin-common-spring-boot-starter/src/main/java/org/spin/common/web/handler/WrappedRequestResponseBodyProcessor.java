@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.spin.common.web.RestfulResponse;
 import org.spin.common.web.annotation.Auth;
 import org.spin.common.web.annotation.Plain;
+import org.spin.common.web.config.HandlerMetadataRegistry;
 import org.spin.core.util.BeanUtils;
 import org.spin.core.util.ReflectionUtils;
 import org.springframework.core.MethodParameter;
@@ -47,6 +48,7 @@ public class WrappedRequestResponseBodyProcessor implements HandlerMethodReturnV
     private static Method writeWithMessageConverters;
 
     private RequestResponseBodyMethodProcessor target;
+    private HandlerMetadataRegistry handlerMetadataRegistry;
     private List<HttpMessageConverter<?>> messageConverters;
     private final List<MediaType> allSupportedMediaTypes;
 
@@ -63,7 +65,12 @@ public class WrappedRequestResponseBodyProcessor implements HandlerMethodReturnV
     }
 
     public WrappedRequestResponseBodyProcessor(RequestResponseBodyMethodProcessor target) {
+        this(target, new HandlerMetadataRegistry());
+    }
+
+    public WrappedRequestResponseBodyProcessor(RequestResponseBodyMethodProcessor target, HandlerMetadataRegistry handlerMetadataRegistry) {
         this.target = target;
+        this.handlerMetadataRegistry = handlerMetadataRegistry;
         this.messageConverters = BeanUtils.getFieldValue(target, "messageConverters");
         this.allSupportedMediaTypes = getAllSupportedMediaTypes(this.messageConverters);
 
@@ -72,6 +79,10 @@ public class WrappedRequestResponseBodyProcessor implements HandlerMethodReturnV
 
     @Override
     public boolean supportsReturnType(@NonNull MethodParameter returnType) {
+        Method method = returnType.getMethod();
+        if (null != method) {
+            return handlerMetadataRegistry.get(method).isWrapResponse(returnType.getContainingClass());
+        }
         return (AnnotatedElementUtils.hasAnnotation(returnType.getContainingClass(), ResponseBody.class) || returnType.hasMethodAnnotation(ResponseBody.class))
             && (AnnotatedElementUtils.hasAnnotation(returnType.getContainingClass(), Auth.class) || returnType.hasMethodAnnotation(Auth.class))
             && !AnnotatedElementUtils.hasAnnotation(returnType.getContainingClass(), Plain.class)
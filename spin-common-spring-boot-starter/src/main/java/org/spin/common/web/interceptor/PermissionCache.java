@@ -0,0 +1,378 @@
+package org.spin.common.web.interceptor;
+
+import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.core.util.StringUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 用户权限本地缓存
+ * <p>作为Redis之上的一级缓存，缓存解析后的token权限组、用户角色、角色菜单与权限组菜单，稳定状态下权限校验不需要访问Redis。
+ * 菜单url编译为{@link PermissionMatcher}后缓存，角色菜单按角色集合缓存，任意角色的菜单失效时清空全部角色集合的匹配器，
+ * 匹配器的过期时间不晚于构建时所用的最早过期的角色菜单条目。
+ * 各区域按条目数限制容量，并设置过期时间；Redis中不存在的键同样缓存，但使用更短的过期时间。</p>
+ * <p>权限数据变更时，由变更方向{@link #INVALIDATE_CHANNEL}频道发布失效消息(见{@link #publishInvalidation})，
+ * 所有节点收到后清除对应条目。消息丢失时(如订阅连接断开期间)由过期时间兜底</p>
+ * <p>没有发布失效消息时，Redis中的权限变更最长延迟一个过期时间才会生效，权限的收回同样如此。
+ * 因此缓存默认不开启(permission.cache.enabled)，开启时过期时间应不超过业务可以接受的收回延迟</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class PermissionCache implements MessageListener {
+    private static final Logger logger = LoggerFactory.getLogger(PermissionCache.class);
+
+    /**
+     * 权限缓存失效消息的频道，消息格式为"区域:键"，键为*时清空整个区域，消息为*时清空所有区域
+     */
+    public static final String INVALIDATE_CHANNEL = "user:permission:invalidate";
+
+    /**
+     * 缓存区域
+     */
+    public enum Region {
+        /**
+         * token对应的权限组，键为token
+         */
+        TOKEN,
+
+        /**
+         * 用户角色集合，键为"用户ID:权限组:业务ID"
+         */
+        ROLES,
+
+        /**
+         * 角色对应的菜单url集合，键为角色ID
+         */
+        ROLE_MENUS,
+
+        /**
+         * 权限组下所有菜单url(已编译)，键为业务ID
+         */
+        MENUS
+    }
+
+    private final Function<String, String> reader;
+    private final Area<String> tokens;
+    private final Area<List<String>> roles;
+    private final Area<List<String>> roleMenus;
+    private final Area<PermissionMatcher> menus;
+    private final Area<PermissionMatcher> roleMatchers;
+
+    /**
+     * 构造权限缓存
+     *
+     * @param reader      Redis读取函数，键不存在时返回null
+     * @param maxSize     每个区域的最大条目数，小于等于0时不缓存，每次直接读取Redis
+     * @param ttl         条目的过期时间(毫秒)
+     * @param negativeTtl Redis中不存在的键的过期时间(毫秒)
+     */
+    public PermissionCache(Function<String, String> reader, int maxSize, long ttl, long negativeTtl) {
+        this.reader = reader;
+        this.tokens = new Area<>(maxSize, ttl, negativeTtl, "");
+        this.roles = new Area<>(maxSize, ttl, negativeTtl, Collections.emptyList());
+        this.roleMenus = new Area<>(maxSize, ttl, negativeTtl, Collections.emptyList());
+        this.menus = new Area<>(maxSize, ttl, negativeTtl, PermissionMatcher.EMPTY);
+        this.roleMatchers = new Area<>(maxSize, ttl, negativeTtl, PermissionMatcher.EMPTY);
+    }
+
+    /**
+     * 获取token对应的权限组与业务ID(已去除多余引号)，不存在时返回null
+     *
+     * @param token token
+     * @return 权限组,业务ID
+     */
+    public String getAuthGroup(String token) {
+        String value = tokens.get(token, k -> {
+            String v = reader.apply(UserAuthInterceptor.USER_TOKEN_AUTH_GROUP + k);
+            return StringUtils.isEmpty(v) ? null : v.replaceAll("\\\"", "");
+        });
+        return StringUtils.isEmpty(value) ? null : value;
+    }
+
+    /**
+     * 获取用户在权限组下的角色ID集合
+     *
+     * @param userId     用户ID
+     * @param authGroup  权限组
+     * @param businessId 业务ID
+     * @return 角色ID集合，不存在时返回空集合
+     */
+    public List<String> getRoleIds(Long userId, String authGroup, String businessId) {
+        return roles.get(userId + ":" + authGroup + ":" + businessId, k -> {
+            String v = reader.apply(UserAuthInterceptor.USER_PERMISSION_ROLES + k);
+            if (StringUtils.isEmpty(v)) {
+                return null;
+            }
+            List<String> ids = new ArrayList<>();
+            for (String id : v.replaceAll("\\\"", "").split(",")) {
+                if (StringUtils.isNotEmpty(id)) {
+                    ids.add(id);
+                }
+            }
+            return Collections.unmodifiableList(ids);
+        });
+    }
+
+    /**
+     * 获取角色对应的菜单url集合
+     *
+     * @param roleId 角色ID
+     * @return 菜单url集合，不存在时返回空集合
+     */
+    public List<String> getRoleMenus(int roleId) {
+        return roleMenus.get(String.valueOf(roleId), k -> parseList(reader.apply(UserAuthInterceptor.USER_PERMISSION_ROLE_MENUS + k)));
+    }
+
+    /**
+     * 获取角色集合的菜单url匹配器，由各角色的菜单url合并编译
+     *
+     * @param roleIds 角色ID集合
+     * @return 匹配器，没有任何菜单时返回{@link PermissionMatcher#EMPTY}
+     */
+    public PermissionMatcher getRoleMatcher(Collection<String> roleIds) {
+        int[] ids = new int[roleIds.size()];
+        int i = 0;
+        for (String roleId : roleIds) {
+            ids[i++] = Integer.parseInt(roleId);
+        }
+        Arrays.sort(ids);
+        StringBuilder fingerprint = new StringBuilder(ids.length * 4);
+        for (int id : ids) {
+            fingerprint.append(id).append(',');
+        }
+        return roleMatchers.get(fingerprint.toString(), k -> {
+            List<String> urls = new ArrayList<>();
+            for (int id : ids) {
+                urls.addAll(getRoleMenus(id));
+            }
+            return urls.isEmpty() ? null : PermissionMatcher.compile(urls);
+        }, () -> {
+            long deadline = Long.MAX_VALUE;
+            for (int id : ids) {
+                deadline = Math.min(deadline, roleMenus.expireAt(String.valueOf(id)));
+            }
+            return deadline;
+        });
+    }
+
+    /**
+     * 获取权限组下所有菜单url的匹配器
+     *
+     * @param businessId 业务ID
+     * @return 匹配器，没有任何菜单时返回{@link PermissionMatcher#EMPTY}
+     */
+    public PermissionMatcher getMenuMatcher(String businessId) {
+        return menus.get(businessId, k -> {
+            List<String> urls = parseList(reader.apply(UserAuthInterceptor.USER_PERMISSION_MENUS + k));
+            return null == urls ? null : PermissionMatcher.compile(urls);
+        });
+    }
+
+    /**
+     * 清除本节点的缓存条目
+     *
+     * @param region 缓存区域，为null时清空所有区域
+     * @param key    键，为null或*时清空整个区域
+     */
+    public void invalidate(Region region, String key) {
+        if (null == region) {
+            for (Region r : Region.values()) {
+                area(r).invalidate(null);
+            }
+        } else {
+            area(region).invalidate(StringUtils.isEmpty(key) || "*".equals(key) ? null : key);
+        }
+        if (null == region || Region.ROLE_MENUS == region) {
+            roleMatchers.invalidate(null);
+        }
+    }
+
+    /**
+     * 处理失效消息
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8).trim();
+        if ("*".equals(body)) {
+            invalidate(null, null);
+            logger.info("权限缓存已清空");
+            return;
+        }
+        int idx = body.indexOf(':');
+        Region region = null;
+        if (idx > 0) {
+            try {
+                region = Region.valueOf(body.substring(0, idx).toUpperCase());
+            } catch (IllegalArgumentException ignore) {
+                // 无法识别的区域
+            }
+        }
+        if (null == region) {
+            logger.warn("无法识别的权限缓存失效消息: {}", body);
+            return;
+        }
+        invalidate(region, body.substring(idx + 1));
+        logger.debug("权限缓存失效: {}", body);
+    }
+
+    /**
+     * 发布失效消息，所有节点(包括本节点)收到后清除对应条目
+     * <p>应在Redis中的权限数据写入完成后调用</p>
+     *
+     * @param redisTemplate redis操作模板
+     * @param region        缓存区域，为null时清空所有区域
+     * @param key           键，为null或*时清空整个区域
+     */
+    public static void publishInvalidation(StringRedisTemplate redisTemplate, Region region, String key) {
+        String message = null == region ? "*" : (region.name() + ":" + (StringUtils.isEmpty(key) ? "*" : key));
+        redisTemplate.convertAndSend(INVALIDATE_CHANNEL, message);
+    }
+
+    public int size() {
+        return tokens.map.size() + roles.map.size() + roleMenus.map.size() + menus.map.size() + roleMatchers.map.size();
+    }
+
+    private Area<?> area(Region region) {
+        switch (region) {
+            case TOKEN:
+                return tokens;
+            case ROLES:
+                return roles;
+            case ROLE_MENUS:
+                return roleMenus;
+            default:
+                return menus;
+        }
+    }
+
+    private static List<String> parseList(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return null;
+        }
+        List<String> list = JSON.parseArray(value, String.class);
+        return null == list ? null : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 单个缓存区域
+     * <p>加载期间如果区域被清除(版本号变化)，加载结果不写入缓存，避免失效消息先于旧值写入而丢失</p>
+     */
+    private static final class Area<V> {
+        private final Map<String, Entry<V>> map = new ConcurrentHashMap<>();
+        private final ReentrantLock evictLock = new ReentrantLock();
+        private final AtomicLong version = new AtomicLong();
+        private final int maxSize;
+        private final long ttl;
+        private final long negativeTtl;
+        private final V empty;
+
+        private Area(int maxSize, long ttl, long negativeTtl, V empty) {
+            this.maxSize = maxSize;
+            this.ttl = ttl;
+            this.negativeTtl = negativeTtl;
+            this.empty = empty;
+        }
+
+        /**
+         * 获取缓存值，未命中时通过loader加载，loader返回null表示键不存在，此时以空值缓存
+         */
+        private V get(String key, Function<String, V> loader) {
+            return get(key, loader, null);
+        }
+
+        /**
+         * 获取缓存值，新条目的过期时间不晚于deadline(加载完成后计算)，已经到期时不缓存
+         */
+        private V get(String key, Function<String, V> loader, LongSupplier deadline) {
+            if (maxSize <= 0) {
+                V value = loader.apply(key);
+                return null == value ? empty : value;
+            }
+            long now = System.currentTimeMillis();
+            Entry<V> entry = map.get(key);
+            if (null != entry && entry.expireAt > now) {
+                return entry.value;
+            }
+            long ver = version.get();
+            V value = loader.apply(key);
+            long expire = null == value ? negativeTtl : ttl;
+            if (null == value) {
+                value = empty;
+            }
+            long expireAt = null == deadline ? now + expire : Math.min(now + expire, deadline.getAsLong());
+            if (expire > 0 && expireAt > now && version.get() == ver) {
+                if (map.size() >= maxSize) {
+                    evict(now);
+                }
+                map.put(key, new Entry<>(value, expireAt));
+            }
+            return value;
+        }
+
+        /**
+         * 条目的过期时间，条目不存在时返回0
+         */
+        private long expireAt(String key) {
+            Entry<V> entry = map.get(key);
+            return null == entry ? 0L : entry.expireAt;
+        }
+
+        private void invalidate(String key) {
+            version.incrementAndGet();
+            if (null == key) {
+                map.clear();
+            } else {
+                map.remove(key);
+            }
+        }
+
+        /**
+         * 容量已满时淘汰条目：优先清理已过期的条目，仍不足时按遍历顺序淘汰至容量的3/4
+         */
+        private void evict(long now) {
+            if (!evictLock.tryLock()) {
+                return;
+            }
+            try {
+                map.values().removeIf(e -> e.expireAt <= now);
+                int target = maxSize - (maxSize >> 2);
+                Iterator<Entry<V>> it = map.values().iterator();
+                while (map.size() > target && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            } finally {
+                evictLock.unlock();
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.spin.common.web.interceptor;
+
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 预编译的权限url匹配器
+ * <p>将一组Ant风格的url模式编译为按路径段组织的前缀树，支持字面量、段内通配(*、?、{变量})与**。
+ * 匹配时沿请求路径逐段推进当前可达的节点集合(不回溯)，耗时与路径长度相关，与模式数量基本无关，结果与
+ * {@link AntPathMatcher}逐个匹配一致。</p>
+ * <p>带正则约束的路径变量({id:\d+})、不以/开头的模式，以及以/结尾的请求路径，由{@link AntPathMatcher}逐个匹配。
+ * 编译完成后只读，可多线程并发使用</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class PermissionMatcher {
+    private static final AntPathMatcher ANT_PATH_MATCHER = new AntPathMatcher();
+    private static final String DOUBLE_WILDCARD = "**";
+
+    /**
+     * 不包含任何模式的匹配器，不匹配任何路径
+     */
+    public static final PermissionMatcher EMPTY = new PermissionMatcher(new ArrayList<>(0));
+
+    private final Node root = new Node(null);
+    private final List<String> patterns;
+    private final List<String> fallback = new ArrayList<>(0);
+
+    private PermissionMatcher(List<String> patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * 编译url模式，空字符串与重复的模式会被忽略
+     *
+     * @param patterns url模式
+     * @return 匹配器
+     */
+    public static PermissionMatcher compile(Collection<String> patterns) {
+        if (null == patterns || patterns.isEmpty()) {
+            return EMPTY;
+        }
+        Set<String> distinct = new LinkedHashSet<>(patterns.size());
+        for (String pattern : patterns) {
+            if (null != pattern && !pattern.isEmpty()) {
+                distinct.add(pattern);
+            }
+        }
+        if (distinct.isEmpty()) {
+            return EMPTY;
+        }
+        PermissionMatcher matcher = new PermissionMatcher(new ArrayList<>(distinct));
+        for (String pattern : distinct) {
+            matcher.insert(pattern);
+        }
+        return matcher;
+    }
+
+    /**
+     * 路径是否与任意一个模式匹配
+     *
+     * @param path 请求路径
+     * @return 是否匹配
+     */
+    public boolean matches(String path) {
+        if (null == path || path.isEmpty() || patterns.isEmpty()) {
+            return false;
+        }
+        if (path.charAt(0) != '/' || path.charAt(path.length() - 1) == '/') {
+            return matchesLinear(patterns, path);
+        }
+        return walk(path) || (!fallback.isEmpty() && matchesLinear(fallback, path));
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+
+    private void insert(String pattern) {
+        if (pattern.charAt(0) != '/' || pattern.charAt(pattern.length() - 1) == '/' || hasRegexVariable(pattern)) {
+            fallback.add(pattern);
+            return;
+        }
+        Node node = root;
+        int start = 1;
+        int len = pattern.length();
+        for (int i = 1; i <= len; ++i) {
+            if (i == len || pattern.charAt(i) == '/') {
+                if (i > start) {
+                    node = node.child(pattern.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        node.terminal = true;
+    }
+
+    /**
+     * 逐段推进可达节点集合，**节点在进入时即加入集合(匹配0个路径段)，并且可以匹配任意路径段后停留在原地
+     */
+    private boolean walk(String path) {
+        List<Node> current = new ArrayList<>(4);
+        List<Node> next = new ArrayList<>(4);
+        enter(current, root);
+        int start = 1;
+        int len = path.length();
+        for (int i = 1; i <= len && !current.isEmpty(); ++i) {
+            if (i != len && path.charAt(i) != '/') {
+                continue;
+            }
+            if (i > start) {
+                next.clear();
+                for (Node node : current) {
+                    node.advance(path, start, i, next);
+                }
+                List<Node> tmp = current;
+                current = next;
+                next = tmp;
+            }
+            start = i + 1;
+        }
+        for (Node node : current) {
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void enter(List<Node> states, Node node) {
+        for (Node state : states) {
+            if (state == node) {
+                return;
+            }
+        }
+        states.add(node);
+        if (null != node.doubleWildcard) {
+            enter(states, node.doubleWildcard);
+        }
+    }
+
+    private static boolean matchesLinear(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (ANT_PATH_MATCHER.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasRegexVariable(String pattern) {
+        int depth = 0;
+        for (int i = 0; i < pattern.length(); ++i) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                ++depth;
+            } else if (c == '}') {
+                depth = Math.max(0, depth - 1);
+            } else if (depth > 0 && c == ':') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        private final String glob;
+        private final boolean selfLoop;
+        private Map<String, Node> literals;
+        private List<Node> patterns;
+        private Node doubleWildcard;
+        private boolean terminal;
+
+        private Node(String glob) {
+            this(glob, false);
+        }
+
+        private Node(String glob, boolean selfLoop) {
+            this.glob = glob;
+            this.selfLoop = selfLoop;
+        }
+
+        private Node child(String segment) {
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                if (null == doubleWildcard) {
+                    doubleWildcard = new Node(null, true);
+                }
+                return doubleWildcard;
+            }
+            String glob = toGlob(segment);
+            if (null == glob) {
+                if (null == literals) {
+                    literals = new HashMap<>(4);
+                }
+                return literals.computeIfAbsent(segment, k -> new Node(null));
+            }
+            if (null == patterns) {
+                patterns = new ArrayList<>(1);
+            }
+            for (Node p : patterns) {
+                if (p.glob.equals(glob)) {
+                    return p;
+                }
+            }
+            Node p = new Node(glob);
+            patterns.add(p);
+            return p;
+        }
+
+        private void advance(String path, int start, int end, List<Node> next) {
+            if (selfLoop) {
+                enter(next, this);
+            }
+            if (null != literals) {
+                Node child = literals.get(path.substring(start, end));
+                if (null != child) {
+                    enter(next, child);
+                }
+            }
+            if (null != patterns) {
+                for (Node p : patterns) {
+                    if (globMatches(p.glob, path, start, end)) {
+                        enter(next, p);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 段内通配转换为只包含*与?的形式，{变量}视为*，字面量路径段返回null
+         */
+        private static String toGlob(String segment) {
+            if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0 && segment.indexOf('{') < 0) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder(segment.length());
+            int depth = 0;
+            for (int i = 0; i < segment.length(); ++i) {
+                char c = segment.charAt(i);
+                if (c == '{') {
+                    if (depth++ == 0) {
+                        sb.append('*');
+                    }
+                } else if (c == '}') {
+                    depth = Math.max(0, depth - 1);
+                } else if (depth == 0) {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private static boolean globMatches(String glob, String path, int start, int end) {
+            int s = start;
+            int g = 0;
+            int star = -1;
+            int mark = start;
+            while (s < end) {
+                if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == path.charAt(s))) {
+                    ++s;
+                    ++g;
+                } else if (g < glob.length() && glob.charAt(g) == '*') {
+                    star = g++;
+                    mark = s;
+                } else if (star >= 0) {
+                    g = star + 1;
+                    s = ++mark;
+                } else {
+                    return false;
+                }
+            }
+            while (g < glob.length() && glob.charAt(g) == '*') {
+                ++g;
+            }
+            return g == glob.length();
+        }
+    }
+}
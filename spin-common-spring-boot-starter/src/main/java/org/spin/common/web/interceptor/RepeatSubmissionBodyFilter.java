@@ -0,0 +1,124 @@
+package org.spin.common.web.interceptor;
+
+import org.spin.common.web.config.HandlerMetadataRegistry;
+import org.spin.core.util.StringUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 防重复提交请求体缓存过滤器
+ * <p>请求命中标注了{@link org.spin.common.web.annotation.RepeatSubmission}的接口时，预先读取请求体并替换为可重复读取的请求，
+ * {@link RepeatSubmissionInterceptor}在preHandle阶段即可将请求体计入摘要，接口方法仍然可以正常读取请求体。</p>
+ * <p>只处理长度已知且不超过maxBodySize的请求体；表单与文件上传的内容已包含在请求参数中，不做处理</p>
+ * <p>Created by xuweinan on 2019/12/24</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RepeatSubmissionBodyFilter extends OncePerRequestFilter {
+
+    private final HandlerMetadataRegistry handlerMetadataRegistry;
+    private final int maxBodySize;
+
+    /**
+     * @param handlerMetadataRegistry 接口元数据注册表
+     * @param maxBodySize             缓存的请求体的最大字节数
+     */
+    public RepeatSubmissionBodyFilter(HandlerMetadataRegistry handlerMetadataRegistry, int maxBodySize) {
+        this.handlerMetadataRegistry = handlerMetadataRegistry;
+        this.maxBodySize = maxBodySize;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        if (hasBody(request) && null != handlerMetadataRegistry.findRepeatSubmission(request)) {
+            request = new CachedBodyRequest(request, StreamUtils.copyToByteArray(request.getInputStream()));
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private boolean hasBody(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        if (HttpMethod.POST != method && HttpMethod.PUT != method && HttpMethod.PATCH != method && HttpMethod.DELETE != method) {
+            return false;
+        }
+        long length = request.getContentLengthLong();
+        if (length <= 0 || length > maxBodySize) {
+            return false;
+        }
+        String contentType = StringUtils.trimToEmpty(request.getContentType()).toLowerCase();
+        return !contentType.startsWith(MediaType.APPLICATION_FORM_URLENCODED_VALUE) && !contentType.startsWith("multipart/");
+    }
+
+    /**
+     * 请求体已读入内存、可以重复读取的请求
+     */
+    static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(@NonNull byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = null == encoding ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -5,58 +5,102 @@ import org.slf4j.LoggerFactory;
 import org.spin.common.redis.RedisUtil;
 import org.spin.common.web.RestfulResponse;
 import org.spin.common.web.annotation.RepeatSubmission;
+import org.spin.common.web.config.HandlerMetadataRegistry;
 import org.spin.core.ErrorCode;
+import org.spin.core.util.HexUtils;
 import org.spin.core.util.JsonUtils;
 import org.spin.core.util.StringUtils;
 import org.springframework.http.MediaType;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.WebUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 表单防重复提交拦截器
+ * <p>以请求地址、客户端IP、排序后的请求参数以及请求体(由{@link RepeatSubmissionBodyFilter}预先读取)计算128位摘要作为Redis键，通过一次SET NX PX原子地占位，
+ * 占位失败即为重复提交。本节点最近接受的请求同时记录在本地(不超过localMaxTtl)，连续点击等明显的重复提交不访问Redis直接拒绝。
+ * Redis不可用时放行。</p>
  *
  * @author aricXu
  * <p>Created by aricXu on 2019/7/29</p>
  */
 public class RepeatSubmissionInterceptor implements HandlerInterceptor {
     private static final Logger logger = LoggerFactory.getLogger(RepeatSubmissionInterceptor.class);
+
+    /**
+     * 防重复提交的Redis键前缀
+     */
+    public static final String REPEAT_SUBMISSION_KEY = "repeat:submission:";
+
     private RedisUtil redisUtil;
+    private HandlerMetadataRegistry handlerMetadataRegistry;
+    private final int localMaxSize;
+    private final long localMaxTtl;
+    private final Map<String, Long> recent = new ConcurrentHashMap<>();
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejectedLocal = new LongAdder();
+    private final LongAdder rejectedRemote = new LongAdder();
+    private final LongAdder failures = new LongAdder();
 
     public RepeatSubmissionInterceptor(RedisUtil redisUtil) {
+        this(redisUtil, new HandlerMetadataRegistry());
+    }
+
+    public RepeatSubmissionInterceptor(RedisUtil redisUtil, HandlerMetadataRegistry handlerMetadataRegistry) {
+        this(redisUtil, handlerMetadataRegistry, 10_000, 1_000L);
+    }
+
+    /**
+     * @param localMaxSize 本地记录的最大条目数，小于等于0时不在本地记录
+     * @param localMaxTtl  本地记录的最长保留时间(毫秒)，实际保留时间不超过注解的限制时间
+     */
+    public RepeatSubmissionInterceptor(RedisUtil redisUtil, HandlerMetadataRegistry handlerMetadataRegistry, int localMaxSize, long localMaxTtl) {
         this.redisUtil = redisUtil;
+        this.handlerMetadataRegistry = handlerMetadataRegistry;
+        this.localMaxSize = localMaxSize;
+        this.localMaxTtl = localMaxTtl;
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
         if (null != redisUtil && handler instanceof HandlerMethod) {
-            HandlerMethod handlerMethod = (HandlerMethod) handler;
-            Method method = handlerMethod.getMethod();
-            RepeatSubmission annotation = method.getAnnotation(RepeatSubmission.class);
+            RepeatSubmission annotation = handlerMetadataRegistry.get((HandlerMethod) handler).getRepeatSubmission();
             if (annotation != null) {
-                //获取请求地址
-                String requestURI = request.getRequestURI();
-                //获取ip地址 后面要改为获取真实的IP地址，这个地址很可能是代理服务器的地址
-                String ipAddress = request.getRemoteAddr();
-                //获取post的提交内容
-                Map<String, String[]> parameterMap = request.getParameterMap();
-                //拼接redis要存入的key
-                StringBuilder key = new StringBuilder(requestURI);
-                key.append(ipAddress).append(JsonUtils.toJson(parameterMap));
+                String key = REPEAT_SUBMISSION_KEY + digest(request);
+                long now = System.currentTimeMillis();
+                Long expireAt = recent.get(key);
+                if (null != expireAt && expireAt > now) {
+                    rejectedLocal.increment();
+                    responseWrite(response, ErrorCode.OTHER, "请不要重复提交");
+                    return false;
+                }
                 try {
-                    String value = redisUtil.getValue(key.toString());
-                    if (null != value && value.length() > 0) {
+                    Boolean absent = redisUtil.setIfNotExist(key, "1", annotation.limitTime(), TimeUnit.MILLISECONDS);
+                    if (Boolean.FALSE.equals(absent)) {
+                        rejectedRemote.increment();
                         responseWrite(response, ErrorCode.OTHER, "请不要重复提交");
                         return false;
                     }
-                    redisUtil.setString(key.toString(), "1", annotation.limitTime(), TimeUnit.MILLISECONDS);
+                    accepted.increment();
+                    remember(key, now, annotation.limitTime());
                 } catch (Exception e) {
+                    failures.increment();
                     logger.warn("重复表单校验失败", e);
                     // do nothing
                 }
@@ -66,6 +110,182 @@ public class RepeatSubmissionInterceptor implements HandlerInterceptor {
         return true;
     }
 
+    /**
+     * 放行的请求数
+     */
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * 由本地记录拒绝的请求数
+     */
+    public long getRejectedLocal() {
+        return rejectedLocal.sum();
+    }
+
+    /**
+     * 由Redis占位失败拒绝的请求数
+     */
+    public long getRejectedRemote() {
+        return rejectedRemote.sum();
+    }
+
+    /**
+     * Redis访问失败(按放行处理)的请求数
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * 记录本节点已接受的请求，保留时间不超过Redis中占位的有效期，因此本地命中时Redis中的占位一定仍然存在
+     */
+    private void remember(String key, long now, long limitTime) {
+        long ttl = Math.min(limitTime, localMaxTtl);
+        if (localMaxSize <= 0 || ttl <= 0) {
+            return;
+        }
+        if (recent.size() >= localMaxSize) {
+            evict(now);
+        }
+        recent.put(key, now + ttl);
+    }
+
+    /**
+     * 容量已满时淘汰条目：优先清理已过期的条目，仍不足时按遍历顺序淘汰至容量的3/4
+     */
+    private void evict(long now) {
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            recent.values().removeIf(expireAt -> expireAt <= now);
+            int target = localMaxSize - (localMaxSize >> 2);
+            Iterator<Long> it = recent.values().iterator();
+            while (recent.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /**
+     * 请求摘要: 请求地址、客户端IP、按名称排序的请求参数，以及{@link RepeatSubmissionBodyFilter}预先读取的请求体(如果有)
+     * <p>各部分以长度前缀拼接，避免不同的参数组合得到相同的内容</p>
+     */
+    static String digest(HttpServletRequest request) {
+        StringBuilder sb = new StringBuilder(128);
+        //获取请求地址
+        appendPart(sb, request.getRequestURI());
+        //获取ip地址 后面要改为获取真实的IP地址，这个地址很可能是代理服务器的地址
+        appendPart(sb, request.getRemoteAddr());
+        Map<String, String[]> parameterMap = request.getParameterMap();
+        String[] names = parameterMap.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        for (String name : names) {
+            appendPart(sb, name);
+            String[] values = parameterMap.get(name);
+            sb.append(null == values ? 0 : values.length).append('#');
+            if (null != values) {
+                for (String value : values) {
+                    appendPart(sb, value);
+                }
+            }
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        RepeatSubmissionBodyFilter.CachedBodyRequest cached = WebUtils.getNativeRequest(request, RepeatSubmissionBodyFilter.CachedBodyRequest.class);
+        if (null != cached && cached.getBody().length > 0) {
+            byte[] body = cached.getBody();
+            byte[] merged = Arrays.copyOf(content, content.length + body.length);
+            System.arraycopy(body, 0, merged, content.length, body.length);
+            content = merged;
+        }
+        return HexUtils.encodeHexStringL(murmur3x128(content));
+    }
+
+    private static void appendPart(StringBuilder sb, String value) {
+        if (null == value) {
+            sb.append("-1:");
+        } else {
+            sb.append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * MurmurHash3 x64 128位摘要(种子为0)
+     */
+    static byte[] murmur3x128(byte[] data) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        int length = data.length;
+        long h1 = 0;
+        long h2 = 0;
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int blocks = length >>> 4;
+        for (int i = 0; i < blocks; ++i) {
+            long k1 = buffer.getLong(i << 4);
+            long k2 = buffer.getLong((i << 4) + 8);
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = blocks << 4;
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = length - 1; i >= tail + 8; --i) {
+            k2 ^= (long) (data[i] & 0xFF) << ((i - tail - 8) << 3);
+        }
+        for (int i = Math.min(length, tail + 8) - 1; i >= tail; --i) {
+            k1 ^= (long) (data[i] & 0xFF) << ((i - tail) << 3);
+        }
+        if (length - tail > 8) {
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+        }
+        if (length > tail) {
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array();
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
     private void responseWrite(HttpServletResponse response, ErrorCode errorCode, String... message) {
         try {
             response.setCharacterEncoding("UTF-8");
@@ -1,27 +1,24 @@
 package org.spin.common.web.interceptor;
 
-import com.alibaba.fastjson.JSON;
-import com.netflix.appinfo.InstanceInfo;
 import com.netflix.discovery.EurekaClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spin.common.internal.InternalAddressRegistry;
 import org.spin.common.internal.NetworkUtils;
 import org.spin.common.redis.RedisUtil;
 import org.spin.common.util.ApolloKeyUtil;
 import org.spin.common.vo.CurrentUser;
 import org.spin.common.web.InternalWhiteList;
 import org.spin.common.web.RestfulResponse;
-import org.spin.common.web.ScopeType;
 import org.spin.common.web.annotation.Auth;
+import org.spin.common.web.config.AuthMetadataController;
+import org.spin.common.web.config.HandlerMetadataRegistry;
 import org.spin.core.ErrorCode;
 import org.spin.core.util.JsonUtils;
 import org.spin.core.util.StringUtils;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
-import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.util.AntPathMatcher;
-import org.springframework.util.CollectionUtils;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
@@ -29,9 +26,7 @@ import org.springframework.web.servlet.ModelAndView;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.lang.reflect.Method;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 用户权限拦截器
@@ -45,12 +40,14 @@ public class UserAuthInterceptor implements HandlerInterceptor {
 
     private InternalWhiteList whiteList;
 
-    private DiscoveryClient discoveryClient;
+    private HandlerMetadataRegistry handlerMetadataRegistry;
 
-    private EurekaClient eurekaClient;
+    private InternalAddressRegistry internalAddressRegistry;
 
     private RedisUtil redisUtil;
 
+    private PermissionCache permissionCache;
+
     /**
      * 用户权限-用户角色集合（1,2,3）
      */
@@ -84,9 +81,21 @@ public class UserAuthInterceptor implements HandlerInterceptor {
     }
 
     public UserAuthInterceptor(DiscoveryClient discoveryClient, EurekaClient eurekaClient,RedisUtil redisUtil) {
-        this.discoveryClient = discoveryClient;
-        this.eurekaClient = eurekaClient;
+        this(new HandlerMetadataRegistry(), new InternalAddressRegistry(discoveryClient, eurekaClient, InternalAddressRegistry.DEFAULT_MAX_AGE), redisUtil, null);
+    }
+
+    /**
+     * @param handlerMetadataRegistry Web接口元数据注册表
+     * @param internalAddressRegistry 内部服务实例地址表
+     * @param permissionCache         权限本地缓存，为null时每次校验直接读取Redis
+     */
+    public UserAuthInterceptor(HandlerMetadataRegistry handlerMetadataRegistry, InternalAddressRegistry internalAddressRegistry,
+                               RedisUtil redisUtil, PermissionCache permissionCache) {
+        this.handlerMetadataRegistry = handlerMetadataRegistry;
+        this.internalAddressRegistry = internalAddressRegistry;
         this.redisUtil = redisUtil;
+        this.permissionCache = null != permissionCache ? permissionCache
+            : new PermissionCache(key -> null == redisUtil ? null : redisUtil.getValue(key), 0, 0L, 0L);
     }
 
     @Override
@@ -98,9 +107,9 @@ public class UserAuthInterceptor implements HandlerInterceptor {
         }
 
         // 认证信息判断
-        Method method = ((HandlerMethod) handler).getMethod();
+        HandlerMetadataRegistry.HandlerMetadata metadata = handlerMetadataRegistry.get((HandlerMethod) handler);
 
-        Auth authAnno = AnnotatedElementUtils.getMergedAnnotation(method, Auth.class);
+        Auth authAnno = metadata.getAuth();
         if (null == authAnno) {
             responseWrite(response, ErrorCode.OTHER, "接口定义不正确");
             return false;
@@ -112,7 +121,7 @@ public class UserAuthInterceptor implements HandlerInterceptor {
         //    return false;
         //}
 
-        if (authAnno.scope() == ScopeType.INTERNAL || authAnno.scope() == ScopeType.OPEN_UNAUTH) {
+        if (metadata.isInnerApi()) {
             if (!isInnerApi(request)) {
                 responseWrite(response, ErrorCode.ACCESS_DENINED, "请勿进行非法请求!" + request.getRemoteHost());
                 return false;
@@ -237,18 +246,15 @@ public class UserAuthInterceptor implements HandlerInterceptor {
     }
 
     /**
-     * 是否为内部接口
-     * @param request 请求体
-     * @return true or false
+     * 请求是否来自内部服务实例，或者是网关自身拉取接口授权信息的调用
+     * <p>网关实例只允许访问{@link AuthMetadataController#PATH}，且请求不能带有网关转发时在Referer末尾追加的GATEWAY标记；
+     * 网关调用其他内部接口时与外部请求一样被拒绝</p>
      */
     private boolean isInnerApi(HttpServletRequest request){
-        List<String> servicesList = discoveryClient.getServices();
-        // 从eureka客户端中拿到真实ip地址集合，然后转换set去重
-        Set<String> collect = servicesList.stream().filter(service -> !"bnd-gateway".equalsIgnoreCase(service))
-            .flatMap(serviceName -> eurekaClient.getInstancesByVipAddress(serviceName, false)
-                .stream()).map(InstanceInfo::getIPAddr).collect(Collectors.toSet());
-
-        return collect.contains(request.getRemoteHost());
+        String address = request.getRemoteHost();
+        return internalAddressRegistry.contains(address)
+            || AuthMetadataController.PATH.equals(request.getServletPath()) && internalAddressRegistry.isGateway(address)
+            && !StringUtils.toStringEmpty(request.getHeader(HttpHeaders.REFERER)).endsWith("GATEWAY");
     }
 
     /**
@@ -265,44 +271,23 @@ public class UserAuthInterceptor implements HandlerInterceptor {
             }
             //获取权限组
             String header = request.getHeader(HttpHeaders.AUTHORIZATION);
-            String authGroupAndBusinessId = redisUtil.getValue(USER_TOKEN_AUTH_GROUP + header);
-            if(StringUtils.isEmpty(header) || StringUtils.isEmpty(authGroupAndBusinessId)){
+            if(StringUtils.isEmpty(header)){
+                return true;
+            }
+            String authGroupAndBusinessId = permissionCache.getAuthGroup(header);
+            if(StringUtils.isEmpty(authGroupAndBusinessId)){
                 return true;
             }
-            //去除多余引号
-            authGroupAndBusinessId = authGroupAndBusinessId.replaceAll("\\\"", "");
             String[] authGroupArr = authGroupAndBusinessId.split(",");
-            if(authGroupArr!=null && authGroupArr.length>=2){
-                List<String> urls = new ArrayList<>();
-                //获取用户所有角色
-                String roleIds = redisUtil.getValue(USER_PERMISSION_ROLES +currentUser.getId()+":"+ authGroupArr[0]+":"+authGroupArr[1]);
-                if(StringUtils.isNotEmpty(roleIds)){
-                    //去除多余引号
-                    roleIds = roleIds.replaceAll("\\\"", "");
-                    String[] roleIdArray = roleIds.split(",");
-                    if(roleIdArray!=null && roleIdArray.length>0){
-                        for (String roleId : roleIdArray) {
-                            //根据roleId获取菜单urls
-                            String roleUrls = redisUtil.getValue(USER_PERMISSION_ROLE_MENUS + Integer.parseInt(roleId));
-                            if(StringUtils.isNotEmpty(roleUrls)){
-                                List<String> urlList = JSON.parseArray(roleUrls, String.class);
-                                if(!CollectionUtils.isEmpty(urlList)){
-                                    urls.addAll(urlList);
-                                }
-                            }
-                        }
-                    }
-                }
-                //获取权限组下所有菜单
-                String menus = redisUtil.getValue(USER_PERMISSION_MENUS+authGroupArr[1]);
-                List<String> allAuthUrls = null;
-                if(StringUtils.isNotEmpty(menus)){
-                    allAuthUrls = JSON.parseArray(menus, String.class);
-                }
+            if(authGroupArr.length>=2){
+                //用户所有角色的菜单
+                PermissionMatcher roleMatcher = permissionCache.getRoleMatcher(
+                    permissionCache.getRoleIds(currentUser.getId(), authGroupArr[0], authGroupArr[1]));
+                //权限组下所有菜单
+                PermissionMatcher menuMatcher = permissionCache.getMenuMatcher(authGroupArr[1]);
                 //优先判断小的
                 //小的没有 大的有
-                if((CollectionUtils.isEmpty(urls) || !isMatched(contextPath,urls))
-                    && !CollectionUtils.isEmpty(allAuthUrls) && isMatched(contextPath,allAuthUrls)){
+                if(!roleMatcher.matches(contextPath) && menuMatcher.matches(contextPath)){
                     logger.error("no auth userId : {} , path : {}",currentUser.getId(),contextPath);
                     return false;
                 }
@@ -313,33 +298,4 @@ public class UserAuthInterceptor implements HandlerInterceptor {
         }
         return true;
     }
-
-    /**
-     * 匹配请求url
-     * @param path
-     * @param urls
-     * @return
-     */
-    private boolean isMatched(String path,List<String> urls){
-        boolean matched = false;
-        if(StringUtils.isNotEmpty(path) && !CollectionUtils.isEmpty(urls)){
-            //匹配url
-            AntPathMatcher matcher = new AntPathMatcher();
-            for (String url : urls) {
-                if(StringUtils.isNotEmpty(url) && matcher.match(url,path)){
-                   matched = true;
-                   break;
-                }
-            }
-        }
-        return matched;
-    }
-
-
-
-
-
-
-
-
 }
@@ -0,0 +1,46 @@
+package org.spin.common.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内部服务地址表IPv4集合测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class IpV4SetTest {
+
+    @Test
+    void testPack() {
+        assertEquals(0x0A000001, InternalAddressRegistry.IpV4Set.pack("10.0.0.1"));
+        assertEquals(0, InternalAddressRegistry.IpV4Set.pack("0.0.0.0"));
+        assertEquals(0xC0A80C97, InternalAddressRegistry.IpV4Set.pack("192.168.12.151"));
+        for (String invalid : new String[]{"", "10.0.0", "10.0.0.1.2", "10.0.0.256", "10..0.1", "1000.0.0.1", "10.0.0.1.",
+            "0:0:0:0:0:0:0:1", "localhost", "255.255.255.255"}) {
+            assertEquals(InternalAddressRegistry.IpV4Set.INVALID, InternalAddressRegistry.IpV4Set.pack(invalid), invalid);
+        }
+    }
+
+    @Test
+    void testContains() {
+        Set<Integer> addresses = new HashSet<>();
+        for (int i = 0; i < 1000; ++i) {
+            addresses.add(InternalAddressRegistry.IpV4Set.pack("10.1." + (i >> 8) + "." + (i & 0xFF)));
+        }
+        addresses.add(0);
+        InternalAddressRegistry.IpV4Set set = new InternalAddressRegistry.IpV4Set(addresses);
+        assertEquals(1001, set.size());
+        for (int address : addresses) {
+            assertTrue(set.contains(address));
+        }
+        assertFalse(set.contains(InternalAddressRegistry.IpV4Set.pack("10.2.0.1")));
+        assertFalse(new InternalAddressRegistry.IpV4Set(new HashSet<>()).contains(0));
+    }
+}
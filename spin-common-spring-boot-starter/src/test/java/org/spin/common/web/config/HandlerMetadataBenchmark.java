@@ -0,0 +1,124 @@
+package org.spin.common.web.config;
+
+import org.spin.common.web.ScopeType;
+import org.spin.common.web.annotation.Auth;
+import org.spin.common.web.annotation.GetApi;
+import org.spin.common.web.annotation.Plain;
+import org.spin.common.web.annotation.PostApi;
+import org.spin.common.web.annotation.RepeatSubmission;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 接口元数据解析基准测试
+ * <p>对比每次请求解析注解(UserAuthInterceptor、RepeatSubmissionInterceptor与WrappedRequestResponseBodyProcessor原有的写法)
+ * 与查询{@link HandlerMetadataRegistry}的耗时。不属于单元测试，直接运行main方法，参数为每轮的请求次数(默认1000000)</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class HandlerMetadataBenchmark {
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        DemoController controller = new DemoController();
+        List<HandlerMethod> handlerMethods = new ArrayList<>();
+        for (Method method : DemoController.class.getDeclaredMethods()) {
+            if (!method.isSynthetic()) {
+                handlerMethods.add(new HandlerMethod(controller, method));
+            }
+        }
+        HandlerMetadataRegistry registry = new HandlerMetadataRegistry();
+        registry.build(handlerMethods);
+
+        for (HandlerMethod handlerMethod : handlerMethods) {
+            if (resolve(handlerMethod) != lookup(registry, handlerMethod)) {
+                throw new IllegalStateException("解析结果不一致: " + handlerMethod);
+            }
+        }
+
+        System.out.printf("%-10s %14s %14s %8s%n", "round", "resolve ns/req", "registry ns/req", "speedup");
+        for (int round = 0; round < 5; ++round) {
+            long start = System.nanoTime();
+            int acc = 0;
+            for (int i = 0; i < iterations; ++i) {
+                acc += resolve(handlerMethods.get(i % handlerMethods.size()));
+            }
+            double resolve = (double) (System.nanoTime() - start) / iterations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                acc += lookup(registry, handlerMethods.get(i % handlerMethods.size()));
+            }
+            double lookup = (double) (System.nanoTime() - start) / iterations;
+            sink += acc;
+            System.out.printf("%-10s %14.1f %14.1f %7.1fx%n", round == 0 ? "warmup" : String.valueOf(round), resolve, lookup, resolve / lookup);
+        }
+    }
+
+    /**
+     * 原有写法: 每次请求解析注解
+     */
+    private static int resolve(HandlerMethod handlerMethod) {
+        Method method = handlerMethod.getMethod();
+        Auth auth = AnnotatedElementUtils.getMergedAnnotation(method, Auth.class);
+        boolean inner = null != auth && (auth.scope() == ScopeType.INTERNAL || auth.scope() == ScopeType.OPEN_UNAUTH);
+        RepeatSubmission repeatSubmission = method.getAnnotation(RepeatSubmission.class);
+        MethodParameter returnType = handlerMethod.getReturnType();
+        boolean wrap = (AnnotatedElementUtils.hasAnnotation(returnType.getContainingClass(), ResponseBody.class) || returnType.hasMethodAnnotation(ResponseBody.class))
+            && (AnnotatedElementUtils.hasAnnotation(returnType.getContainingClass(), Auth.class) || returnType.hasMethodAnnotation(Auth.class))
+            && !AnnotatedElementUtils.hasAnnotation(returnType.getContainingClass(), Plain.class)
+            && !returnType.hasMethodAnnotation(Plain.class);
+        return flags(auth, inner, repeatSubmission, wrap);
+    }
+
+    /**
+     * 查询注册表
+     */
+    private static int lookup(HandlerMetadataRegistry registry, HandlerMethod handlerMethod) {
+        HandlerMetadataRegistry.HandlerMetadata metadata = registry.get(handlerMethod);
+        MethodParameter returnType = handlerMethod.getReturnType();
+        boolean wrap = registry.get(returnType.getMethod()).isWrapResponse(returnType.getContainingClass());
+        return flags(metadata.getAuth(), metadata.isInnerApi(), metadata.getRepeatSubmission(), wrap);
+    }
+
+    private static int flags(Auth auth, boolean inner, RepeatSubmission repeatSubmission, boolean wrap) {
+        return (null == auth ? 0 : 1) | (inner ? 2 : 0) | (null == repeatSubmission ? 0 : 4) | (wrap ? 8 : 0);
+    }
+
+    @RestController
+    public static class DemoController {
+
+        @GetApi("list")
+        public List<String> list() {
+            return null;
+        }
+
+        @GetApi(value = "detail", scope = ScopeType.INTERNAL)
+        public String detail() {
+            return null;
+        }
+
+        @PostApi("save")
+        @RepeatSubmission(limitTime = 2000)
+        public String save() {
+            return null;
+        }
+
+        @Plain
+        @GetApi(value = "export", auth = false)
+        public String export() {
+            return null;
+        }
+    }
+}
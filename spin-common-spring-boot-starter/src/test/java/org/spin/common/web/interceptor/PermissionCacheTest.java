@@ -0,0 +1,43 @@
+package org.spin.common.web.interceptor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 用户权限本地缓存测试
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class PermissionCacheTest {
+
+    @Test
+    void testRoleMatcherExpiresWithRoleMenus() throws InterruptedException {
+        Map<String, String> redis = new ConcurrentHashMap<>();
+        redis.put(UserAuthInterceptor.USER_PERMISSION_ROLE_MENUS + "1", "[\"/user/list\"]");
+        redis.put(UserAuthInterceptor.USER_PERMISSION_ROLE_MENUS + "2", "[\"/order/list\"]");
+        PermissionCache cache = new PermissionCache(redis::get, 100, 1000L, 1000L);
+
+        cache.getRoleMenus(2);
+        long start = System.currentTimeMillis();
+        cache.getRoleMenus(1);
+        long loaded = System.currentTimeMillis();
+        Thread.sleep(500L);
+        assertTrue(cache.getRoleMatcher(Arrays.asList("1", "2")).matches("/user/list"));
+        assumeTrue(System.currentTimeMillis() < start + 1000L, "角色菜单条目在构建匹配器前已过期");
+
+        // 收回角色1的菜单，匹配器不能晚于角色1的菜单条目过期
+        redis.put(UserAuthInterceptor.USER_PERMISSION_ROLE_MENUS + "1", "[]");
+        Thread.sleep(Math.max(0L, loaded + 1000L + 10L - System.currentTimeMillis()));
+        PermissionMatcher matcher = cache.getRoleMatcher(Arrays.asList("2", "1"));
+        assertFalse(matcher.matches("/user/list"));
+        assertTrue(matcher.matches("/order/list"));
+    }
+}
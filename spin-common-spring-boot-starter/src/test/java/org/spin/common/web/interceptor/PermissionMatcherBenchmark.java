@@ -0,0 +1,96 @@
+package org.spin.common.web.interceptor;
+
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * 权限url匹配基准测试
+ * <p>对比原有的逐个AntPathMatcher匹配(每次新建AntPathMatcher)与{@link PermissionMatcher}，菜单数量分别为10、100、500、2000，
+ * 请求路径中命中与未命中各占一半。不属于单元测试，直接运行main方法，参数为每轮的匹配次数(默认50000)</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class PermissionMatcherBenchmark {
+    private static final String[] MODULES = {"user", "order", "goods", "report", "finance", "system", "stock", "crm"};
+    private static final String[] ACTIONS = {"list", "page", "detail", "save", "update", "delete", "export", "import"};
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        System.out.printf("%8s %16s %16s %8s%n", "menus", "ant (ns/op)", "compiled (ns/op)", "speedup");
+        for (int size : new int[]{10, 100, 500, 2000}) {
+            List<String> menus = menus(size);
+            String[] paths = paths(menus, 1024);
+            PermissionMatcher compiled = PermissionMatcher.compile(menus);
+
+            Predicate<String> linear = path -> {
+                AntPathMatcher matcher = new AntPathMatcher();
+                for (String url : menus) {
+                    if (matcher.match(url, path)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+
+            // 预热
+            run(linear, paths, iterations);
+            run(compiled::matches, paths, iterations);
+
+            double ant = run(linear, paths, iterations);
+            double trie = run(compiled::matches, paths, iterations);
+            System.out.printf("%8d %16.1f %16.1f %7.1fx%n", size, ant, trie, ant / trie);
+        }
+    }
+
+    private static double run(Predicate<String> matcher, String[] paths, int iterations) {
+        int matched = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            if (matcher.test(paths[i & (paths.length - 1)])) {
+                ++matched;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += matched;
+        return (double) elapsed / iterations;
+    }
+
+    /**
+     * 生成菜单url，以字面量为主，夹杂少量通配
+     */
+    private static List<String> menus(int size) {
+        List<String> menus = new ArrayList<>(size);
+        for (int i = 0; menus.size() < size; ++i) {
+            String base = "/" + MODULES[i % MODULES.length] + "/v" + (i / 64) + "/" + ACTIONS[(i / MODULES.length) % ACTIONS.length] + i;
+            switch (i % 10) {
+                case 0:
+                    menus.add(base + "/**");
+                    break;
+                case 1:
+                    menus.add(base + "/{id}");
+                    break;
+                default:
+                    menus.add(base);
+            }
+        }
+        return menus;
+    }
+
+    private static String[] paths(List<String> menus, int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] paths = new String[count];
+        for (int i = 0; i < count; ++i) {
+            String menu = menus.get(random.nextInt(menus.size())).replace("/**", "/a/b").replace("{id}", "42");
+            paths[i] = (i & 1) == 0 ? menu : menu + "x/none";
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,56 @@
+package org.spin.common.web.interceptor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 权限url匹配器测试
+ * <p>与AntPathMatcher逐个匹配的结果对比</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class PermissionMatcherTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+        "/user/list", "/user/{id}", "/user/*.json", "/file/**", "/api/**/export", "/api/v?/order",
+        "/report/**/*.xls", "/goods/{id:\\d+}", "relative/path", "/dir/", "/a/**/**/b", "");
+
+    private static final List<String> PATHS = Arrays.asList(
+        "/user/list", "/user/123", "/user/a.json", "/user", "/user/1/2", "/file", "/file/a/b.png", "/api/export",
+        "/api/v1/x/export", "/api/v2/order", "/api/v10/order", "/report/a.xls", "/report/2019/12/a.xls",
+        "/report/a.doc", "/goods/12", "/goods/ab", "relative/path", "/dir", "/dir/", "/user/list/", "/file/",
+        "/a/b", "/a/x/y/b", "/a/x/y/c", "/", "/other", "//user//list");
+
+    @Test
+    void testConsistentWithAntPathMatcher() {
+        AntPathMatcher ant = new AntPathMatcher();
+        for (String pattern : PATTERNS) {
+            PermissionMatcher matcher = PermissionMatcher.compile(Collections.singletonList(pattern));
+            for (String path : PATHS) {
+                boolean expected = !pattern.isEmpty() && ant.match(pattern, path);
+                assertEquals(expected, matcher.matches(path), pattern + " -> " + path);
+            }
+        }
+
+        PermissionMatcher all = PermissionMatcher.compile(PATTERNS);
+        for (String path : PATHS) {
+            boolean expected = PATTERNS.stream().anyMatch(p -> !p.isEmpty() && ant.match(p, path));
+            assertEquals(expected, all.matches(path), path);
+        }
+    }
+
+    @Test
+    void testEmpty() {
+        assertSame(PermissionMatcher.EMPTY, PermissionMatcher.compile(Arrays.asList("", null)));
+        assertFalse(PermissionMatcher.EMPTY.matches("/user/list"));
+        assertEquals(11, PermissionMatcher.compile(PATTERNS).size());
+    }
+}
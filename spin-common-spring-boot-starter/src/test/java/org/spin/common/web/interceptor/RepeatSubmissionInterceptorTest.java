@@ -0,0 +1,31 @@
+package org.spin.common.web.interceptor;
+
+import org.junit.jupiter.api.Test;
+import org.spin.core.util.HexUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 防重复提交摘要测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RepeatSubmissionInterceptorTest {
+
+    @Test
+    void testMurmur3() {
+        assertEquals("00000000000000000000000000000000", hash(""));
+        assertEquals("029bbd41b3a7d8cb191dae486a901e5b", hash("hello"));
+        assertEquals("0e617feb46603f53b163eb607d4697ab", hash("hello world"));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", hash("The quick brown fox jumps over the lazy dog"));
+    }
+
+    private static String hash(String content) {
+        return HexUtils.encodeHexStringL(RepeatSubmissionInterceptor.murmur3x128(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,218 @@
+package org.spin.cloud.gateway.loadtest;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.netty.handler.codec.http.HttpMethod;
+import org.spin.cloud.gateway.SpinGatewayApplication;
+import org.spin.cloud.gateway.repository.tables.records.GatewayRouteDefinitionRecord;
+import org.spin.cloud.gateway.support.RouteSnapshot;
+import org.spin.core.security.Base64;
+import org.spin.core.util.JsonUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 网关压测
+ * <p>在一个JVM中启动本地上游({@link StubUpstream})与网关，网关从内置的路由表快照启动，数据库、消息队列、注册中心与配置中心
+ * 均使用不可达地址或内存实现，JWT使用本地生成的RSA密钥对，全程不需要访问网络，结果可以在不同提交之间比较。</p>
+ * <p>参数(系统属性，通过gradle loadTest -P传入):</p>
+ * <pre>
+ *     loadTest.concurrency   并发连接数，默认64
+ *     loadTest.duration      每个场景的统计时间(毫秒)，默认30000
+ *     loadTest.warmup        每个场景的预热时间(毫秒)，默认10000
+ *     loadTest.scenarios     执行的场景，逗号分隔，默认全部
+ *     loadTest.routes        路由表中的路由数量，默认200
+ *     loadTest.largeBodySize 大报文场景的报文字节数，默认262144
+ *     loadTest.output        结果输出目录，默认build/loadTest
+ * </pre>
+ * <p>场景: valid-token、invalid-token、blacklisted-ip、large-body、large-body-gzip。
+ * 压测客户端所在的回环地址配置为可信代理，blacklisted-ip场景通过可信代理追加的X-Forwarded-For模拟被禁止的来源。
+ * 结果输出到控制台，同时以JSON写入输出目录</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class GatewayLoadTest {
+    private static final String BLACKLISTED_NETWORK = "203.0.113.0/24";
+    private static final String LOOPBACK = "127.0.0.0/8,::1";
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = Integer.getInteger("loadTest.concurrency", 64);
+        long duration = Long.getLong("loadTest.duration", 30_000L);
+        long warmup = Long.getLong("loadTest.warmup", 10_000L);
+        int routes = Integer.getInteger("loadTest.routes", 200);
+        int largeBodySize = Integer.getInteger("loadTest.largeBodySize", 256 * 1024);
+        String scenarioNames = System.getProperty("loadTest.scenarios", "");
+        Path output = Paths.get(System.getProperty("loadTest.output", "build/loadTest"));
+
+        Path workDir = Files.createTempDirectory("gateway-loadtest");
+        // 配置中心只使用本地缓存目录
+        System.setProperty("env", "LOCAL");
+        System.setProperty("apollo.cacheDir", workDir.resolve("apollo").toString());
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        try (StubUpstream upstream = new StubUpstream(largeBodySize)) {
+            Path snapshot = workDir.resolve("routes.snapshot");
+            RouteSnapshot.write(snapshot, routeTable(upstream.port(), routes));
+
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(SpinGatewayApplication.class)
+                .profiles("loadtest")
+                .properties(
+                    "profile=loadtest",
+                    "logging.config=classpath:logback-test.xml",
+                    "serverPort=0",
+                    "tokenSecret=" + Base64.encode(serialize(keyPair.getPublic())),
+                    "gateway.route.snapshotFile=" + snapshot,
+                    "gateway.blackList=" + BLACKLISTED_NETWORK,
+                    "gateway.trustedProxies=" + LOOPBACK)
+                .run(args);
+            try {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                try (LoadDriver driver = new LoadDriver(port, concurrency)) {
+                    if (!driver.await("/stub/ping", 60_000L)) {
+                        throw new IllegalStateException("网关在60秒内未能加载路由");
+                    }
+                    List<Map<String, Object>> results = new ArrayList<>();
+                    for (Scenario scenario : scenarios(keyPair, largeBodySize)) {
+                        if (!scenarioNames.isEmpty() && !Arrays.asList(scenarioNames.split(",")).contains(scenario.getName())) {
+                            continue;
+                        }
+                        System.out.printf("running %s: concurrency=%d, warmup=%dms, duration=%dms%n", scenario.getName(),
+                            concurrency, warmup, duration);
+                        LoadDriver.Result result = driver.run(scenario, warmup, duration);
+                        results.add(result.toMap());
+                        System.out.println("  " + JsonUtils.toJson(result.toMap()));
+                    }
+                    report(results, output, concurrency, duration, routes);
+                }
+            } finally {
+                context.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static List<Scenario> scenarios(KeyPair keyPair, int largeBodySize) {
+        String token = Jwts.builder()
+            .setSubject("10001:loadtest")
+            .setIssuedAt(new Date())
+            .setExpiration(new Date(System.currentTimeMillis() + 24 * 3600_000L))
+            .signWith(keyPair.getPrivate(), SignatureAlgorithm.RS256)
+            .compact();
+        // 篡改签名的最后一个字符，每次请求都需要验签且验签失败
+        char last = token.charAt(token.length() - 1);
+        String invalidToken = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+
+        byte[] largeBody = new byte[largeBodySize];
+        ThreadLocalRandom.current().nextBytes(largeBody);
+
+        return Arrays.asList(
+            new Scenario("valid-token", HttpMethod.GET, "/stub/json").header(HttpHeaders.AUTHORIZATION, token),
+            new Scenario("invalid-token", HttpMethod.GET, "/stub/json").header(HttpHeaders.AUTHORIZATION, invalidToken),
+            // 压测客户端充当可信代理，追加被禁止的来源地址
+            new Scenario("blacklisted-ip", HttpMethod.GET, "/stub/json").header("X-Forwarded-For", "198.51.100.1, 203.0.113.7"),
+            new Scenario("large-body", HttpMethod.POST, "/stub/echo").header(HttpHeaders.AUTHORIZATION, token)
+                .header(HttpHeaders.CONTENT_TYPE, "application/octet-stream").body(largeBody),
+            new Scenario("large-body-gzip", HttpMethod.GET, "/gzip/large").header(HttpHeaders.AUTHORIZATION, token)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+    }
+
+    /**
+     * 压测路由表：两条指向本地上游的路由，其余为不会命中的填充路由，使路由匹配的开销接近生产环境
+     */
+    private static List<GatewayRouteDefinitionRecord> routeTable(int upstreamPort, int size) {
+        URI upstream = URI.create("http://127.0.0.1:" + upstreamPort);
+        List<GatewayRouteDefinitionRecord> records = new ArrayList<>(size);
+        records.add(record(route("loadtest-stub", upstream, "/stub/**", 0, "StripPrefix=1")));
+        records.add(record(route("loadtest-gzip", upstream, "/gzip/**", 0, "StripPrefix=1", "CompressionFilter=1024")));
+        for (int i = records.size(); i < size; ++i) {
+            records.add(record(route("loadtest-filler-" + i, upstream, "/filler-" + i + "/api/**", i, "StripPrefix=2")));
+        }
+        return records;
+    }
+
+    private static RouteDefinition route(String id, URI uri, String path, int order, String... filters) {
+        RouteDefinition definition = new RouteDefinition();
+        definition.setId(id);
+        definition.setUri(uri);
+        definition.setOrder(order);
+        definition.setPredicates(Collections.singletonList(new PredicateDefinition("Path=" + path)));
+        List<FilterDefinition> filterDefinitions = new ArrayList<>(filters.length);
+        for (String filter : filters) {
+            filterDefinitions.add(new FilterDefinition(filter));
+        }
+        definition.setFilters(filterDefinitions);
+        return definition;
+    }
+
+    private static GatewayRouteDefinitionRecord record(RouteDefinition definition) {
+        GatewayRouteDefinitionRecord record = GatewayRouteDefinitionRecord.fromRouteDefinition(definition);
+        record.setVersion(1);
+        record.setUpdateTime(LocalDateTime.now());
+        return record;
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void report(List<Map<String, Object>> results, Path output, int concurrency, long duration, int routes)
+        throws IOException {
+        System.out.println();
+        System.out.printf("%-16s %10s %8s %10s %9s %9s %9s %9s %10s %12s%n", "scenario", "requests", "errors", "req/s",
+            "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "alloc MB/s", "alloc B/req");
+        for (Map<String, Object> result : results) {
+            System.out.printf("%-16s %10s %8s %10s %9s %9s %9s %9s %10s %12s%n", result.get("scenario"), result.get("requests"),
+                result.get("errors"), result.get("throughput"), result.get("p50Ms"), result.get("p99Ms"), result.get("p999Ms"),
+                result.get("maxMs"), result.get("allocMBps"), result.get("allocPerRequest"));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("time", LocalDateTime.now().toString());
+        report.put("java", System.getProperty("java.version"));
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("concurrency", concurrency);
+        report.put("duration", duration);
+        report.put("routes", routes);
+        report.put("results", results);
+        Files.createDirectories(output);
+        Path file = output.resolve("loadtest-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + ".json");
+        Files.write(file, JsonUtils.toJson(report).getBytes(StandardCharsets.UTF_8));
+        System.out.println();
+        System.out.println("结果已写入: " + file.toAbsolutePath());
+    }
+}
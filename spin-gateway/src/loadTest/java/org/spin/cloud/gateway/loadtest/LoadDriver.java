@@ -0,0 +1,294 @@
+package org.spin.cloud.gateway.loadtest;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.spin.cloud.gateway.support.LogLinearHistogram;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测驱动
+ * <p>闭环模型：concurrency个并发连接各自连续发送请求，上一个响应结束后立即发送下一个，持续指定时间。
+ * 每个场景先预热(不计入结果)，再正式统计吞吐量、延迟分位数、网关线程的内存分配与GC次数。</p>
+ * <p>客户端、上游与网关运行在同一个JVM中，内存分配只统计客户端与上游事件循环之外的线程，
+ * 依赖HotSpot的线程内存分配计数(com.sun.management.ThreadMXBean)，期间退出的线程不计入</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class LoadDriver implements AutoCloseable {
+
+    /**
+     * 客户端事件循环线程的名称前缀
+     */
+    public static final String THREAD_PREFIX = "loadtest-client";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final int port;
+    private final int concurrency;
+    private final LoopResources loops;
+    private final ConnectionProvider connections;
+
+    public LoadDriver(int port, int concurrency) {
+        this.port = port;
+        this.concurrency = concurrency;
+        this.loops = LoopResources.create(THREAD_PREFIX, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), true);
+        this.connections = ConnectionProvider.fixed(THREAD_PREFIX, concurrency);
+    }
+
+    /**
+     * 执行一个场景
+     *
+     * @param scenario 场景
+     * @param warmup   预热时间(毫秒)
+     * @param duration 统计时间(毫秒)
+     * @return 统计结果
+     */
+    public Result run(Scenario scenario, long warmup, long duration) {
+        HttpClient client = HttpClient.create(connections)
+            .tcpConfiguration(tcp -> tcp.runOn(loops))
+            .baseUrl("http://127.0.0.1:" + port)
+            .headers(h -> scenario.getHeaders().forEach(h::set));
+        if (warmup > 0) {
+            drive(client, scenario, warmup, new Result(scenario.getName(), concurrency));
+        }
+
+        Result result = new Result(scenario.getName(), concurrency);
+        Map<Long, Long> allocatedBefore = allocatedBytes();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long start = System.nanoTime();
+        drive(client, scenario, duration, result);
+        result.elapsedNanos = System.nanoTime() - start;
+        result.allocatedBytes = delta(allocatedBefore, allocatedBytes());
+        result.gcCount = gcCount() - gcCountBefore;
+        result.gcMillis = gcTime() - gcTimeBefore;
+        return result;
+    }
+
+    /**
+     * 等待网关可用(路由加载完成)
+     *
+     * @param path    探测路径
+     * @param timeout 超时时间(毫秒)
+     * @return 是否可用
+     */
+    public boolean await(String path, long timeout) {
+        HttpClient client = HttpClient.create(connections).tcpConfiguration(tcp -> tcp.runOn(loops)).baseUrl("http://127.0.0.1:" + port);
+        long deadline = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < deadline) {
+            Integer status = client.get().uri(path).responseSingle((res, body) -> body.then(Mono.just(res.status().code())))
+                .onErrorResume(e -> Mono.just(-1))
+                .block(REQUEST_TIMEOUT);
+            if (null != status && status == 200) {
+                return true;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(500L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        connections.dispose();
+        loops.dispose();
+    }
+
+    private void drive(HttpClient client, Scenario scenario, long millis, Result result) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        Flux.range(0, concurrency)
+            .flatMap(i -> Mono.defer(() -> {
+                long start = System.nanoTime();
+                return send(client, scenario, result)
+                    .timeout(REQUEST_TIMEOUT)
+                    .doOnNext(status -> result.record(status, scenario.getExpectedStatus(), System.nanoTime() - start))
+                    .onErrorResume(e -> {
+                        result.failures.increment();
+                        return Mono.empty();
+                    });
+            }).repeat(() -> System.nanoTime() < deadline), concurrency)
+            .blockLast();
+    }
+
+    private static Mono<Integer> send(HttpClient client, Scenario scenario, Result result) {
+        HttpClient.RequestSender sender = client.request(scenario.getMethod()).uri(scenario.getPath());
+        byte[] body = scenario.getBody();
+        HttpClient.ResponseReceiver<?> receiver = null == body ? sender : sender.send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(body)));
+        return receiver.response((res, content) -> content.map(ByteBuf::readableBytes)
+            .reduce(0L, (total, size) -> total + size)
+            .map(size -> {
+                result.bytesReceived.add(size);
+                return res.status().code();
+            }))
+            .next();
+    }
+
+    private static Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> result = new HashMap<>();
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return result;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return result;
+        }
+        long self = Thread.currentThread().getId();
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (null == info || info.getThreadId() == self || info.getThreadName().startsWith(THREAD_PREFIX)
+                || info.getThreadName().startsWith(StubUpstream.THREAD_PREFIX)) {
+                continue;
+            }
+            long bytes = threads.getThreadAllocatedBytes(info.getThreadId());
+            if (bytes >= 0) {
+                result.put(info.getThreadId(), bytes);
+            }
+        }
+        return result;
+    }
+
+    private static long delta(Map<Long, Long> before, Map<Long, Long> after) {
+        if (after.isEmpty()) {
+            return -1L;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0L, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * 单个场景的统计结果
+     */
+    public static class Result {
+        private final String scenario;
+        private final int concurrency;
+        private final LogLinearHistogram latency = new LogLinearHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder unexpected = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private long elapsedNanos;
+        private long allocatedBytes;
+        private long gcCount;
+        private long gcMillis;
+
+        private Result(String scenario, int concurrency) {
+            this.scenario = scenario;
+            this.concurrency = concurrency;
+        }
+
+        private void record(int status, int expected, long nanos) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+            statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+            if (status != expected) {
+                unexpected.increment();
+            }
+        }
+
+        public String getScenario() {
+            return scenario;
+        }
+
+        public long getRequests() {
+            return latency.snapshot().getCount();
+        }
+
+        /**
+         * 状态码与期望不符或请求失败(超时、连接错误)的数量
+         */
+        public long getErrors() {
+            return unexpected.sum() + failures.sum();
+        }
+
+        public double getThroughput() {
+            return elapsedNanos <= 0 ? 0.0 : getRequests() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 网关线程每秒分配的内存(MB)，不支持统计时返回-1
+         */
+        public double getAllocationRate() {
+            return allocatedBytes < 0 || elapsedNanos <= 0 ? -1.0 : allocatedBytes * 1e9 / elapsedNanos / (1024 * 1024);
+        }
+
+        /**
+         * 网关线程平均每个请求分配的内存(字节)，不支持统计时返回-1
+         */
+        public long getAllocatedPerRequest() {
+            long requests = getRequests();
+            return allocatedBytes < 0 || requests == 0 ? -1L : allocatedBytes / requests;
+        }
+
+        /**
+         * 转换为便于输出与比较的结构，延迟单位为毫秒
+         */
+        public Map<String, Object> toMap() {
+            LogLinearHistogram.Snapshot snapshot = latency.snapshot();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("scenario", scenario);
+            map.put("concurrency", concurrency);
+            map.put("requests", snapshot.getCount());
+            map.put("errors", getErrors());
+            map.put("durationMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            map.put("throughput", round(getThroughput()));
+            map.put("meanMs", round(snapshot.getMean() / 1000));
+            map.put("p50Ms", round(snapshot.percentile(0.5) / 1000.0));
+            map.put("p90Ms", round(snapshot.percentile(0.9) / 1000.0));
+            map.put("p99Ms", round(snapshot.percentile(0.99) / 1000.0));
+            map.put("p999Ms", round(snapshot.percentile(0.999) / 1000.0));
+            map.put("maxMs", round(snapshot.getMax() / 1000.0));
+            map.put("allocMBps", round(getAllocationRate()));
+            map.put("allocPerRequest", getAllocatedPerRequest());
+            map.put("gcCount", gcCount);
+            map.put("gcMs", gcMillis);
+            map.put("bytesReceived", bytesReceived.sum());
+            Map<Integer, Long> statusCounts = new TreeMap<>();
+            statuses.forEach((status, count) -> statusCounts.put(status, count.sum()));
+            map.put("statuses", statusCounts);
+            return map;
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 100) / 100.0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.spin.cloud.gateway.loadtest;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压测场景
+ * <p>一个场景对应一种固定的请求，由{@link LoadDriver}以指定的并发反复发送</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class Scenario {
+    private final String name;
+    private final HttpMethod method;
+    private final String path;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private byte[] body;
+    private int expectedStatus = 200;
+
+    public Scenario(String name, HttpMethod method, String path) {
+        this.name = name;
+        this.method = method;
+        this.path = path;
+    }
+
+    public Scenario header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public Scenario body(byte[] body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * 期望的响应状态码，其他状态码计为错误
+     */
+    public Scenario expect(int status) {
+        this.expectedStatus = status;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HttpMethod getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public int getExpectedStatus() {
+        return expectedStatus;
+    }
+}
@@ -0,0 +1,87 @@
+package org.spin.cloud.gateway.loadtest;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 压测用的本地上游服务
+ * <p>基于Netty，只监听回环地址，响应内容预先生成，尽量不在上游消耗CPU，使压测结果反映网关自身的开销:</p>
+ * <pre>
+ *     GET  /ping  返回pong
+ *     GET  /json  返回约1KB的JSON
+ *     GET  /large 返回指定大小的JSON(可压缩)
+ *     POST /echo  原样返回请求体
+ * </pre>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class StubUpstream implements AutoCloseable {
+
+    /**
+     * 上游事件循环线程的名称前缀，统计网关内存分配时排除
+     */
+    public static final String THREAD_PREFIX = "stub-upstream";
+
+    private final LoopResources loops;
+    private final DisposableServer server;
+
+    public StubUpstream(int largeSize) {
+        byte[] json = jsonOfSize(1024);
+        byte[] large = jsonOfSize(largeSize);
+        loops = LoopResources.create(THREAD_PREFIX, 2, true);
+        server = HttpServer.create()
+            .tcpConfiguration(tcp -> tcp.runOn(loops))
+            .host("127.0.0.1")
+            .port(0)
+            .route(routes -> routes
+                .get("/ping", (req, res) -> res.sendString(Mono.just("pong")))
+                .get("/json", (req, res) -> res
+                    .header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                    .header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(json.length))
+                    .send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(json))))
+                .get("/large", (req, res) -> res
+                    .header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                    .header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(large.length))
+                    .send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(large))))
+                .post("/echo", (req, res) -> res
+                    .header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_OCTET_STREAM)
+                    .send(req.receive().retain())))
+            .bindNow();
+    }
+
+    public int port() {
+        return server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        loops.dispose();
+    }
+
+    /**
+     * 生成指定大小的JSON数组，内容重复度与一般的列表接口相当
+     */
+    static byte[] jsonOfSize(int size) {
+        StringBuilder sb = new StringBuilder(size + 128).append('[');
+        for (int i = 0; sb.length() < size - 2; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(100000 + i)
+                .append(",\"name\":\"item-").append(i % 97)
+                .append("\",\"enabled\":").append(i % 3 != 0)
+                .append(",\"updateTime\":\"2019-12-23T10:").append(10 + i % 50).append(":00\"}");
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,293 @@
+package org.spin.cloud.gateway.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.filter.TokenResolveFilter;
+import org.spin.cloud.gateway.support.SlidingCountMinSketch;
+import org.spin.cloud.gateway.vo.WhiteListInfo;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异常访问检测
+ * <p>按IP与Token在滑动窗口(gateway.abuse.window)内统计请求数、上游返回的401/403数与Token解析失败数，
+ * 任一计数超过阈值时，将请求来源IP加入动态黑名单(有效期gateway.abuse.banTime)。由Token触发时，窗口内使用该Token的每个来源IP都会被禁止。
+ * 服务实例的地址不会被禁止。</p>
+ * <p>来源IP取{@link TokenResolveFilter#PEER_IP_ATTR}，即连接的远端地址或可信代理(gateway.trustedProxies)追加的转发地址，
+ * 客户端伪造的X-Forwarded-For不会导致其他地址被禁止。同一出口地址(NAT、未配置为可信代理的反向代理)后的所有用户共享计数，
+ * 因此默认不启用(gateway.abuse.enabled)，启用前需要按实际流量调整阈值</p>
+ * <p>计数保存在{@link SlidingCountMinSketch}中，内存占用固定，不随攻击来源的数量增长；
+ * 计数超过阈值一半的键记入容量有限的高频列表，用于查看与排查。阈值配置为0时不检测对应的指标</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class AbuseDetector implements MeterBinder, InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(AbuseDetector.class);
+
+    /**
+     * 请求Token的哈希(exchange属性)，由{@link TokenResolveFilter}放入
+     */
+    public static final String TOKEN_HASH_ATTR = AbuseDetector.class.getName() + ".tokenHash";
+
+    /**
+     * 统计的指标
+     */
+    public enum Signal {
+        /**
+         * 请求数
+         */
+        REQUEST,
+
+        /**
+         * 上游返回401/403
+         */
+        AUTH_FAILURE,
+
+        /**
+         * Token解析失败
+         */
+        JWT_FAILURE
+    }
+
+    private static final Signal[] SIGNALS = Signal.values();
+
+    private final WhiteListInfo whiteListInfo;
+    private final Map<String, HeavyHitter> heavyHitters = new ConcurrentHashMap<>();
+    private final LongAdder[] blocked = new LongAdder[SIGNALS.length];
+    private final int[] thresholds = new int[SIGNALS.length];
+    private SlidingCountMinSketch[] sketches;
+    private ScheduledExecutorService scheduler;
+
+    @Value("${gateway.abuse.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${gateway.abuse.window:60000}")
+    private long window = 60_000L;
+
+    @Value("${gateway.abuse.buckets:6}")
+    private int buckets = 6;
+
+    @Value("${gateway.abuse.sketchWidth:8192}")
+    private int sketchWidth = 8192;
+
+    @Value("${gateway.abuse.sketchDepth:4}")
+    private int sketchDepth = 4;
+
+    @Value("${gateway.abuse.requestThreshold:6000}")
+    private int requestThreshold = 6000;
+
+    @Value("${gateway.abuse.authFailureThreshold:100}")
+    private int authFailureThreshold = 100;
+
+    @Value("${gateway.abuse.jwtFailureThreshold:50}")
+    private int jwtFailureThreshold = 50;
+
+    @Value("${gateway.abuse.banTime:600000}")
+    private long banTime = 600_000L;
+
+    @Value("${gateway.abuse.heavyHitters:64}")
+    private int heavyHitterCapacity = 64;
+
+    public AbuseDetector(WhiteListInfo whiteListInfo) {
+        this.whiteListInfo = whiteListInfo;
+        for (int i = 0; i < blocked.length; ++i) {
+            blocked[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        thresholds[Signal.REQUEST.ordinal()] = requestThreshold;
+        thresholds[Signal.AUTH_FAILURE.ordinal()] = authFailureThreshold;
+        thresholds[Signal.JWT_FAILURE.ordinal()] = jwtFailureThreshold;
+        if (!enabled) {
+            return;
+        }
+        long slotMillis = Math.max(1000L, window / Math.max(1, buckets));
+        sketches = new SlidingCountMinSketch[SIGNALS.length];
+        for (int i = 0; i < sketches.length; ++i) {
+            sketches[i] = new SlidingCountMinSketch(sketchWidth, sketchDepth, buckets, slotMillis);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "abuse-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::rotate, 0L, slotMillis / 2, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return null != sketches;
+    }
+
+    /**
+     * 记录一次指标，直连来源IP与Token哈希从请求属性中获取
+     *
+     * @param signal   指标
+     * @param exchange 请求
+     */
+    public void record(Signal signal, ServerWebExchange exchange) {
+        if (null == sketches || thresholds[signal.ordinal()] <= 0) {
+            return;
+        }
+        String ip = exchange.getAttribute(TokenResolveFilter.PEER_IP_ATTR);
+        if (null == ip) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        SlidingCountMinSketch sketch = sketches[signal.ordinal()];
+        check(signal, ip, null, sketch.add(SlidingCountMinSketch.hash(ip), now), now);
+        Long tokenHash = exchange.getAttribute(TOKEN_HASH_ATTR);
+        if (null != tokenHash) {
+            check(signal, ip, tokenHash, sketch.add(tokenHash, now), now);
+        }
+    }
+
+    /**
+     * 高频列表，按超出阈值的比例降序排列
+     *
+     * @return 高频的IP与Token(只显示哈希)
+     */
+    public List<Map<String, Object>> status() {
+        List<HeavyHitter> list = new ArrayList<>(heavyHitters.values());
+        list.sort(Comparator.comparingDouble(this::ratio).reversed());
+        List<Map<String, Object>> result = new ArrayList<>(list.size());
+        long now = System.currentTimeMillis();
+        for (HeavyHitter hitter : list) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", hitter.key);
+            for (Signal signal : SIGNALS) {
+                item.put(signal.name().toLowerCase(), hitter.estimates.get(signal.ordinal()));
+            }
+            item.put("lastSeen", hitter.lastSeen);
+            item.put("blocked", hitter.blockedUntil > now);
+            result.add(item);
+        }
+        return result;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        for (Signal signal : SIGNALS) {
+            FunctionCounter.builder("gateway.abuse.blocked", blocked[signal.ordinal()], LongAdder::sum)
+                .tag("signal", signal.name().toLowerCase())
+                .register(registry);
+        }
+        Gauge.builder("gateway.abuse.heavyHitters", heavyHitters, Map::size).register(registry);
+    }
+
+    private void check(Signal signal, String ip, Long tokenHash, int estimate, long now) {
+        int threshold = thresholds[signal.ordinal()];
+        if (estimate < threshold / 2) {
+            return;
+        }
+        String key = null == tokenHash ? "ip:" + ip : "token:" + Long.toHexString(tokenHash);
+        HeavyHitter hitter = heavyHitters.get(key);
+        if (null == hitter) {
+            hitter = admit(key, signal, estimate);
+            if (null == hitter) {
+                return;
+            }
+        }
+        hitter.update(signal, estimate, now);
+
+        if (estimate >= threshold && !whiteListInfo.contains(ip) && (null != tokenHash || hitter.blockedUntil <= now)) {
+            TokenResolveFilter.addToBlackList(ip, banTime);
+            hitter.blockedUntil = now + banTime;
+            blocked[signal.ordinal()].increment();
+            logger.warn("异常访问检测: {}在{}ms内的{}计数达到{}(阈值{})，禁止来源IP[{}]访问{}ms", key, window, signal, estimate,
+                threshold, ip, banTime);
+        }
+    }
+
+    /**
+     * 加入高频列表，列表已满时替换超出阈值比例最低且低于当前键的条目
+     */
+    private HeavyHitter admit(String key, Signal signal, int estimate) {
+        if (heavyHitters.size() >= heavyHitterCapacity) {
+            double current = (double) estimate / thresholds[signal.ordinal()];
+            HeavyHitter min = null;
+            double minRatio = Double.MAX_VALUE;
+            for (HeavyHitter hitter : heavyHitters.values()) {
+                double ratio = ratio(hitter);
+                if (ratio < minRatio) {
+                    min = hitter;
+                    minRatio = ratio;
+                }
+            }
+            if (null == min || minRatio >= current) {
+                return null;
+            }
+            heavyHitters.remove(min.key, min);
+        }
+        return heavyHitters.computeIfAbsent(key, HeavyHitter::new);
+    }
+
+    private double ratio(HeavyHitter hitter) {
+        double max = 0;
+        for (Signal signal : SIGNALS) {
+            if (thresholds[signal.ordinal()] > 0) {
+                max = Math.max(max, (double) hitter.estimates.get(signal.ordinal()) / thresholds[signal.ordinal()]);
+            }
+        }
+        return max;
+    }
+
+    private void rotate() {
+        try {
+            long now = System.currentTimeMillis();
+            for (SlidingCountMinSketch sketch : sketches) {
+                sketch.rotate(now);
+            }
+            heavyHitters.values().removeIf(it -> now - it.lastSeen > window && it.blockedUntil <= now);
+        } catch (Exception e) {
+            logger.warn("异常访问检测计数轮转失败", e);
+        }
+    }
+
+    private static final class HeavyHitter {
+        private final String key;
+        private final AtomicIntegerArray estimates = new AtomicIntegerArray(SIGNALS.length);
+        private volatile long lastSeen;
+        private volatile long blockedUntil;
+
+        private HeavyHitter(String key) {
+            this.key = key;
+        }
+
+        private void update(Signal signal, int estimate, long now) {
+            estimates.set(signal.ordinal(), estimate);
+            lastSeen = now;
+        }
+    }
+}
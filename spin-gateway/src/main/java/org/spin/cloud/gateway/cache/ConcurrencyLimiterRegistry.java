@@ -0,0 +1,210 @@
+package org.spin.cloud.gateway.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.support.ErrorResponses;
+import org.spin.cloud.gateway.support.GradientLimit;
+import org.spin.core.ErrorCode;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应并发限制器注册表
+ * <p>按路由、以及路由下的每个上游实例分别维护{@link GradientLimit}。路由的限制参数变更后，对应的限制器在下次请求时重建</p>
+ * <p>路由刷新后移除已删除路由的限制器；实例限制器超过gateway.concurrency.idleTimeout(毫秒)未使用时由后台任务移除，
+ * 实例下线或更换地址后不会一直保留。被限制器拒绝的请求记为drop，外层(路由级)限制器不会把它当作一次成功的请求</p>
+ * <p>Created by xuweinan on 2019/12/20</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class ConcurrencyLimiterRegistry implements MeterBinder, ApplicationListener<RefreshRoutesEvent>, InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiterRegistry.class);
+    private static final ErrorResponses.Template BUSY = ErrorResponses.of(ErrorCode.with(503, "服务繁忙，请稍后再试"));
+    private static final String REJECTED_ATTR = ConcurrencyLimiterRegistry.class.getName() + ".rejected";
+    private static final long SWEEP_INTERVAL = 60_000L;
+
+    private final Map<String, GradientLimit> routes = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, GradientLimit>> instances = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+    private final RouteDefinitionLocator routeDefinitionLocator;
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "concurrency-limit-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${gateway.concurrency.idleTimeout:600000}")
+    private long idleTimeout = 600_000L;
+
+    public ConcurrencyLimiterRegistry(RouteDefinitionLocator routeDefinitionLocator) {
+        this.routeDefinitionLocator = routeDefinitionLocator;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        sweeper.scheduleWithFixedDelay(this::sweepIdle, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull RefreshRoutesEvent event) {
+        routeDefinitionLocator.getRouteDefinitions().map(RouteDefinition::getId).collectList()
+            .subscribe(this::retainRoutes, e -> logger.warn("清理已删除路由的并发限制器失败", e));
+    }
+
+    /**
+     * 获取路由的限制器
+     *
+     * @param routeId  路由ID
+     * @param settings 限制参数
+     * @return 限制器
+     */
+    public GradientLimit route(String routeId, GradientLimit.Settings settings) {
+        return obtain(routes, routeId, settings);
+    }
+
+    /**
+     * 获取上游实例的限制器
+     *
+     * @param routeId  路由ID
+     * @param instance 实例(host:port)
+     * @param settings 限制参数
+     * @return 限制器
+     */
+    public GradientLimit instance(String routeId, String instance, GradientLimit.Settings settings) {
+        Map<String, GradientLimit> limits = instances.get(routeId);
+        if (null == limits) {
+            limits = instances.computeIfAbsent(routeId, k -> new ConcurrentHashMap<>());
+        }
+        return obtain(limits, instance, settings);
+    }
+
+    /**
+     * 在限制器的许可下执行后续过滤器链，超出限制时直接返回服务繁忙
+     * <p>服务繁忙的响应与网关其他错误响应一样使用200状态码，因此通过exchange属性标记，
+     * 外层限制器据此将内层的拒绝记为drop</p>
+     *
+     * @param limit    限制器
+     * @param exchange 当前请求
+     * @param chain    过滤器链
+     * @return 执行结果
+     */
+    public Mono<Void> execute(GradientLimit limit, ServerWebExchange exchange, GatewayFilterChain chain) {
+        int inflight = limit.acquire();
+        if (inflight < 0) {
+            rejected.increment();
+            exchange.getAttributes().put(REJECTED_ATTR, Boolean.TRUE);
+            return BUSY.write(exchange.getResponse());
+        }
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            if (signal == SignalType.CANCEL) {
+                limit.onIgnore();
+            } else if (signal == SignalType.ON_ERROR || isDropped(exchange.getResponse().getStatusCode())
+                || exchange.getAttributes().containsKey(REJECTED_ATTR)) {
+                limit.onDropped();
+            } else {
+                limit.onSuccess(System.nanoTime() - start, inflight);
+            }
+        });
+    }
+
+    /**
+     * 所有限制器的状态
+     *
+     * @return 状态信息
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> result = new TreeMap<>();
+        routes.forEach((routeId, limit) -> {
+            Map<String, Object> route = new LinkedHashMap<>(limit.status());
+            Map<String, Object> instanceStatus = new TreeMap<>();
+            Map<String, GradientLimit> limits = instances.get(routeId);
+            if (null != limits) {
+                limits.forEach((instance, l) -> instanceStatus.put(instance, l.status()));
+            }
+            route.put("instances", instanceStatus);
+            result.put(routeId, route);
+        });
+        return result;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("gateway.concurrency.rejected", rejected, LongAdder::sum).register(registry);
+        Gauge.builder("gateway.concurrency.inflight", this, ConcurrencyLimiterRegistry::inflight).register(registry);
+    }
+
+    private double inflight() {
+        long total = 0;
+        for (GradientLimit limit : routes.values()) {
+            total += limit.getInflight();
+        }
+        return total;
+    }
+
+    private void retainRoutes(List<String> routeIds) {
+        Set<String> current = new HashSet<>(routeIds);
+        routes.keySet().retainAll(current);
+        instances.keySet().retainAll(current);
+    }
+
+    private void sweepIdle() {
+        try {
+            long now = System.currentTimeMillis();
+            instances.values().forEach(limits -> limits.values()
+                .removeIf(limit -> limit.getInflight() == 0 && now - limit.getLastUsed() > idleTimeout));
+            instances.values().removeIf(Map::isEmpty);
+        } catch (Exception e) {
+            logger.warn("清理空闲的并发限制器失败", e);
+        }
+    }
+
+    private static GradientLimit obtain(Map<String, GradientLimit> limits, String key, GradientLimit.Settings settings) {
+        GradientLimit limit = limits.get(key);
+        if (null == limit || !limit.getSettings().equals(settings)) {
+            limit = limits.compute(key, (k, v) -> null == v || !v.getSettings().equals(settings) ? new GradientLimit(settings) : v);
+        }
+        return limit;
+    }
+
+    private static boolean isDropped(HttpStatus status) {
+        return HttpStatus.SERVICE_UNAVAILABLE == status || HttpStatus.GATEWAY_TIMEOUT == status
+            || HttpStatus.TOO_MANY_REQUESTS == status;
+    }
+}
@@ -0,0 +1,220 @@
+package org.spin.cloud.gateway.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 网关响应缓存
+ * <p>缓存启用了ResponseCacheFilter的路由的响应，按响应体字节数限制总容量(gateway.responseCache.maxBytes)。
+ * 过期的条目在重新验证(If-None-Match)前仍然保留，容量不足时优先淘汰已过期的条目</p>
+ * <p>Created by xuweinan on 2019/12/19</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class ResponseCache implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>(1024);
+    private final AtomicLong bytes = new AtomicLong();
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Value("${gateway.responseCache.maxBytes:67108864}")
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * 获取缓存条目(可能已过期)，不存在时返回null
+     *
+     * @param key 缓存键
+     * @return 缓存条目
+     */
+    public Entry get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * 缓存响应
+     *
+     * @param key       缓存键
+     * @param routeId   路由ID
+     * @param headers   响应头
+     * @param body      响应体
+     * @param etag      实体标签
+     * @param generated 实体标签是否由网关生成(上游未提供)，此时无法向上游重新验证
+     * @param ttl       有效期(毫秒)
+     */
+    public void put(String key, String routeId, HttpHeaders headers, byte[] body, String etag, boolean generated, long ttl) {
+        if (ttl <= 0 || body.length > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(routeId, HttpHeaders.readOnlyHttpHeaders(headers), body, etag, generated, System.currentTimeMillis() + ttl);
+        Entry old = cache.put(key, entry);
+        if (null != old) {
+            bytes.addAndGet(-old.body.length);
+        }
+        if (bytes.addAndGet(body.length) > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * 上游确认缓存内容未变化(304)后延长有效期
+     *
+     * @param entry 缓存条目
+     * @param ttl   有效期(毫秒)
+     */
+    public void refresh(Entry entry, long ttl) {
+        entry.expireAt = System.currentTimeMillis() + Math.max(0L, ttl);
+        revalidated.increment();
+    }
+
+    /**
+     * 清除指定路由的缓存
+     *
+     * @param routeId 路由ID，为空时清除全部缓存
+     */
+    public void purge(String routeId) {
+        int removed = 0;
+        Iterator<Entry> it = cache.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (null == routeId || routeId.equals(entry.routeId)) {
+                it.remove();
+                bytes.addAndGet(-entry.body.length);
+                ++removed;
+            }
+        }
+        evictions.add(removed);
+        if (removed > 0) {
+            logger.info("清除路由[{}]的响应缓存: {}", null == routeId ? "*" : routeId, removed);
+        }
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("gateway.responseCache.hits", hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder("gateway.responseCache.misses", misses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("gateway.responseCache.revalidated", revalidated, LongAdder::sum).register(registry);
+        FunctionCounter.builder("gateway.responseCache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("gateway.responseCache.size", this, ResponseCache::size).register(registry);
+        Gauge.builder("gateway.responseCache.bytes", this, ResponseCache::getBytes).baseUnit("bytes").register(registry);
+    }
+
+    /**
+     * 容量超出时淘汰条目：优先清理已过期的条目，仍不足时按遍历顺序淘汰至容量的3/4
+     * <p>同一时刻只允许一个线程执行淘汰，其他线程直接跳过</p>
+     */
+    private void evict() {
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            int removed = 0;
+            Iterator<Entry> it = cache.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.expireAt <= now) {
+                    it.remove();
+                    bytes.addAndGet(-entry.body.length);
+                    ++removed;
+                }
+            }
+            long target = maxBytes - (maxBytes >> 2);
+            it = cache.values().iterator();
+            while (bytes.get() > target && it.hasNext()) {
+                Entry entry = it.next();
+                it.remove();
+                bytes.addAndGet(-entry.body.length);
+                ++removed;
+            }
+            evictions.add(removed);
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /**
+     * 缓存条目，除有效期外不可变
+     */
+    public static final class Entry {
+        private final String routeId;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final String etag;
+        private final boolean generated;
+        private volatile long expireAt;
+
+        private Entry(String routeId, HttpHeaders headers, byte[] body, String etag, boolean generated, long expireAt) {
+            this.routeId = routeId;
+            this.headers = headers;
+            this.body = body;
+            this.etag = etag;
+            this.generated = generated;
+            this.expireAt = expireAt;
+        }
+
+        public boolean isFresh(long now) {
+            return expireAt > now;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        /**
+         * 响应体，多个请求共享，调用方不允许修改
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * 是否可以通过If-None-Match向上游重新验证
+         */
+        public boolean isRevalidatable() {
+            return !generated;
+        }
+    }
+}
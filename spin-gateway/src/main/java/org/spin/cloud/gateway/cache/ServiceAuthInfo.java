@@ -3,8 +3,8 @@ package org.spin.cloud.gateway.cache;
 import java.util.List;
 
 /**
- * TITLE
- * <p>DESCRIPTION</p>
+ * 服务接口授权信息
+ * <p>由各服务发布(参见spin-common中的AuthMetadataController)，网关据此在转发前校验认证与可见范围</p>
  * <p>Created by xuweinan on 2019/6/11</p>
  *
  * @author xuweinan
@@ -16,4 +16,39 @@ public class ServiceAuthInfo {
     private boolean auth;
     private List<String> permissions;
     private boolean internal;
+    private List<String> methods;
+
+    /**
+     * 是否支持指定的请求方法
+     *
+     * @param method 请求方法
+     * @return 是否支持
+     */
+    public boolean supports(String method) {
+        return null == methods || methods.isEmpty() || methods.contains(method);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isAuth() {
+        return auth;
+    }
+
+    public List<String> getPermissions() {
+        return permissions;
+    }
+
+    public boolean isInternal() {
+        return internal;
+    }
+
+    public List<String> getMethods() {
+        return methods;
+    }
 }
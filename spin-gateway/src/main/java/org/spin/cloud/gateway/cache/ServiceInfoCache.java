@@ -1,16 +1,221 @@
 package org.spin.cloud.gateway.cache;
 
-import java.util.List;
-import java.util.Map;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.support.PathTrie;
+import org.spin.core.gson.reflect.TypeToken;
+import org.spin.core.util.JsonUtils;
+import org.spin.core.util.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 服务信息缓存
- * <p>DESCRIPTION</p>
+ * <p>为每个服务维护一棵接口路径前缀树，将请求路径解析为对应接口的授权信息。</p>
+ * <p>授权信息由各服务通过{@link #METADATA_PATH}发布，后台线程定时及在注册中心缓存刷新时拉取，
+ * 拉取时携带上次的版本号，服务未发生变化时返回304，只有发生变化的服务才会重建前缀树</p>
  * <p>Created by xuweinan on 2019/6/11</p>
  *
  * @author xuweinan
  * @version 1.0
  */
-public class ServiceInfoCache {
-    Map<String, List<ServiceAuthInfo>> caches;
+@Component
+public class ServiceInfoCache implements ApplicationListener<HeartbeatEvent>, MeterBinder, InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceInfoCache.class);
+
+    /**
+     * 服务发布授权信息的地址
+     */
+    public static final String METADATA_PATH = "/internal/auth/metadata";
+
+    private static final TypeToken<Metadata> METADATA_TYPE = new TypeToken<Metadata>() {
+    };
+
+    private final Map<String, ServiceAuthIndex> caches = new ConcurrentHashMap<>();
+    private final DiscoveryClient discoveryClient;
+    private final WebClient webClient = WebClient.create();
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private ScheduledExecutorService executor;
+    private Scheduler scheduler;
+
+    @Value("${spring.application.name:}")
+    private String applicationName;
+
+    @Value("${gateway.authIndex.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${gateway.authIndex.refreshInterval:60000}")
+    private long refreshInterval = 60_000L;
+
+    public ServiceInfoCache(DiscoveryClient discoveryClient) {
+        this.discoveryClient = discoveryClient;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "auth-index-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Schedulers.fromExecutorService(executor);
+        executor.scheduleWithFixedDelay(this::refresh, 0L, Math.max(1000L, refreshInterval), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull HeartbeatEvent event) {
+        if (enabled && refreshPending.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::refresh);
+            } catch (Exception e) {
+                refreshPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * 解析请求对应的接口授权信息
+     *
+     * @param serviceId 服务名称
+     * @param path      请求路径
+     * @param method    请求方法
+     * @return 授权信息，服务未发布授权信息或接口不存在时返回null
+     */
+    public ServiceAuthInfo resolve(String serviceId, String path, String method) {
+        if (!enabled || null == serviceId) {
+            return null;
+        }
+        ServiceAuthIndex index = caches.get(serviceId.toLowerCase());
+        if (null == index) {
+            return null;
+        }
+        List<ServiceAuthInfo> candidates = index.trie.match(path);
+        if (null == candidates) {
+            return null;
+        }
+        for (ServiceAuthInfo info : candidates) {
+            if (info.supports(method)) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return caches.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("gateway.authIndex.services", this, ServiceInfoCache::size).register(registry);
+    }
+
+    private void refresh() {
+        refreshPending.set(false);
+        if (!enabled) {
+            caches.clear();
+            return;
+        }
+        try {
+            Set<String> services = new HashSet<>();
+            for (String service : discoveryClient.getServices()) {
+                String serviceId = service.toLowerCase();
+                if (serviceId.equalsIgnoreCase(applicationName)) {
+                    continue;
+                }
+                services.add(serviceId);
+                List<ServiceInstance> instances = discoveryClient.getInstances(service);
+                if (!instances.isEmpty()) {
+                    fetch(serviceId, instances.get(ThreadLocalRandom.current().nextInt(instances.size())));
+                }
+            }
+            caches.keySet().retainAll(services);
+        } catch (Exception e) {
+            logger.warn("刷新服务授权信息失败", e);
+        }
+    }
+
+    private void fetch(String serviceId, ServiceInstance instance) {
+        ServiceAuthIndex current = caches.get(serviceId);
+        WebClient.RequestHeadersSpec<?> request = webClient.get().uri(instance.getUri().toString() + METADATA_PATH);
+        if (null != current) {
+            request.header(HttpHeaders.IF_NONE_MATCH, "\"" + current.version + "\"");
+        }
+        request.exchange()
+            .flatMap(response -> {
+                if (response.statusCode() != HttpStatus.OK) {
+                    return response.bodyToMono(Void.class).then(Mono.<String>empty());
+                }
+                return response.bodyToMono(String.class);
+            })
+            .timeout(Duration.ofSeconds(5))
+            .publishOn(scheduler)
+            .subscribe(body -> update(serviceId, body),
+                e -> logger.debug("拉取服务[{}]授权信息失败: {}", serviceId, e.getMessage()));
+    }
+
+    private void update(String serviceId, String body) {
+        Metadata metadata = JsonUtils.fromJson(body, METADATA_TYPE);
+        if (null == metadata || StringUtils.isEmpty(metadata.version) || null == metadata.apis) {
+            return;
+        }
+        Map<String, List<ServiceAuthInfo>> grouped = new LinkedHashMap<>();
+        for (ServiceAuthInfo api : metadata.apis) {
+            if (StringUtils.isNotEmpty(api.getPath())) {
+                grouped.computeIfAbsent(api.getPath(), k -> new ArrayList<>(1)).add(api);
+            }
+        }
+        PathTrie<List<ServiceAuthInfo>> trie = new PathTrie<>();
+        grouped.forEach(trie::insert);
+        trie.compact();
+        caches.put(serviceId, new ServiceAuthIndex(metadata.version, trie));
+        logger.info("服务[{}]授权信息已更新: {}个接口, 版本{}", serviceId, trie.size(), metadata.version);
+    }
+
+    private static final class ServiceAuthIndex {
+        private final String version;
+        private final PathTrie<List<ServiceAuthInfo>> trie;
+
+        private ServiceAuthIndex(String version, PathTrie<List<ServiceAuthInfo>> trie) {
+            this.version = version;
+            this.trie = trie;
+        }
+    }
+
+    private static final class Metadata {
+        private String version;
+        private List<ServiceAuthInfo> apis;
+    }
 }
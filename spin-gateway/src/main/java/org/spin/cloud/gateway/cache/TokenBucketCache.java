@@ -0,0 +1,229 @@
+package org.spin.cloud.gateway.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.support.TokenBucket;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 限流令牌桶缓存
+ * <p>令牌桶保存在本地，请求路径上只有一次Map查找与一次CAS，不访问任何远程存储。
+ * 长时间未使用(令牌已补满)的令牌桶会被定时清理。</p>
+ * <p>开启Redis同步后，每个同步周期将本节点消耗的令牌数批量累加到Redis中按周期划分的计数键上，
+ * 并读取上一周期的全局计数，扣除其他节点在该周期消耗的令牌，实现多节点间近似的全局限流</p>
+ * <p>Created by xuweinan on 2019/12/13</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class TokenBucketCache implements MeterBinder, InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(TokenBucketCache.class);
+    private static final String REDIS_KEY_PREFIX = "gateway:rateLimit:";
+
+    private final Map<String, Entry> buckets = new ConcurrentHashMap<>(256);
+    private final ObjectProvider<ReactiveStringRedisTemplate> redisTemplateProvider;
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder syncFailures = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+
+    @Value("${gateway.rateLimit.redisSync:false}")
+    private boolean redisSync;
+
+    @Value("${gateway.rateLimit.syncInterval:500}")
+    private long syncInterval = 500L;
+
+    @Value("${gateway.rateLimit.idleSweepInterval:10000}")
+    private long idleSweepInterval = 10_000L;
+
+    public TokenBucketCache(ObjectProvider<ReactiveStringRedisTemplate> redisTemplateProvider) {
+        this.redisTemplateProvider = redisTemplateProvider;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rate-limit-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(50L, syncInterval);
+        scheduler.scheduleAtFixedRate(this::syncWithRedis, interval, interval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::sweepIdle, idleSweepInterval, idleSweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 尝试从指定的令牌桶获取一个令牌，令牌桶不存在或配置发生变化时重新创建
+     *
+     * @param key           令牌桶标识
+     * @param replenishRate 每秒补充的令牌数
+     * @param burstCapacity 桶容量
+     * @return 是否获取成功
+     */
+    public boolean tryAcquire(String key, double replenishRate, int burstCapacity) {
+        Entry entry = buckets.get(key);
+        if (null == entry || !entry.bucket.isSameConfig(replenishRate, burstCapacity)) {
+            entry = buckets.compute(key, (k, v) -> null == v || !v.bucket.isSameConfig(replenishRate, burstCapacity)
+                ? new Entry(new TokenBucket(replenishRate, burstCapacity)) : v);
+        }
+        if (entry.bucket.tryAcquire(System.nanoTime())) {
+            allowed.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * 清除指定路由的全部令牌桶
+     *
+     * @param routeId 路由ID
+     */
+    public void evictRoute(String routeId) {
+        String prefix = routeId + '|';
+        buckets.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getSyncFailures() {
+        return syncFailures.sum();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("gateway.rateLimit.allowed", this, TokenBucketCache::getAllowed).register(registry);
+        FunctionCounter.builder("gateway.rateLimit.rejected", this, TokenBucketCache::getRejected).register(registry);
+        FunctionCounter.builder("gateway.rateLimit.sync.failures", this, TokenBucketCache::getSyncFailures).register(registry);
+        Gauge.builder("gateway.rateLimit.buckets", this, TokenBucketCache::size).register(registry);
+    }
+
+    private void sweepIdle() {
+        try {
+            long now = System.nanoTime();
+            buckets.values().removeIf(entry -> entry.bucket.isIdle(now));
+        } catch (Exception e) {
+            logger.warn("清理限流令牌桶失败", e);
+        }
+    }
+
+    /**
+     * 与Redis同步令牌消耗
+     * <p>上一轮同步尚未完成时跳过本轮，避免命令堆积</p>
+     */
+    private void syncWithRedis() {
+        if (!redisSync || buckets.isEmpty()) {
+            return;
+        }
+        ReactiveStringRedisTemplate redisTemplate = redisTemplateProvider.getIfAvailable();
+        if (null == redisTemplate || !syncing.compareAndSet(false, true)) {
+            return;
+        }
+        long interval = Math.max(50L, syncInterval);
+        long window = System.currentTimeMillis() / interval;
+        Duration keyTtl = Duration.ofMillis(interval * 3);
+        try {
+            Flux.fromIterable(buckets.entrySet())
+                .flatMap(e -> syncBucket(redisTemplate, e.getKey(), e.getValue(), window, keyTtl), 64)
+                .doFinally(s -> syncing.set(false))
+                .subscribe(null, e -> {
+                    syncFailures.increment();
+                    logger.warn("限流令牌同步失败: {}", e.getMessage());
+                });
+        } catch (Exception e) {
+            syncing.set(false);
+            syncFailures.increment();
+            logger.warn("限流令牌同步失败", e);
+        }
+    }
+
+    private Mono<Void> syncBucket(ReactiveStringRedisTemplate redisTemplate, String key, Entry entry, long window, Duration keyTtl) {
+        if (entry.window != window) {
+            entry.ownPrevious = entry.window == window - 1 ? entry.ownCurrent : 0L;
+            entry.ownCurrent = 0L;
+            entry.window = window;
+        }
+        long delta = entry.bucket.drainConsumed();
+        entry.ownCurrent += delta;
+
+        Mono<Void> push = Mono.empty();
+        if (delta > 0) {
+            String currentKey = REDIS_KEY_PREFIX + key + ':' + window;
+            push = redisTemplate.opsForValue().increment(currentKey, delta)
+                .flatMap(total -> redisTemplate.expire(currentKey, keyTtl))
+                .then();
+        }
+
+        Mono<Void> pull = Mono.empty();
+        if (entry.appliedWindow != window) {
+            entry.appliedWindow = window;
+            long ownPrevious = entry.ownPrevious;
+            pull = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + key + ':' + (window - 1))
+                .doOnNext(total -> {
+                    long remote = Long.parseLong(total) - ownPrevious;
+                    entry.bucket.consume(remote, System.nanoTime());
+                })
+                .then();
+        }
+        return push.and(pull).onErrorResume(e -> {
+            syncFailures.increment();
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * 令牌桶及其同步状态(同步状态只在同步线程中读写)
+     */
+    private static final class Entry {
+        private final TokenBucket bucket;
+        private long window;
+        private long appliedWindow = -1L;
+        private long ownCurrent;
+        private long ownPrevious;
+
+        private Entry(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.spin.cloud.gateway.cache;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.core.util.DigestUtils;
+import org.spin.core.util.HexUtils;
+import org.spin.core.util.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 已验签Token缓存
+ * <p>以Token的SHA-256摘要为键，缓存签名校验通过后的Claims，避免同一Token重复进行签名校验。
+ * 缓存条目的过期时间不会晚于Token自身的exp，公钥刷新时需要清空缓存</p>
+ * <p>Created by xuweinan on 2019/12/11</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>(1024);
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Value("${gateway.tokenCache.maxSize:100000}")
+    private int maxSize = 100_000;
+
+    @Value("${gateway.tokenCache.maxTtl:600000}")
+    private long maxTtl = 600_000L;
+
+    /**
+     * 获取已验签的Claims，未命中或已过期时返回null
+     * <p>返回的Claims为多个请求共享，调用方不允许修改</p>
+     *
+     * @param token 原始Token
+     * @return Claims
+     */
+    public Claims get(String token) {
+        if (maxSize <= 0 || StringUtils.isEmpty(token)) {
+            return null;
+        }
+        String key = digest(token);
+        Entry entry = cache.get(key);
+        if (null == entry) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            cache.remove(key, entry);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.claims;
+    }
+
+    /**
+     * 缓存已验签的Claims
+     *
+     * @param token  原始Token
+     * @param claims 验签通过后的Claims
+     */
+    public void put(String token, Claims claims) {
+        if (maxSize <= 0 || StringUtils.isEmpty(token) || null == claims) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expireAt = now + maxTtl;
+        Date expiration = claims.getExpiration();
+        if (null != expiration) {
+            expireAt = Math.min(expireAt, expiration.getTime());
+        }
+        if (expireAt <= now) {
+            return;
+        }
+        if (cache.size() >= maxSize) {
+            evict(now);
+        }
+        cache.put(digest(token), new Entry(claims, expireAt));
+    }
+
+    /**
+     * 清空缓存(公钥刷新时调用)
+     */
+    public void invalidateAll() {
+        int size = cache.size();
+        cache.clear();
+        evictions.add(size);
+        logger.info("已验签Token缓存已清空: {}", size);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("gateway.token.cache.hits", this, VerifiedTokenCache::getHits).register(registry);
+        FunctionCounter.builder("gateway.token.cache.misses", this, VerifiedTokenCache::getMisses).register(registry);
+        FunctionCounter.builder("gateway.token.cache.evictions", this, VerifiedTokenCache::getEvictions).register(registry);
+        Gauge.builder("gateway.token.cache.size", this, VerifiedTokenCache::size).register(registry);
+    }
+
+    /**
+     * 缓存已满时淘汰条目：优先清理已过期的条目，仍不足时按遍历顺序淘汰至容量的3/4
+     * <p>同一时刻只允许一个线程执行淘汰，其他线程直接跳过</p>
+     */
+    private void evict(long now) {
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            int removed = 0;
+            Iterator<Entry> it = cache.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().expireAt <= now) {
+                    it.remove();
+                    ++removed;
+                }
+            }
+            int target = maxSize - (maxSize >> 2);
+            it = cache.values().iterator();
+            while (cache.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+                ++removed;
+            }
+            evictions.add(removed);
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private static String digest(String token) {
+        return HexUtils.encodeHexStringL(DigestUtils.sha256(token));
+    }
+
+    private static final class Entry {
+        private final Claims claims;
+        private final long expireAt;
+
+        private Entry(Claims claims, long expireAt) {
+            this.claims = claims;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.spin.cloud.gateway.service.DynamicRouteService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.core.Ordered;
@@ -11,7 +12,8 @@ import org.springframework.stereotype.Component;
 
 /**
  * 动态路由初始化
- * <p>DESCRIPTION</p>
+ * <p>存在本地路由快照时，先从快照加载路由，不等待数据库；随后在后台线程按版本与数据库做增量比对，
+ * 数据库不可用时每隔gateway.route.reconcileInterval(毫秒)重试，直到成功。没有快照时直接从数据库加载</p>
  * <p>Created by xuweinan on 2019/3/13</p>
  *
  * @author xuweinan
@@ -23,6 +25,9 @@ public class DynamicRouteDefinitionInitializer implements ApplicationRunner, Ord
 
     private final DynamicRouteService dynamicRouteService;
 
+    @Value("${gateway.route.reconcileInterval:30000}")
+    private long reconcileInterval = 30_000L;
+
     @Autowired
     public DynamicRouteDefinitionInitializer(DynamicRouteService dynamicRouteService) {
         this.dynamicRouteService = dynamicRouteService;
@@ -31,7 +36,34 @@ public class DynamicRouteDefinitionInitializer implements ApplicationRunner, Ord
     @Override
     public void run(ApplicationArguments args) {
         logger.info("系统启动，初始化动态路由信息");
-        dynamicRouteService.reload();
+        if (null == dynamicRouteService.loadSnapshot()) {
+            dynamicRouteService.reload();
+            return;
+        }
+
+        Thread reconcile = new Thread(this::reconcile, "route-snapshot-reconcile");
+        reconcile.setDaemon(true);
+        reconcile.start();
+    }
+
+    /**
+     * 与数据库做增量比对，失败时重试
+     */
+    private void reconcile() {
+        while (true) {
+            try {
+                dynamicRouteService.reload(true);
+                return;
+            } catch (Exception e) {
+                logger.warn("路由快照与数据库比对失败, {}ms后重试: {}", reconcileInterval, e.getMessage());
+            }
+            try {
+                Thread.sleep(reconcileInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
     @Override
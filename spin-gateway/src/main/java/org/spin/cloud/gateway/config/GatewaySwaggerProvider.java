@@ -1,23 +1,35 @@
 package org.spin.cloud.gateway.config;
 
 
+import org.spin.core.util.DigestUtils;
 import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
 import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.CachingRouteLocator;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.support.NameUtils;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Primary;
+import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import springfox.documentation.swagger.web.SwaggerResource;
 import springfox.documentation.swagger.web.SwaggerResourcesProvider;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * 文档聚合提供者
- * <p>DESCRIPTION</p>
+ * <p>根据路由的Path断言生成各服务的文档地址。生成结果会被缓存，只有路由刷新(RefreshRoutesEvent，
+ * 包括动态路由的增删改与重新加载)时才失效，下次请求时重新生成。</p>
+ * <p>生成时使用不带缓存的RouteLocator，不依赖CachingRouteLocator与本监听器处理刷新事件的先后顺序，
+ * 失效后的请求总是读取到最新的路由</p>
  * <p>Created by xuweinan on 2019/3/11</p>
  *
  * @author xuweinan
@@ -25,23 +37,68 @@ import java.util.Set;
  */
 @Component
 @Primary
-public class GatewaySwaggerProvider implements SwaggerResourcesProvider {
+public class GatewaySwaggerProvider implements SwaggerResourcesProvider, ApplicationListener<RefreshRoutesEvent> {
     public static final String API_URI = "/v2/api-docs";
-    private final RouteLocator routeLocator;
+    private final List<RouteLocator> routeLocators;
     private final GatewayProperties gatewayProperties;
     private final RouteDefinitionLocator routeDefinitionLocator;
 
-    public GatewaySwaggerProvider(RouteLocator routeLocator, GatewayProperties gatewayProperties, RouteDefinitionLocator routeDefinitionLocator) {
-        this.routeLocator = routeLocator;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Resources resources;
+
+    /**
+     * @param routeLocators          所有RouteLocator，其中带缓存的RouteLocator会被排除
+     * @param gatewayProperties      网关配置
+     * @param routeDefinitionLocator 路由定义
+     */
+    public GatewaySwaggerProvider(List<RouteLocator> routeLocators, GatewayProperties gatewayProperties, RouteDefinitionLocator routeDefinitionLocator) {
+        this.routeLocators = routeLocators.stream().filter(it -> !(it instanceof CachingRouteLocator)).collect(Collectors.toList());
         this.gatewayProperties = gatewayProperties;
         this.routeDefinitionLocator = routeDefinitionLocator;
     }
 
     @Override
     public List<SwaggerResource> get() {
+        return current().list;
+    }
+
+    /**
+     * 当前文档列表的版本，用作ETag
+     *
+     * @return 版本
+     */
+    public String getVersion() {
+        return current().version;
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull RefreshRoutesEvent event) {
+        generation.incrementAndGet();
+        resources = null;
+    }
+
+    private Resources current() {
+        Resources current = resources;
+        if (null == current) {
+            synchronized (this) {
+                current = resources;
+                if (null == current) {
+                    long gen = generation.get();
+                    current = new Resources(build());
+                    // 生成期间路由发生了刷新，结果可能已过期，不缓存
+                    if (gen == generation.get()) {
+                        resources = current;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    private List<SwaggerResource> build() {
         List<SwaggerResource> resources = new ArrayList<>();
         Set<String> routes = new HashSet<>();
-        routeLocator.getRoutes().filter(route -> !route.getId().equals("bnd-gateway")).subscribe(route -> routes.add(route.getId()));
+        Flux.fromIterable(routeLocators).concatMap(RouteLocator::getRoutes).filter(route -> !route.getId().equals("bnd-gateway")).subscribe(route -> routes.add(route.getId()));
         routeDefinitionLocator.getRouteDefinitions().filter(definition -> routes.contains(definition.getId())).subscribe(routeDefinition -> routeDefinition.getPredicates().stream()
             .filter(predicateDefinition -> "Path".equalsIgnoreCase(predicateDefinition.getName()) && predicateDefinition.getArgs().containsKey("pattern"))
             .forEach(predicateDefinition -> resources.add(swaggerResource(routeDefinition.getId(),
@@ -63,4 +120,16 @@ public class GatewaySwaggerProvider implements SwaggerResourcesProvider {
         swaggerResource.setSwaggerVersion("2.0");
         return swaggerResource;
     }
+
+    private static final class Resources {
+        private final List<SwaggerResource> list;
+        private final String version;
+
+        private Resources(List<SwaggerResource> list) {
+            this.list = Collections.unmodifiableList(list);
+            StringBuilder sb = new StringBuilder();
+            list.forEach(r -> sb.append(r.getName()).append('\n').append(r.getLocation()).append('\n'));
+            this.version = DigestUtils.md5HexL(sb.toString());
+        }
+    }
 }
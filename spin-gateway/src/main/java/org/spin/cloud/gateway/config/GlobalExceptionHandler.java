@@ -2,6 +2,7 @@ package org.spin.cloud.gateway.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.support.ErrorResponses;
 import org.spin.core.ErrorCode;
 import org.spin.core.throwable.SimplifiedException;
 import org.spin.core.util.StringUtils;
@@ -15,6 +16,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.reactive.function.server.*;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
 import reactor.netty.http.client.PrematureCloseException;
 
 import java.net.ConnectException;
@@ -43,6 +45,28 @@ public class GlobalExceptionHandler extends DefaultErrorWebExceptionHandler {
      */
     @Override
     protected Map<String, Object> getErrorAttributes(ServerRequest request, boolean includeStackTrace) {
+        ErrorResponses.Template template = resolve(request);
+        Map<String, Object> map = new HashMap<>(8);
+        map.put("timestamp", System.currentTimeMillis());
+        map.put("status", template.getStatus());
+        map.put("path", request.path());
+        map.put("error", template.getError());
+        map.put("message", template.getMessage());
+        map.put("data", null);
+        return map;
+    }
+
+    /**
+     * 输出异常信息，使用预编码的响应模板，只拼接时间戳与请求路径
+     */
+    @Override
+    protected Mono<ServerResponse> renderErrorResponse(ServerRequest request) {
+        ErrorResponses.Template template = resolve(request);
+        String path = request.path();
+        return ServerResponse.ok().body((outputMessage, context) -> template.write(outputMessage, path));
+    }
+
+    private ErrorResponses.Template resolve(ServerRequest request) {
         int code = 500;
         String msg = ErrorCode.INTERNAL_ERROR.getDesc();
         String errorMsg = null;
@@ -55,7 +79,7 @@ public class GlobalExceptionHandler extends DefaultErrorWebExceptionHandler {
             code = 404;
             msg = "请求的资源不存在";
             errorMsg = HttpStatus.NOT_FOUND.toString();
-            return response(code, msg, request.path(), errorMsg);
+            return response(code, msg, errorMsg);
         } else if (error instanceof SimplifiedException) {
             code = ((SimplifiedException) error).getExceptionType().getCode();
             code = Math.max(code, 500);
@@ -63,15 +87,15 @@ public class GlobalExceptionHandler extends DefaultErrorWebExceptionHandler {
             if (error.getCause() instanceof ResponseStatusException) {
                 errorMsg = StringUtils.toString(((ResponseStatusException) error.getCause()).getStatus());
             }
-            return response(code, msg, request.path(), errorMsg);
+            return dynamicResponse(code, msg, errorMsg);
         } else if (error instanceof ConnectException) {
             if (error.getCause() instanceof ConnectException) {
-                return response(801, "远程服务连接超时: " + error.getMessage().substring(error.getCause().getMessage().length() + 2), request.path(), null);
+                return dynamicResponse(801, "远程服务连接超时: " + error.getMessage().substring(error.getCause().getMessage().length() + 2), null);
             } else {
-                return response(801, "远程服务连接超时", request.path(), null);
+                return response(801, "远程服务连接超时", null);
             }
         } else if (error instanceof UnknownHostException) {
-            return response(802, "无法解析服务主机: " + error.getMessage(), request.path(), null);
+            return dynamicResponse(802, "无法解析服务主机: " + error.getMessage(), null);
         } else if (error instanceof ResponseStatusException) {
             HttpStatus status = ((ResponseStatusException) error).getStatus();
             errorMsg = status.toString();
@@ -86,16 +110,17 @@ public class GlobalExceptionHandler extends DefaultErrorWebExceptionHandler {
                 code = 405;
                 HttpMethod method = request.method();
                 msg = String.format("不支持的请求类型: %s [%s]", (method == null ? "Unknown" : method.name()), request.path());
+                return dynamicResponse(code, msg, errorMsg);
             }
-            return response(code, msg, request.path(), errorMsg);
+            return response(code, msg, errorMsg);
         } else if (error instanceof PrematureCloseException) {
             code = ErrorCode.NETWORK_EXCEPTION.getCode();
             msg = "网络连接被关闭";
             errorMsg = error.getMessage();
-            return response(code, msg, request.path(), errorMsg);
+            return dynamicResponse(code, msg, errorMsg);
         }
         logger.warn("网关发生未处理异常", error);
-        return response(code, msg, request.path(), error.getMessage());
+        return dynamicResponse(code, msg, error.getMessage());
     }
 
     @Override
@@ -109,19 +134,24 @@ public class GlobalExceptionHandler extends DefaultErrorWebExceptionHandler {
     }
 
     /**
-     * 构建返回的JSON数据格式
+     * 构建返回的JSON数据格式(内容固定，使用缓存的模板)
      *
      * @param status  状态码
      * @param message 异常信息
+     * @param error   错误类型
      */
-    private Map<String, Object> response(int status, String message, String path, String error) {
-        Map<String, Object> map = new HashMap<>(8);
-        map.put("timestamp", System.currentTimeMillis());
-        map.put("status", status);
-        map.put("path", path);
-        map.put("error", error);
-        map.put("message", message);
-        map.put("data", null);
-        return map;
+    private ErrorResponses.Template response(int status, String message, String error) {
+        return ErrorResponses.of(status, message, error);
+    }
+
+    /**
+     * 构建返回的JSON数据格式(包含异常信息等动态内容，不缓存)
+     *
+     * @param status  状态码
+     * @param message 异常信息
+     * @param error   错误类型
+     */
+    private ErrorResponses.Template dynamicResponse(int status, String message, String error) {
+        return ErrorResponses.render(status, message, error);
     }
 }
@@ -0,0 +1,54 @@
+package org.spin.cloud.gateway.config;
+
+import org.spin.cloud.gateway.handler.CompiledRoutePredicateHandlerMapping;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
+
+/**
+ * 路由匹配配置
+ * <p>注册{@link CompiledRoutePredicateHandlerMapping}，并将Spring Cloud Gateway默认的路由匹配排到其后，
+ * 默认匹配只在索引匹配不到路由时兜底。gateway.route.compiledMatcher配置为false时不启用</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Configuration
+@ConditionalOnProperty(name = "gateway.route.compiledMatcher", havingValue = "true", matchIfMissing = true)
+public class RouteMatcherConfig {
+
+    @Bean
+    public CompiledRoutePredicateHandlerMapping compiledRoutePredicateHandlerMapping(FilteringWebHandler webHandler,
+                                                                                     RouteLocator routeLocator,
+                                                                                     List<RouteLocator> routeLocators,
+                                                                                     RouteDefinitionLocator routeDefinitionLocator,
+                                                                                     GlobalCorsProperties globalCorsProperties,
+                                                                                     Environment environment) {
+        return new CompiledRoutePredicateHandlerMapping(webHandler, routeLocator, routeLocators, routeDefinitionLocator,
+            globalCorsProperties, environment);
+    }
+
+    @Bean
+    public static BeanPostProcessor defaultRouteHandlerMappingOrderPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof RoutePredicateHandlerMapping && !(bean instanceof CompiledRoutePredicateHandlerMapping)) {
+                    RoutePredicateHandlerMapping mapping = (RoutePredicateHandlerMapping) bean;
+                    mapping.setOrder(mapping.getOrder() + 1);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package org.spin.cloud.gateway.controller;
 
+import org.spin.cloud.gateway.cache.ConcurrencyLimiterRegistry;
 import org.spin.cloud.gateway.filter.TokenResolveFilter;
 import org.spin.cloud.gateway.service.DynamicRouteService;
 import org.spin.cloud.gateway.vo.RestfulResponse;
@@ -8,6 +9,7 @@ import org.springframework.cloud.gateway.route.RouteDefinition;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.stream.Collectors;
 
 /**
@@ -23,10 +25,12 @@ import java.util.stream.Collectors;
 public class RouteController {
 
     private final DynamicRouteService routeService;
+    private final ConcurrencyLimiterRegistry limiterRegistry;
 
     @Autowired
-    public RouteController(DynamicRouteService routeService) {
+    public RouteController(DynamicRouteService routeService, ConcurrencyLimiterRegistry limiterRegistry) {
         this.routeService = routeService;
+        this.limiterRegistry = limiterRegistry;
     }
 
     /**
@@ -61,6 +65,26 @@ public class RouteController {
         return Mono.just(RestfulResponse.ok());
     }
 
+    /**
+     * 查询最近一次动态路由加载的结果(新增、更新、删除的路由数量)
+     *
+     * @return 加载结果
+     */
+    @GetMapping("reload/result")
+    public Mono<RestfulResponse> lastReloadResult() {
+        return Mono.just(RestfulResponse.ok(routeService.getLastReloadResult()));
+    }
+
+    /**
+     * 查询各路由及其上游实例的自适应并发限制状态
+     *
+     * @return 限制器状态
+     */
+    @GetMapping("limits")
+    public Mono<RestfulResponse> concurrencyLimits() {
+        return Mono.just(RestfulResponse.ok(limiterRegistry.status()));
+    }
+
     /**
      * 新增动态路由
      *
@@ -73,6 +97,19 @@ public class RouteController {
         return Mono.just(RestfulResponse.ok());
     }
 
+    /**
+     * 批量导入动态路由(新增或更新)，整批在一个事务中写入，集群只收到一条路由变更消息
+     *
+     * @param definitions 动态路由定义
+     * @param strict      严格模式，存在校验不通过的路由时整批不导入
+     * @return 每条路由的处理结果与导入耗时
+     */
+    @PostMapping("batch")
+    public Mono<RestfulResponse> importRoutes(@RequestBody List<RouteDefinition> definitions,
+                                              @RequestParam(defaultValue = "false") boolean strict) {
+        return Mono.just(RestfulResponse.ok(routeService.importRoutes(definitions, strict)));
+    }
+
     /**
      * 更新动态路由
      *
@@ -97,6 +134,29 @@ public class RouteController {
         return Mono.just(RestfulResponse.ok());
     }
 
+    /**
+     * 清除全部响应缓存
+     *
+     * @return 操作结果
+     */
+    @DeleteMapping("cache")
+    public Mono<RestfulResponse> purgeCache() {
+        routeService.sendCachePurgeEvent(null);
+        return Mono.just(RestfulResponse.ok());
+    }
+
+    /**
+     * 清除指定路由的响应缓存
+     *
+     * @param routeId 动态路由ID
+     * @return 操作结果
+     */
+    @DeleteMapping("cache/{routeId}")
+    public Mono<RestfulResponse> purgeCache(@PathVariable String routeId) {
+        routeService.sendCachePurgeEvent(routeId);
+        return Mono.just(RestfulResponse.ok());
+    }
+
     /**
      * 重新加载黑名单
      *
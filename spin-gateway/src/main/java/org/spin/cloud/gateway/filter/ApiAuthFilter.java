@@ -0,0 +1,74 @@
+package org.spin.cloud.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.spin.cloud.gateway.cache.ServiceAuthInfo;
+import org.spin.cloud.gateway.cache.ServiceInfoCache;
+import org.spin.cloud.gateway.support.ErrorResponses;
+import org.spin.core.ErrorCode;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * 接口授权过滤器
+ * <p>在路由确定目标服务之后、负载均衡之前，根据服务发布的接口授权信息拦截仅允许内部调用的接口，
+ * 以及需要认证但未携带有效Token的请求，避免无效请求转发到后端服务。</p>
+ * <p>服务未发布授权信息或请求路径未匹配到接口时直接放行，由服务自身校验</p>
+ * <p>Created by xuweinan on 2019/12/15</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class ApiAuthFilter implements GlobalFilter, Ordered {
+    private static final String LB_SCHEME = "lb";
+    private static final ErrorResponses.Template INTERNAL_ONLY = ErrorResponses.of(ErrorCode.ACCESS_DENINED, "请勿进行非法请求!");
+
+    private final ServiceInfoCache serviceInfoCache;
+    private final Counter internalRejected;
+    private final Counter unauthRejected;
+
+    public ApiAuthFilter(ServiceInfoCache serviceInfoCache, MeterRegistry meterRegistry) {
+        this.serviceInfoCache = serviceInfoCache;
+        this.internalRejected = meterRegistry.counter("gateway.authIndex.rejected", "reason", "internal");
+        this.unauthRejected = meterRegistry.counter("gateway.authIndex.rejected", "reason", "unauthenticated");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (null == url || !LB_SCHEME.equalsIgnoreCase(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+
+        ServiceAuthInfo info = serviceInfoCache.resolve(url.getHost(), url.getRawPath(), exchange.getRequest().getMethodValue());
+        if (null == info) {
+            return chain.filter(exchange);
+        }
+
+        if (info.isInternal()) {
+            internalRejected.increment();
+            return INTERNAL_ONLY.write(exchange.getResponse());
+        }
+
+        if (info.isAuth() && null == exchange.getAttribute(TokenResolveFilter.USER_ID_ATTR)) {
+            unauthRejected.increment();
+            ErrorCode errorCode = exchange.getAttribute(TokenResolveFilter.TOKEN_ERROR_ATTR);
+            return ErrorResponses.of(null == errorCode ? ErrorCode.ACCESS_DENINED : errorCode).write(exchange.getResponse());
+        }
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1;
+    }
+}
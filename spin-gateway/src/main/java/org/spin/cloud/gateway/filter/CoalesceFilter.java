@@ -0,0 +1,263 @@
+package org.spin.cloud.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.spin.cloud.gateway.support.SharedResponseHeaders;
+import org.spin.core.util.StringUtils;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * GET请求合并过滤器
+ * <p>同一时刻到达的相同GET请求只转发一次，其余请求等待并共享这一次的响应，在路由定义的filters中配置，例如:</p>
+ * <pre>
+ *     {"name": "CoalesceFilter", "args": {"maxBodySize": "262144", "headers": "Accept-Language,Accept", "waitTimeout": "3000"}}
+ * </pre>
+ * <p>请求是否相同由路由、路径、查询参数、调用者身份(TokenResolveFilter解析出的From头)以及headers中配置的请求头共同决定。
+ * 响应体超过maxBodySize、流式响应、设置了Cookie或者转发失败时，等待中的请求各自转发；等待超过waitTimeout(毫秒)的请求也各自转发</p>
+ * <p>共享给等待请求的只有描述响应内容的响应头，CORS、Set-Cookie与逐跳头不共享，见{@link SharedResponseHeaders}</p>
+ * <p>合并后的请求不再经过后续的路由过滤器(如限流)，只适合幂等且对所有同身份调用者结果相同的接口</p>
+ * <p>Created by xuweinan on 2019/12/18</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class CoalesceFilter extends AbstractGatewayFilterFactory<CoalesceFilter.Config> {
+
+    /**
+     * 需要在NettyWriteResponseFilter之前执行，才能截获响应内容
+     */
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private static final SharedResponse NONE = new SharedResponse(null, null, null);
+
+    private final Map<String, MonoProcessor<SharedResponse>> inflight = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter followers;
+    private final Counter fallbacks;
+
+    public CoalesceFilter(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.leaders = meterRegistry.counter("gateway.coalesce.requests", "role", "leader");
+        this.followers = meterRegistry.counter("gateway.coalesce.requests", "role", "follower");
+        this.fallbacks = meterRegistry.counter("gateway.coalesce.fallbacks");
+        Gauge.builder("gateway.coalesce.inflight", inflight, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("maxBodySize", "headers", "waitTimeout");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        int maxBodySize = config.getMaxBodySize();
+        Duration waitTimeout = Duration.ofMillis(Math.max(1L, config.getWaitTimeout()));
+        List<String> headers = null == config.getHeaders() ? Collections.emptyList() : new ArrayList<>(config.getHeaders());
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            if (HttpMethod.GET != exchange.getRequest().getMethod()) {
+                return chain.filter(exchange);
+            }
+            String key = resolveKey(exchange, headers);
+            MonoProcessor<SharedResponse> flight = MonoProcessor.create();
+            MonoProcessor<SharedResponse> existing = inflight.putIfAbsent(key, flight);
+            if (null != existing) {
+                followers.increment();
+                return existing.timeout(waitTimeout, Mono.just(NONE)).flatMap(shared -> {
+                    if (shared == NONE) {
+                        fallbacks.increment();
+                        return chain.filter(exchange);
+                    }
+                    return shared.write(exchange.getResponse());
+                });
+            }
+
+            leaders.increment();
+            return lead(exchange, chain, key, flight, maxBodySize);
+        }, ORDER);
+    }
+
+    private Mono<Void> lead(ServerWebExchange exchange, GatewayFilterChain chain, String key,
+                            MonoProcessor<SharedResponse> flight, int maxBodySize) {
+        CapturingResponse response = new CapturingResponse(exchange.getResponse(), maxBodySize);
+        return chain.filter(exchange.mutate().response(response).build())
+            .doFinally(signal -> {
+                inflight.remove(key, flight);
+                flight.onNext(signal == SignalType.ON_COMPLETE ? response.toShared() : NONE);
+            });
+    }
+
+    private String resolveKey(ServerWebExchange exchange, List<String> headers) {
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        StringBuilder key = new StringBuilder(128);
+        key.append(null == route ? "" : route.getId()).append('\n')
+            .append(request.getURI().getRawPath()).append('?').append(StringUtils.trimToEmpty(request.getURI().getRawQuery()))
+            .append('\n').append(StringUtils.trimToEmpty(request.getHeaders().getFirst(HttpHeaders.FROM)));
+        for (String header : headers) {
+            key.append('\n').append(StringUtils.trimToEmpty(request.getHeaders().getFirst(header)));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 记录响应状态、响应头与不超过上限的响应体
+     */
+    private static final class CapturingResponse extends ServerHttpResponseDecorator {
+        private final int maxBodySize;
+        private final List<byte[]> chunks = new ArrayList<>();
+        private int size;
+        private boolean overflow;
+        private HttpStatus status;
+        private HttpHeaders headers;
+
+        private CapturingResponse(ServerHttpResponse delegate, int maxBodySize) {
+            super(delegate);
+            this.maxBodySize = maxBodySize;
+        }
+
+        @Override
+        @NonNull
+        public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+            status = getStatusCode();
+            // 设置Cookie的响应不能共享
+            if (getHeaders().containsKey(HttpHeaders.SET_COOKIE)) {
+                overflow = true;
+            }
+            headers = SharedResponseHeaders.copyOf(getHeaders());
+            return super.writeWith(Flux.from(body).doOnNext(this::capture));
+        }
+
+        @Override
+        @NonNull
+        public Mono<Void> writeAndFlushWith(@NonNull Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            overflow = true;
+            return super.writeAndFlushWith(body);
+        }
+
+        private void capture(DataBuffer buffer) {
+            if (overflow) {
+                return;
+            }
+            int readable = buffer.readableByteCount();
+            size += readable;
+            if (size > maxBodySize) {
+                overflow = true;
+                chunks.clear();
+                return;
+            }
+            byte[] bytes = new byte[readable];
+            buffer.asByteBuffer().get(bytes);
+            chunks.add(bytes);
+        }
+
+        private SharedResponse toShared() {
+            if (overflow || null == headers) {
+                return NONE;
+            }
+            byte[] body = new byte[size];
+            int pos = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, body, pos, chunk.length);
+                pos += chunk.length;
+            }
+            return new SharedResponse(status, headers, body);
+        }
+    }
+
+    /**
+     * 共享的响应，只读
+     */
+    private static final class SharedResponse {
+        private final HttpStatus status;
+        private final HttpHeaders headers;
+        private final byte[] body;
+
+        private SharedResponse(HttpStatus status, HttpHeaders headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        private Mono<Void> write(ServerHttpResponse response) {
+            if (null != status) {
+                response.setStatusCode(status);
+            }
+            SharedResponseHeaders.apply(headers, response.getHeaders());
+            return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(body)));
+        }
+    }
+
+    public static class Config {
+
+        /**
+         * 可共享的最大响应体字节数
+         */
+        private int maxBodySize = 256 * 1024;
+
+        /**
+         * 参与判断请求是否相同的请求头
+         */
+        private List<String> headers;
+
+        /**
+         * 等待请求的最长等待时间(毫秒)，超时后各自转发
+         */
+        private long waitTimeout = 3000L;
+
+        public int getMaxBodySize() {
+            return maxBodySize;
+        }
+
+        public void setMaxBodySize(int maxBodySize) {
+            this.maxBodySize = maxBodySize;
+        }
+
+        public List<String> getHeaders() {
+            return headers;
+        }
+
+        public void setHeaders(List<String> headers) {
+            this.headers = headers;
+        }
+
+        public long getWaitTimeout() {
+            return waitTimeout;
+        }
+
+        public void setWaitTimeout(long waitTimeout) {
+            this.waitTimeout = waitTimeout;
+        }
+    }
+}
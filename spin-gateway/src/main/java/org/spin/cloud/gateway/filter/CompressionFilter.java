@@ -0,0 +1,300 @@
+package org.spin.cloud.gateway.filter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.reactivestreams.Publisher;
+import org.spin.cloud.gateway.support.StreamingCompressor;
+import org.spin.core.util.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 响应压缩过滤器
+ * <p>客户端声明了Accept-Encoding时，对超过指定大小的响应体做gzip/deflate压缩，在路由定义的filters中配置，例如:</p>
+ * <pre>
+ *     {"name": "CompressionFilter", "args": {"minSize": "2048", "level": "6", "excludedTypes": "image/,video/,application/zip"}}
+ * </pre>
+ * <p>压缩逐块进行，不缓存整个响应体；响应没有Content-Length时，先缓存不超过minSize的数据用于判断是否需要压缩。
+ * 已经编码过(Content-Encoding)、Cache-Control: no-transform、206/204/304以及excludedTypes(按前缀匹配)中的响应不压缩，
+ * excludedTypes未配置时排除图片、音视频、常见压缩格式与text/event-stream。</p>
+ * <p>在响应缓存之外执行，缓存中保存的是未压缩的内容，缓存命中的响应同样会按客户端的Accept-Encoding压缩。
+ * 压缩前后的字节数与压缩耗时通过gateway.compression.*指标输出</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class CompressionFilter extends AbstractGatewayFilterFactory<CompressionFilter.Config> implements MeterBinder {
+
+    /**
+     * 在响应缓存之前执行
+     */
+    public static final int ORDER = ResponseCacheFilter.ORDER - 1;
+
+    private static final List<String> DEFAULT_EXCLUDED_TYPES = Collections.unmodifiableList(Arrays.asList("image/", "video/",
+        "audio/", "font/woff", "text/event-stream", "application/zip", "application/gzip", "application/x-gzip",
+        "application/x-compress", "application/x-7z-compressed", "application/x-rar-compressed", "application/octet-stream",
+        "application/pdf"));
+
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final StreamingCompressor.Pool pool;
+
+    public CompressionFilter(@Value("${gateway.compression.poolSize:0}") int poolSize) {
+        super(Config.class);
+        this.pool = new StreamingCompressor.Pool(poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("minSize", "level");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        int minSize = Math.max(0, config.getMinSize());
+        int level = Math.max(1, Math.min(9, config.getLevel()));
+        List<String> excludedTypes = null == config.getExcludedTypes() ? DEFAULT_EXCLUDED_TYPES :
+            config.getExcludedTypes().stream().map(it -> it.trim().toLowerCase()).filter(StringUtils::isNotEmpty).collect(Collectors.toList());
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            if (HttpMethod.HEAD == exchange.getRequest().getMethod()) {
+                return chain.filter(exchange);
+            }
+            StreamingCompressor.Encoding encoding = negotiate(exchange.getRequest().getHeaders().get(HttpHeaders.ACCEPT_ENCODING));
+            if (null == encoding) {
+                return chain.filter(exchange);
+            }
+            CompressingResponse response = new CompressingResponse(exchange, encoding, minSize, level, excludedTypes);
+            return chain.filter(exchange.mutate().response(response).build());
+        }, ORDER);
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("gateway.compression.responses", responses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("gateway.compression.bytes.in", bytesIn, LongAdder::sum).baseUnit("bytes").register(registry);
+        FunctionCounter.builder("gateway.compression.bytes.out", bytesOut, LongAdder::sum).baseUnit("bytes").register(registry);
+        FunctionCounter.builder("gateway.compression.bytes.saved", this, it -> it.bytesIn.sum() - it.bytesOut.sum())
+            .baseUnit("bytes").register(registry);
+        FunctionCounter.builder("gateway.compression.time", nanos, it -> it.sum() / (double) TimeUnit.SECONDS.toNanos(1))
+            .baseUnit("seconds").register(registry);
+    }
+
+    /**
+     * 按Accept-Encoding选择编码，优先gzip，q=0表示不接受
+     */
+    private static StreamingCompressor.Encoding negotiate(List<String> acceptEncodings) {
+        if (null == acceptEncodings || acceptEncodings.isEmpty()) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String header : acceptEncodings) {
+            for (String item : StringUtils.split(header, ",")) {
+                String[] parts = StringUtils.split(item, ";");
+                if (parts.length == 0) {
+                    continue;
+                }
+                String coding = parts[0].trim().toLowerCase();
+                boolean accepted = true;
+                for (int i = 1; i < parts.length; ++i) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            accepted = Double.parseDouble(param.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            accepted = false;
+                        }
+                    }
+                }
+                if (!accepted) {
+                    continue;
+                }
+                if ("gzip".equals(coding) || "x-gzip".equals(coding) || "*".equals(coding)) {
+                    gzip = true;
+                } else if ("deflate".equals(coding)) {
+                    deflate = true;
+                }
+            }
+        }
+        return gzip ? StreamingCompressor.Encoding.GZIP : (deflate ? StreamingCompressor.Encoding.DEFLATE : null);
+    }
+
+    /**
+     * 根据响应头判断是否需要压缩，需要时对响应体逐块压缩
+     */
+    private final class CompressingResponse extends ServerHttpResponseDecorator {
+        private final StreamingCompressor.Encoding encoding;
+        private final int minSize;
+        private final int level;
+        private final List<String> excludedTypes;
+
+        private CompressingResponse(ServerWebExchange exchange, StreamingCompressor.Encoding encoding, int minSize, int level,
+                                    List<String> excludedTypes) {
+            super(exchange.getResponse());
+            this.encoding = encoding;
+            this.minSize = minSize;
+            this.level = level;
+            this.excludedTypes = excludedTypes;
+        }
+
+        @Override
+        @NonNull
+        public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+            if (!compressible()) {
+                return super.writeWith(body);
+            }
+            HttpHeaders headers = getHeaders();
+            if (!headers.getVary().contains(HttpHeaders.ACCEPT_ENCODING)) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            long contentLength = headers.getContentLength();
+            if (contentLength >= 0) {
+                return super.writeWith(contentLength < minSize ? body : compress(Flux.from(body)));
+            }
+
+            // 长度未知时，先缓存到minSize再决定是否压缩
+            long[] size = {0L};
+            return super.writeWith(Flux.<DataBuffer>from(body)
+                .bufferUntil(buffer -> (size[0] += buffer.readableByteCount()) >= minSize)
+                .switchOnFirst((signal, flux) -> {
+                    List<DataBuffer> first = signal.get();
+                    Flux<DataBuffer> buffers = flux.concatMapIterable(Function.identity());
+                    if (null == first || first.stream().mapToLong(DataBuffer::readableByteCount).sum() < minSize) {
+                        return buffers;
+                    }
+                    return compress(buffers);
+                }));
+        }
+
+        private boolean compressible() {
+            HttpStatus status = getStatusCode();
+            if (null != status && (status.is1xxInformational() || HttpStatus.NO_CONTENT == status
+                || HttpStatus.NOT_MODIFIED == status || HttpStatus.PARTIAL_CONTENT == status)) {
+                return false;
+            }
+            HttpHeaders headers = getHeaders();
+            String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+            if (StringUtils.isNotEmpty(contentEncoding) && !"identity".equalsIgnoreCase(contentEncoding.trim())
+                || headers.containsKey(HttpHeaders.CONTENT_RANGE)
+                || StringUtils.trimToEmpty(headers.getCacheControl()).contains("no-transform")) {
+                return false;
+            }
+            MediaType contentType = headers.getContentType();
+            if (null == contentType) {
+                return false;
+            }
+            String type = (contentType.getType() + '/' + contentType.getSubtype()).toLowerCase();
+            for (String excluded : excludedTypes) {
+                if (type.startsWith(excluded)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 设置压缩后的响应头，在响应体的第一块数据写出前调用
+         */
+        private Flux<DataBuffer> compress(Flux<DataBuffer> body) {
+            HttpHeaders headers = getHeaders();
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.set(HttpHeaders.CONTENT_ENCODING, encoding.getValue());
+            String etag = headers.getETag();
+            if (StringUtils.isNotEmpty(etag) && !etag.startsWith("W/")) {
+                headers.setETag("W/" + etag);
+            }
+            DataBufferFactory bufferFactory = bufferFactory();
+            return Flux.using(() -> pool.open(encoding, level),
+                compressor -> body.<DataBuffer>handle((buffer, sink) -> {
+                    byte[] compressed;
+                    try {
+                        compressed = compressor.update(buffer.asByteBuffer());
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                    if (compressed.length > 0) {
+                        sink.next(bufferFactory.wrap(compressed));
+                    }
+                }).concatWith(Mono.fromSupplier(() -> bufferFactory.wrap(compressor.finish()))),
+                compressor -> {
+                    if (compressor.isFinished()) {
+                        responses.increment();
+                        bytesIn.add(compressor.getBytesIn());
+                        bytesOut.add(compressor.getBytesOut());
+                    }
+                    nanos.add(compressor.getNanos());
+                    compressor.close();
+                });
+        }
+    }
+
+    public static class Config {
+
+        /**
+         * 压缩的最小响应体字节数
+         */
+        private int minSize = 2048;
+
+        /**
+         * 压缩级别(1-9)，级别越高压缩率越高，耗费的CPU也越多
+         */
+        private int level = 6;
+
+        /**
+         * 不压缩的Content-Type(前缀匹配)
+         */
+        private List<String> excludedTypes;
+
+        public int getMinSize() {
+            return minSize;
+        }
+
+        public void setMinSize(int minSize) {
+            this.minSize = minSize;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+
+        public List<String> getExcludedTypes() {
+            return excludedTypes;
+        }
+
+        public void setExcludedTypes(List<String> excludedTypes) {
+            this.excludedTypes = excludedTypes;
+        }
+    }
+}
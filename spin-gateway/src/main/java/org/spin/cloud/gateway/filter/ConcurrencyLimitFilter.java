@@ -0,0 +1,142 @@
+package org.spin.cloud.gateway.filter;
+
+import org.spin.cloud.gateway.cache.ConcurrencyLimiterRegistry;
+import org.spin.cloud.gateway.support.GradientLimit;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 自适应并发限制过滤器
+ * <p>根据请求耗时(RTT)的变化自动调整路由允许的并发请求数，超出时立即返回服务繁忙，在路由定义的filters中配置，例如:</p>
+ * <pre>
+ *     {"name": "ConcurrencyLimitFilter", "args": {"initialLimit": "20", "minLimit": "4", "maxLimit": "500", "tolerance": "1.5", "perInstance": "true"}}
+ * </pre>
+ * <p>perInstance为true时，负载均衡选定实例后还会按实例再做一次限制(见{@link InstanceConcurrencyLimitFilter})，
+ * 避免单个变慢的实例占满整个路由的并发。限制器状态可以通过/v1/route/limits或actuator的concurrencylimits端点查看</p>
+ * <p>Created by xuweinan on 2019/12/20</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class ConcurrencyLimitFilter extends AbstractGatewayFilterFactory<ConcurrencyLimitFilter.Config> {
+
+    /**
+     * 实例级限制参数，由本过滤器放入，{@link InstanceConcurrencyLimitFilter}读取
+     */
+    public static final String INSTANCE_LIMIT_ATTR = ConcurrencyLimitFilter.class.getName() + ".instanceLimit";
+
+    private final ConcurrencyLimiterRegistry registry;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimiterRegistry registry) {
+        super(Config.class);
+        this.registry = registry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("initialLimit", "minLimit", "maxLimit", "tolerance");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        GradientLimit.Settings settings = new GradientLimit.Settings(config.getInitialLimit(), config.getMinLimit(),
+            config.getMaxLimit(), config.getTolerance(), config.getSmoothing());
+        boolean perInstance = config.isPerInstance();
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String routeId = null == route ? "" : route.getId();
+            if (perInstance) {
+                exchange.getAttributes().put(INSTANCE_LIMIT_ATTR, settings);
+            }
+            return registry.execute(registry.route(routeId, settings), exchange, chain);
+        };
+    }
+
+    public static class Config {
+
+        /**
+         * 初始并发限制
+         */
+        private int initialLimit = 20;
+
+        /**
+         * 最小并发限制
+         */
+        private int minLimit = 4;
+
+        /**
+         * 最大并发限制
+         */
+        private int maxLimit = 500;
+
+        /**
+         * RTT容忍系数，RTT不超过基准的tolerance倍时不收缩
+         */
+        private double tolerance = 1.5;
+
+        /**
+         * 平滑系数，取值(0, 1]
+         */
+        private double smoothing = 0.2;
+
+        /**
+         * 是否同时按上游实例限制
+         */
+        private boolean perInstance = true;
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        public void setTolerance(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public boolean isPerInstance() {
+            return perInstance;
+        }
+
+        public void setPerInstance(boolean perInstance) {
+            this.perInstance = perInstance;
+        }
+    }
+}
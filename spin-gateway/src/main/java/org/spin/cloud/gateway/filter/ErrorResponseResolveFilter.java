@@ -1,6 +1,7 @@
 package org.spin.cloud.gateway.filter;
 
 import org.reactivestreams.Publisher;
+import org.spin.cloud.gateway.cache.AbuseDetector;
 import org.spin.cloud.gateway.vo.RestfulResponse;
 import org.spin.core.ErrorCode;
 import org.spin.core.throwable.SimplifiedException;
@@ -32,6 +33,12 @@ import reactor.core.publisher.Mono;
 @Component
 public class ErrorResponseResolveFilter implements GlobalFilter, Ordered {
 
+    private final AbuseDetector abuseDetector;
+
+    public ErrorResponseResolveFilter(AbuseDetector abuseDetector) {
+        this.abuseDetector = abuseDetector;
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpResponse response = exchange.getResponse();
@@ -41,6 +48,9 @@ public class ErrorResponseResolveFilter implements GlobalFilter, Ordered {
             @Override
             public Mono<Void> writeWith(@NonNull final Publisher<? extends DataBuffer> body) {
                 if (null != getStatusCode() && body instanceof Flux) {
+                    if (getStatusCode() == HttpStatus.UNAUTHORIZED || getStatusCode() == HttpStatus.FORBIDDEN) {
+                        abuseDetector.record(AbuseDetector.Signal.AUTH_FAILURE, exchange);
+                    }
                     switch (getStatusCode()) {
                         case NOT_FOUND:
                         case BAD_GATEWAY:
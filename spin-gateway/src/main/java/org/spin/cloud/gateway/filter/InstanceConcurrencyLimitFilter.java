@@ -0,0 +1,50 @@
+package org.spin.cloud.gateway.filter;
+
+import org.spin.cloud.gateway.cache.ConcurrencyLimiterRegistry;
+import org.spin.cloud.gateway.support.GradientLimit;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.LoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * 上游实例并发限制过滤器
+ * <p>在负载均衡选定实例之后，按路由中{@link ConcurrencyLimitFilter}的参数对每个实例单独做自适应并发限制。
+ * 未配置ConcurrencyLimitFilter的路由直接放行</p>
+ * <p>Created by xuweinan on 2019/12/20</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class InstanceConcurrencyLimitFilter implements GlobalFilter, Ordered {
+
+    private final ConcurrencyLimiterRegistry registry;
+
+    public InstanceConcurrencyLimitFilter(ConcurrencyLimiterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GradientLimit.Settings settings = exchange.getAttribute(ConcurrencyLimitFilter.INSTANCE_LIMIT_ATTR);
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (null == settings || null == url || null == url.getHost() || null == route) {
+            return chain.filter(exchange);
+        }
+        return registry.execute(registry.instance(route.getId(), url.getAuthority(), settings), exchange, chain);
+    }
+
+    @Override
+    public int getOrder() {
+        return LoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+    }
+}
@@ -0,0 +1,314 @@
+package org.spin.cloud.gateway.filter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.support.InstanceStats;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.gateway.config.LoadBalancerProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.LoadBalancerClientFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 感知实例负载的负载均衡过滤器
+ * <p>替换默认的{@link LoadBalancerClientFilter}(轮询)：从服务发现的本地缓存中取实例列表，随机选出两个实例，
+ * 优先选择处理中请求数较少的一个，相同时选择耗时EWMA较低的一个(Power of Two Choices)。</p>
+ * <p>后台任务按周期统计每个实例的失败率与耗时，与同服务其他实例的中位数相比明显偏高的实例会被临时摘除，
+ * 连续摘除时摘除时长递增；同一服务被摘除的实例不超过gateway.loadBalancer.ejection.maxPercent。
+ * 请求路径上只有原子计数，检测与摘除都在后台线程完成</p>
+ * <p>gateway.loadBalancer.peerAware配置为false时退回默认的负载均衡策略</p>
+ * <p>Created by xuweinan on 2019/12/21</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class PeerAwareLoadBalancerClientFilter extends LoadBalancerClientFilter implements MeterBinder, InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(PeerAwareLoadBalancerClientFilter.class);
+    private static final String STATS_ATTR = PeerAwareLoadBalancerClientFilter.class.getName() + ".stats";
+    private static final long IDLE_TIMEOUT = 600_000L;
+
+    private final DiscoveryClient discoveryClient;
+    private final Map<String, Map<String, InstanceStats>> services = new ConcurrentHashMap<>();
+    private final LongAdder ejections = new LongAdder();
+
+    private final ScheduledExecutorService detector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "lb-outlier-detector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${gateway.loadBalancer.peerAware:true}")
+    private boolean peerAware = true;
+
+    @Value("${gateway.loadBalancer.ejection.interval:10000}")
+    private long interval = 10_000L;
+
+    @Value("${gateway.loadBalancer.ejection.minRequests:20}")
+    private long minRequests = 20;
+
+    @Value("${gateway.loadBalancer.ejection.errorRate:0.5}")
+    private double errorRate = 0.5;
+
+    @Value("${gateway.loadBalancer.ejection.latencyFactor:3.0}")
+    private double latencyFactor = 3.0;
+
+    @Value("${gateway.loadBalancer.ejection.baseTime:30000}")
+    private long baseEjectionTime = 30_000L;
+
+    @Value("${gateway.loadBalancer.ejection.maxTime:300000}")
+    private long maxEjectionTime = 300_000L;
+
+    @Value("${gateway.loadBalancer.ejection.maxPercent:50}")
+    private int maxEjectionPercent = 50;
+
+    public PeerAwareLoadBalancerClientFilter(LoadBalancerClient loadBalancer, LoadBalancerProperties properties,
+                                             DiscoveryClient discoveryClient) {
+        super(loadBalancer, properties);
+        this.discoveryClient = discoveryClient;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        // 父类在组装阶段同步调用choose()选定实例
+        Mono<Void> result = super.filter(exchange, chain);
+        InstanceStats stats = exchange.getAttribute(STATS_ATTR);
+        if (null == stats) {
+            return result;
+        }
+        long start = System.nanoTime();
+        return result.doFinally(signal -> {
+            if (signal == SignalType.CANCEL) {
+                stats.cancel();
+            } else {
+                HttpStatus status = exchange.getResponse().getStatusCode();
+                stats.finish(System.nanoTime() - start, signal == SignalType.ON_COMPLETE && (null == status || !status.is5xxServerError()));
+            }
+        });
+    }
+
+    @Override
+    protected ServiceInstance choose(ServerWebExchange exchange) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (!peerAware || null == url || null == url.getHost()) {
+            return super.choose(exchange);
+        }
+        String serviceId = url.getHost();
+        List<ServiceInstance> instances = discoveryClient.getInstances(serviceId);
+        if (null == instances || instances.isEmpty()) {
+            return super.choose(exchange);
+        }
+
+        Map<String, InstanceStats> serviceStats = services.get(serviceId);
+        if (null == serviceStats) {
+            serviceStats = services.computeIfAbsent(serviceId, k -> new ConcurrentHashMap<>());
+        }
+        int size = instances.size();
+        String[] keys = new String[size];
+        InstanceStats[] stats = new InstanceStats[size];
+        int[] candidates = new int[size];
+        int count = 0;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; ++i) {
+            keys[i] = key(instances.get(i));
+            stats[i] = serviceStats.get(keys[i]);
+            if (null == stats[i]) {
+                stats[i] = serviceStats.computeIfAbsent(keys[i], k -> new InstanceStats());
+            }
+            if (!stats[i].isEjected(now)) {
+                candidates[count++] = i;
+            }
+        }
+        if (count == 0) {
+            // 全部被摘除时忽略摘除状态
+            for (int i = 0; i < size; ++i) {
+                candidates[i] = i;
+            }
+            count = size;
+        }
+
+        int chosen = candidates[0];
+        if (count > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int a = random.nextInt(count);
+            int b = random.nextInt(count - 1);
+            if (b >= a) {
+                ++b;
+            }
+            chosen = better(stats, candidates[a], candidates[b]);
+        }
+        stats[chosen].start();
+        // 后台检测可能在start()之前恰好移除了这个空闲的统计，放回后才能继续参与检测
+        if (serviceStats.get(keys[chosen]) != stats[chosen]) {
+            serviceStats.putIfAbsent(keys[chosen], stats[chosen]);
+        }
+        exchange.getAttributes().put(STATS_ATTR, stats[chosen]);
+        return instances.get(chosen);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (interval > 0) {
+            detector.scheduleWithFixedDelay(this::detect, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        detector.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("gateway.lb.ejections", ejections, LongAdder::sum).register(registry);
+        Gauge.builder("gateway.lb.ejected", this, PeerAwareLoadBalancerClientFilter::ejectedCount).register(registry);
+    }
+
+    /**
+     * 各服务实例的负载均衡状态
+     *
+     * @return 状态信息
+     */
+    public Map<String, Map<String, Object>> status() {
+        long now = System.currentTimeMillis();
+        Map<String, Map<String, Object>> result = new ConcurrentHashMap<>();
+        services.forEach((serviceId, stats) -> {
+            Map<String, Object> instances = new ConcurrentHashMap<>();
+            stats.forEach((instance, s) -> instances.put(instance, s.status(now)));
+            result.put(serviceId, instances);
+        });
+        return result;
+    }
+
+    private static int better(InstanceStats[] stats, int a, int b) {
+        int oa = stats[a].getOutstanding();
+        int ob = stats[b].getOutstanding();
+        if (oa != ob) {
+            return oa < ob ? a : b;
+        }
+        return stats[a].getEwma() <= stats[b].getEwma() ? a : b;
+    }
+
+    private double ejectedCount() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Map<String, InstanceStats> stats : services.values()) {
+            for (InstanceStats s : stats.values()) {
+                if (s.isEjected(now)) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 离群检测：与同服务其他实例的中位数比较失败率与耗时
+     */
+    private void detect() {
+        try {
+            long now = System.currentTimeMillis();
+            services.forEach((serviceId, stats) -> detect(serviceId, stats, now));
+        } catch (Exception e) {
+            logger.warn("负载均衡离群检测失败", e);
+        }
+    }
+
+    private void detect(String serviceId, Map<String, InstanceStats> stats, long now) {
+        // 移除前在computeIfPresent中重新检查，choose()中刚开始使用的统计不会被移除
+        for (String key : new ArrayList<>(stats.keySet())) {
+            stats.computeIfPresent(key, (k, s) -> s.getOutstanding() == 0 && now - s.getLastUsed() > IDLE_TIMEOUT ? null : s);
+        }
+
+        List<String> keys = new ArrayList<>(stats.keySet());
+        int size = keys.size();
+        if (size < 2) {
+            stats.values().forEach(InstanceStats::rollWindow);
+            return;
+        }
+        InstanceStats[] instances = new InstanceStats[size];
+        double[] errorRates = new double[size];
+        double[] latencies = new double[size];
+        boolean[] sampled = new boolean[size];
+        int ejected = 0;
+        for (int i = 0; i < size; ++i) {
+            instances[i] = stats.get(keys.get(i));
+            if (null == instances[i]) {
+                continue;
+            }
+            long[] window = instances[i].rollWindow();
+            sampled[i] = window[0] >= minRequests;
+            errorRates[i] = window[0] == 0 ? 0 : (double) window[1] / window[0];
+            latencies[i] = instances[i].getEwma();
+            if (instances[i].isEjected(now)) {
+                ++ejected;
+            }
+        }
+
+        int maxEjected = size * maxEjectionPercent / 100;
+        for (int i = 0; i < size; ++i) {
+            if (null == instances[i] || !sampled[i] || instances[i].isEjected(now)) {
+                continue;
+            }
+            double peerErrorRate = peerMedian(errorRates, sampled, i);
+            double peerLatency = peerMedian(latencies, sampled, i);
+            boolean outlier = errorRates[i] >= errorRate && errorRates[i] > peerErrorRate * 2
+                || peerLatency > 0 && latencies[i] > peerLatency * latencyFactor;
+            if (!outlier) {
+                instances[i].recover();
+            } else if (ejected < maxEjected) {
+                instances[i].eject(now, baseEjectionTime, maxEjectionTime);
+                ejections.increment();
+                ++ejected;
+                logger.warn("摘除服务[{}]的实例[{}]: 失败率{}, 耗时{}ms(其他实例: {}, {}ms)", serviceId, keys.get(i),
+                    errorRates[i], (long) latencies[i] / 1_000_000L, peerErrorRate, (long) peerLatency / 1_000_000L);
+            }
+        }
+    }
+
+    private static double peerMedian(double[] values, boolean[] sampled, int exclude) {
+        double[] peers = new double[values.length];
+        int count = 0;
+        for (int i = 0; i < values.length; ++i) {
+            if (i != exclude && sampled[i]) {
+                peers[count++] = values[i];
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(peers, 0, count);
+        return (count & 1) == 1 ? peers[count >> 1] : (peers[(count >> 1) - 1] + peers[count >> 1]) / 2;
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+}
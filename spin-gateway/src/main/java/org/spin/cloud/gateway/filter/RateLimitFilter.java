@@ -0,0 +1,139 @@
+package org.spin.cloud.gateway.filter;
+
+import org.spin.cloud.gateway.cache.TokenBucketCache;
+import org.spin.cloud.gateway.support.ErrorResponses;
+import org.spin.core.ErrorCode;
+import org.spin.core.util.StringUtils;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 限流过滤器
+ * <p>基于本地令牌桶的限流，在路由定义的filters中配置，例如:</p>
+ * <pre>
+ *     {"name": "RateLimitFilter", "args": {"keyType": "ip", "replenishRate": "50", "burstCapacity": "100"}}
+ * </pre>
+ * <p>keyType支持: route(按路由)、ip(按来源IP)、user(按用户，未登录时按来源IP)。
+ * 限流配置随路由定义一起保存，通过路由更新即可热更新</p>
+ * <p>Created by xuweinan on 2019/12/13</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class RateLimitFilter extends AbstractGatewayFilterFactory<RateLimitFilter.Config> {
+    private static final ErrorResponses.Template TOO_MANY_REQUESTS = ErrorResponses.of(ErrorCode.with(429, "请求过于频繁，请稍后再试"));
+
+    private final TokenBucketCache tokenBucketCache;
+
+    public RateLimitFilter(TokenBucketCache tokenBucketCache) {
+        super(Config.class);
+        this.tokenBucketCache = tokenBucketCache;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("keyType", "replenishRate", "burstCapacity");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        KeyType keyType = KeyType.of(config.getKeyType());
+        double replenishRate = config.getReplenishRate();
+        int burstCapacity = config.getBurstCapacity() > 0 ? config.getBurstCapacity() : (int) Math.ceil(replenishRate);
+        return (exchange, chain) -> {
+            if (replenishRate <= 0) {
+                return chain.filter(exchange);
+            }
+            if (tokenBucketCache.tryAcquire(resolveKey(exchange, keyType), replenishRate, burstCapacity)) {
+                return chain.filter(exchange);
+            }
+            return TOO_MANY_REQUESTS.write(exchange.getResponse());
+        };
+    }
+
+    private String resolveKey(ServerWebExchange exchange, KeyType keyType) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = null == route ? "" : route.getId();
+        switch (keyType) {
+            case IP:
+                return routeId + "|ip|" + StringUtils.trimToEmpty(exchange.getAttribute(TokenResolveFilter.CLIENT_IP_ATTR));
+            case USER:
+                String userId = exchange.getAttribute(TokenResolveFilter.USER_ID_ATTR);
+                if (null != userId) {
+                    return routeId + "|user|" + userId;
+                }
+                return routeId + "|ip|" + StringUtils.trimToEmpty(exchange.getAttribute(TokenResolveFilter.CLIENT_IP_ATTR));
+            default:
+                return routeId + "|route|";
+        }
+    }
+
+    /**
+     * 限流维度
+     */
+    private enum KeyType {
+        ROUTE, IP, USER;
+
+        private static KeyType of(String name) {
+            if (StringUtils.isBlank(name)) {
+                return ROUTE;
+            }
+            for (KeyType type : values()) {
+                if (type.name().equalsIgnoreCase(name.trim())) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("不支持的限流维度: " + name);
+        }
+    }
+
+    public static class Config {
+
+        /**
+         * 限流维度: route/ip/user
+         */
+        private String keyType = "route";
+
+        /**
+         * 每秒补充的令牌数
+         */
+        private double replenishRate;
+
+        /**
+         * 桶容量(允许的突发请求数)，未配置时与replenishRate相同
+         */
+        private int burstCapacity;
+
+        public String getKeyType() {
+            return keyType;
+        }
+
+        public void setKeyType(String keyType) {
+            this.keyType = keyType;
+        }
+
+        public double getReplenishRate() {
+            return replenishRate;
+        }
+
+        public void setReplenishRate(double replenishRate) {
+            this.replenishRate = replenishRate;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public void setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.spin.cloud.gateway.filter;
+
+import org.reactivestreams.Publisher;
+import org.spin.cloud.gateway.cache.ResponseCache;
+import org.spin.cloud.gateway.support.SharedResponseHeaders;
+import org.spin.core.util.DigestUtils;
+import org.spin.core.util.StringUtils;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 响应缓存过滤器
+ * <p>在网关缓存GET请求的响应，在路由定义的filters中配置，例如:</p>
+ * <pre>
+ *     {"name": "ResponseCacheFilter", "args": {"ttl": "30", "maxBodySize": "1048576", "headers": "Accept-Language"}}
+ * </pre>
+ * <p>有效期优先取响应Cache-Control中的s-maxage/max-age，没有时使用ttl(秒)，为0时只缓存显式声明了有效期的响应。
+ * 响应为no-store/no-cache/private、包含Set-Cookie或Vary: *时不缓存；请求带Cache-Control: no-cache/no-store时不使用缓存。</p>
+ * <p>缓存命中时按If-None-Match返回304；缓存过期且上游提供了ETag时，携带If-None-Match向上游重新验证，上游返回304则继续使用缓存。</p>
+ * <p>缓存中只记录描述响应内容的响应头，CORS、Set-Cookie与逐跳头由每次请求自行生成，见{@link SharedResponseHeaders}。
+ * 缓存键包含调用者身份(From头)，shared配置为true时同一路径的所有调用者共享缓存。
+ * 路由变更或删除时自动清除该路由的缓存，也可以通过路由管理接口广播清除</p>
+ * <p>Created by xuweinan on 2019/12/19</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class ResponseCacheFilter extends AbstractGatewayFilterFactory<ResponseCacheFilter.Config> {
+
+    /**
+     * 在请求合并之前执行，命中缓存的请求不再参与合并
+     */
+    public static final int ORDER = CoalesceFilter.ORDER - 1;
+
+    private final ResponseCache responseCache;
+
+    public ResponseCacheFilter(ResponseCache responseCache) {
+        super(Config.class);
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("ttl", "maxBodySize", "shared", "headers");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long defaultTtl = Math.max(0L, config.getTtl()) * 1000L;
+        int maxBodySize = config.getMaxBodySize();
+        boolean shared = config.isShared();
+        List<String> headers = null == config.getHeaders() ? Collections.emptyList() : new ArrayList<>(config.getHeaders());
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (HttpMethod.GET != request.getMethod()) {
+                return chain.filter(exchange);
+            }
+            String requestCacheControl = StringUtils.trimToEmpty(request.getHeaders().getCacheControl());
+            if (requestCacheControl.contains("no-store")) {
+                return chain.filter(exchange);
+            }
+
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String routeId = null == route ? "" : route.getId();
+            String key = resolveKey(routeId, request, shared, headers);
+            ResponseCache.Entry entry = responseCache.get(key);
+            if (null != entry && entry.isFresh(System.currentTimeMillis()) && !requestCacheControl.contains("no-cache")) {
+                responseCache.recordHit();
+                return write(exchange, entry);
+            }
+            responseCache.recordMiss();
+
+            ServerWebExchange forward = exchange;
+            ResponseCache.Entry revalidating = null;
+            if (null != entry && entry.isRevalidatable()) {
+                revalidating = entry;
+                forward = exchange.mutate().request(request.mutate()
+                    .headers(h -> h.setIfNoneMatch(entry.getEtag())).build()).build();
+            }
+            CachingResponse response = new CachingResponse(exchange, key, routeId, revalidating, defaultTtl, maxBodySize);
+            return chain.filter(forward.mutate().response(response).build());
+        }, ORDER);
+    }
+
+    private String resolveKey(String routeId, ServerHttpRequest request, boolean shared, List<String> headers) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(routeId).append('\n')
+            .append(request.getURI().getRawPath()).append('?').append(StringUtils.trimToEmpty(request.getURI().getRawQuery()))
+            .append('\n');
+        if (!shared) {
+            key.append(StringUtils.trimToEmpty(request.getHeaders().getFirst(HttpHeaders.FROM)));
+        }
+        for (String header : headers) {
+            key.append('\n').append(StringUtils.trimToEmpty(request.getHeaders().getFirst(header)));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 使用缓存内容响应请求
+     */
+    private Mono<Void> write(ServerWebExchange exchange, ResponseCache.Entry entry) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (matches(exchange.getRequest().getHeaders().getIfNoneMatch(), entry.getEtag())) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            response.getHeaders().setETag(entry.getEtag());
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        SharedResponseHeaders.apply(entry.getHeaders(), response.getHeaders());
+        response.getHeaders().setETag(entry.getEtag());
+        return response.writeWith(Mono.fromSupplier(() -> {
+            byte[] body = entry.getBody();
+            return response.bufferFactory().allocateBuffer(body.length).write(body);
+        }));
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, String etag) {
+        if (null == etag || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        String target = stripWeak(etag);
+        for (String tag : ifNoneMatch) {
+            if ("*".equals(tag) || target.equals(stripWeak(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * 解析响应的缓存有效期(毫秒)，不允许缓存时返回0
+     */
+    private static long resolveTtl(HttpHeaders headers, long defaultTtl) {
+        if (headers.containsKey(HttpHeaders.SET_COOKIE) || headers.getVary().contains("*")) {
+            return 0L;
+        }
+        String cacheControl = headers.getCacheControl();
+        if (StringUtils.isEmpty(cacheControl)) {
+            return defaultTtl;
+        }
+        long maxAge = -1L;
+        for (String directive : StringUtils.split(cacheControl.toLowerCase(), ",")) {
+            directive = directive.trim();
+            if ("no-store".equals(directive) || "no-cache".equals(directive) || "private".equals(directive)) {
+                return 0L;
+            }
+            if (directive.startsWith("s-maxage=")) {
+                maxAge = parseSeconds(directive.substring(9));
+            } else if (directive.startsWith("max-age=") && maxAge < 0) {
+                maxAge = parseSeconds(directive.substring(8));
+            }
+        }
+        return maxAge < 0 ? defaultTtl : maxAge * 1000L;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Math.max(0L, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 截获上游响应：200时写入缓存，重新验证返回304时使用缓存内容响应
+     */
+    private final class CachingResponse extends ServerHttpResponseDecorator {
+        private final ServerWebExchange exchange;
+        private final String key;
+        private final String routeId;
+        private final ResponseCache.Entry revalidating;
+        private final long defaultTtl;
+        private final int maxBodySize;
+
+        private CachingResponse(ServerWebExchange exchange, String key, String routeId, ResponseCache.Entry revalidating,
+                                long defaultTtl, int maxBodySize) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.key = key;
+            this.routeId = routeId;
+            this.revalidating = revalidating;
+            this.defaultTtl = defaultTtl;
+            this.maxBodySize = maxBodySize;
+        }
+
+        @Override
+        @NonNull
+        public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+            HttpStatus status = getStatusCode();
+            if (HttpStatus.NOT_MODIFIED == status && null != revalidating) {
+                responseCache.refresh(revalidating, resolveTtl(getHeaders(), defaultTtl));
+                SharedResponseHeaders.clearShareable(getHeaders());
+                return Flux.from(body).doOnNext(DataBufferUtils::release).then(write(exchange, revalidating));
+            }
+
+            long ttl = HttpStatus.OK == status ? resolveTtl(getHeaders(), defaultTtl) : 0L;
+            long contentLength = getHeaders().getContentLength();
+            if (ttl <= 0 || contentLength > maxBodySize) {
+                return super.writeWith(body);
+            }
+
+            HttpHeaders headers = SharedResponseHeaders.copyOf(getHeaders());
+            List<byte[]> chunks = new ArrayList<>();
+            int[] size = {0};
+            return super.writeWith(Flux.from(body)
+                .doOnNext(buffer -> {
+                    if (size[0] > maxBodySize) {
+                        return;
+                    }
+                    int readable = buffer.readableByteCount();
+                    size[0] += readable;
+                    if (size[0] > maxBodySize) {
+                        chunks.clear();
+                        return;
+                    }
+                    byte[] bytes = new byte[readable];
+                    buffer.asByteBuffer().get(bytes);
+                    chunks.add(bytes);
+                })
+                .doOnComplete(() -> {
+                    if (size[0] > maxBodySize) {
+                        return;
+                    }
+                    byte[] content = new byte[size[0]];
+                    int pos = 0;
+                    for (byte[] chunk : chunks) {
+                        System.arraycopy(chunk, 0, content, pos, chunk.length);
+                        pos += chunk.length;
+                    }
+                    String etag = headers.getETag();
+                    boolean generated = StringUtils.isEmpty(etag);
+                    if (generated) {
+                        etag = "W/\"" + DigestUtils.md5Hex(content) + "\"";
+                    }
+                    headers.remove(HttpHeaders.ETAG);
+                    responseCache.put(key, routeId, headers, content, etag, generated, ttl);
+                }));
+        }
+    }
+
+    public static class Config {
+
+        /**
+         * 响应未声明有效期时的默认缓存时间(秒)，为0时不缓存
+         */
+        private long ttl;
+
+        /**
+         * 可缓存的最大响应体字节数
+         */
+        private int maxBodySize = 1024 * 1024;
+
+        /**
+         * 是否在所有调用者之间共享缓存
+         */
+        private boolean shared;
+
+        /**
+         * 参与缓存键计算的请求头
+         */
+        private List<String> headers;
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxBodySize() {
+            return maxBodySize;
+        }
+
+        public void setMaxBodySize(int maxBodySize) {
+            this.maxBodySize = maxBodySize;
+        }
+
+        public boolean isShared() {
+            return shared;
+        }
+
+        public void setShared(boolean shared) {
+            this.shared = shared;
+        }
+
+        public List<String> getHeaders() {
+            return headers;
+        }
+
+        public void setHeaders(List<String> headers) {
+            this.headers = headers;
+        }
+    }
+}
@@ -6,23 +6,26 @@ import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jwts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.spin.cloud.gateway.vo.RestfulResponse;
+import org.spin.cloud.gateway.cache.AbuseDetector;
+import org.spin.cloud.gateway.cache.VerifiedTokenCache;
+import org.spin.cloud.gateway.support.BlackListIndex;
+import org.spin.cloud.gateway.support.ErrorResponses;
+import org.spin.cloud.gateway.support.IpPrefixTrie;
+import org.spin.cloud.gateway.support.SlidingCountMinSketch;
 import org.spin.cloud.gateway.vo.WhiteListInfo;
 import org.spin.core.Assert;
 import org.spin.core.ErrorCode;
 import org.spin.core.security.Base64;
 import org.spin.core.util.IOUtils;
-import org.spin.core.util.JsonUtils;
 import org.spin.core.util.SerializeUtils;
 import org.spin.core.util.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
-import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.Ordered;
 import org.springframework.http.HttpCookie;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
@@ -36,7 +39,6 @@ import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -49,26 +51,58 @@ import java.util.stream.Collectors;
  */
 @Component
 @EnableApolloConfig
-public class TokenResolveFilter implements GlobalFilter {
+public class TokenResolveFilter implements GlobalFilter, Ordered {
     private static final Logger logger = LoggerFactory.getLogger(TokenResolveFilter.class);
+
+    /**
+     * 过滤器顺序，需要先于路由、限流等过滤器执行
+     */
+    public static final int ORDER = -100;
+
+    /**
+     * 请求来源IP(exchange属性)，依次取可信代理(gateway.trustedProxies)提供的X-Real-IP、X-Forwarded-For中的第一个地址、连接的远端地址
+     */
+    public static final String CLIENT_IP_ATTR = TokenResolveFilter.class.getName() + ".clientIp";
+
+    /**
+     * 直连来源IP(exchange属性)，即连接的远端地址；远端为可信代理(gateway.trustedProxies)时，取可信代理追加的X-Forwarded-For地址。
+     * 不受客户端自行填写的请求头影响，用于自动封禁
+     */
+    public static final String PEER_IP_ATTR = TokenResolveFilter.class.getName() + ".peerIp";
+
+    /**
+     * 当前用户ID(exchange属性)，仅在Token有效时存在
+     */
+    public static final String USER_ID_ATTR = TokenResolveFilter.class.getName() + ".userId";
+
+    /**
+     * Token校验失败的原因(exchange属性，{@link ErrorCode#TOKEN_EXPIRED}或{@link ErrorCode#TOKEN_INVALID})
+     */
+    public static final String TOKEN_ERROR_ATTR = TokenResolveFilter.class.getName() + ".tokenError";
+
     private static final String X_FORWARDED_FOR = "X-Forwarded-For";
-    private static final String X_REAL_IP = "X-Read-IP";
+    private static final String X_REAL_IP = "X-Real-IP";
     private static final String GATEWAY = "GATEWAY";
 
     private PublicKey publicKey;
 
     private final WhiteListInfo whiteListInfo;
+    private final VerifiedTokenCache tokenCache;
+    private final AbuseDetector abuseDetector;
+    private volatile IpPrefixTrie trustedProxies = new IpPrefixTrie();
 
-    private Set<String> blackList;
-    private static final Map<String, Long> dynamicBlackList = new ConcurrentHashMap<>();
+    private static final BlackListIndex blackList = new BlackListIndex();
+    private static final ErrorResponses.Template BLOCKED = ErrorResponses.of(ErrorCode.ACCESS_DENINED, "由于安全策略，您已被记录并禁止访问");
 
     static {
         initBlackList();
     }
 
     @Autowired
-    public TokenResolveFilter(WhiteListInfo whiteListInfo) {
+    public TokenResolveFilter(WhiteListInfo whiteListInfo, VerifiedTokenCache tokenCache, AbuseDetector abuseDetector) {
         this.whiteListInfo = whiteListInfo;
+        this.tokenCache = tokenCache;
+        this.abuseDetector = abuseDetector;
     }
 
     @Override
@@ -76,7 +110,8 @@ public class TokenResolveFilter implements GlobalFilter {
         ServerHttpRequest request = exchange.getRequest();
         ServerHttpResponse response = exchange.getResponse();
 
-        final String realIp = StringUtils.trimToNull(request.getHeaders().getFirst(X_REAL_IP));
+        // 只有直连的代理是可信代理时才采用X-Real-IP，否则该请求头由客户端任意填写，转发时会被覆盖
+        final String realIp = isFromTrustedProxy(request) ? StringUtils.trimToNull(request.getHeaders().getFirst(X_REAL_IP)) : null;
         final String forwardedFor = StringUtils.trimToNull(request.getHeaders().getFirst(X_FORWARDED_FOR));
         final boolean hasProxyHead = StringUtils.isNotBlank(realIp);
 
@@ -97,18 +132,16 @@ public class TokenResolveFilter implements GlobalFilter {
             }
         }
 
-        String msg = "由于安全策略，您已被记录并禁止访问";
-        if (null != blackList && blackList.contains(source)) {
-            return error(response, RestfulResponse.error(ErrorCode.ACCESS_DENINED, msg));
+        if (null != source) {
+            exchange.getAttributes().put(CLIENT_IP_ATTR, source);
+        }
+        String peer = resolvePeer(request);
+        if (null != peer) {
+            exchange.getAttributes().put(PEER_IP_ATTR, peer);
         }
 
-        if (dynamicBlackList.containsKey(source)) {
-            long expiredSince = dynamicBlackList.get(source);
-            if (expiredSince == 0 || expiredSince > System.currentTimeMillis()) {
-                return error(response, RestfulResponse.error(ErrorCode.ACCESS_DENINED, msg));
-            } else {
-                dynamicBlackList.remove(source);
-            }
+        if (blackList.isBlocked(source) || null != peer && !peer.equals(source) && blackList.isBlocked(peer)) {
+            return BLOCKED.write(response);
         }
 
         StringBuilder from = new StringBuilder();
@@ -124,21 +157,34 @@ public class TokenResolveFilter implements GlobalFilter {
             }
         }
 
+        if (abuseDetector.isEnabled()) {
+            if (StringUtils.isNotEmpty(token)) {
+                exchange.getAttributes().put(AbuseDetector.TOKEN_HASH_ATTR, SlidingCountMinSketch.hash(token));
+            }
+            abuseDetector.record(AbuseDetector.Signal.REQUEST, exchange);
+        }
+
         if (StringUtils.isNotEmpty(token)) {
             Claims claims;
             try {
-                claims = Jwts.parser()
-                    .setSigningKey(publicKey)
-                    .parseClaimsJws(token)
-                    .getBody();
+                claims = resolveClaims(token);
                 from.append(claims.getSubject());
+                String subject = StringUtils.trimToEmpty(claims.getSubject());
+                int idx = subject.indexOf(':');
+                String userId = idx < 0 ? subject : subject.substring(0, idx);
+                if (StringUtils.isNotEmpty(userId)) {
+                    exchange.getAttributes().put(USER_ID_ATTR, userId);
+                }
             } catch (ExpiredJwtException ignore) {
                 logger.warn("Token已过期: {}", token);
                 from.append("-601:anonymous");
+                exchange.getAttributes().put(TOKEN_ERROR_ATTR, ErrorCode.TOKEN_EXPIRED);
 //                return error(response, ErrorCode.TOKEN_EXPIRED);
             } catch (Exception ignore) {
                 logger.warn("无效的Token: {}", token);
                 from.append("-602:anonymous");
+                exchange.getAttributes().put(TOKEN_ERROR_ATTR, ErrorCode.TOKEN_INVALID);
+                abuseDetector.record(AbuseDetector.Signal.JWT_FAILURE, exchange);
 //                return error(response, ErrorCode.TOKEN_INVALID);
             }
         }
@@ -173,9 +219,15 @@ public class TokenResolveFilter implements GlobalFilter {
         return chain.filter(exchange.mutate().request(request).build());
     }
 
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
     @Value("${tokenSecret}")
     public void setTokenSecret(String tokenSecret) {
         publicKey = SerializeUtils.deserialize(Base64.decode(tokenSecret));
+        tokenCache.invalidateAll();
         logger.info("Token Secret刷新成功");
     }
 
@@ -183,41 +235,123 @@ public class TokenResolveFilter implements GlobalFilter {
     public void setConfigurableBlackList(String blackListStr) {
         String[] split = StringUtils.split(blackListStr, ",");
         if (null == split || split.length == 0) {
-            if (null != blackList) {
-                blackList.clear();
-            }
+            blackList.replaceConfigured(Collections.emptyList());
             return;
         }
-        blackList = Arrays.stream(split).filter(StringUtils::isNotEmpty).collect(Collectors.toSet());
+        blackList.replaceConfigured(Arrays.stream(split).filter(StringUtils::isNotBlank).map(String::trim).collect(Collectors.toList()));
     }
 
+    @Value("${gateway.trustedProxies:}")
+    public void setTrustedProxies(String trustedProxiesStr) {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        String[] split = StringUtils.split(trustedProxiesStr, ",");
+        if (null != split) {
+            for (String entry : split) {
+                if (StringUtils.isBlank(entry)) {
+                    continue;
+                }
+                IpPrefixTrie.Prefix prefix = IpPrefixTrie.parse(entry);
+                if (null == prefix) {
+                    logger.warn("忽略无效的可信代理地址: {}", entry);
+                } else {
+                    trie.put(prefix, IpPrefixTrie.PERMANENT);
+                }
+            }
+        }
+        trustedProxies = trie;
+    }
+
+    /**
+     * 添加动态黑名单
+     *
+     * @param ip        IP地址或CIDR网段
+     * @param expiredIn 有效期(毫秒)，0表示永久有效
+     */
     public static void addToBlackList(String ip, long expiredIn) {
         Assert.notEmpty(ip, "添加黑名单必须指定地址");
         Assert.notTrue(expiredIn < 0, "有效期不能小于0");
         if (StringUtils.isNotBlank(ip)) {
-            dynamicBlackList.put(ip.trim(), expiredIn != 0 ? (System.currentTimeMillis() + expiredIn) : expiredIn);
+            blackList.add(ip.trim(), expiredIn);
         }
     }
 
     public static void removeFromBlackList(String ip) {
-        dynamicBlackList.remove(StringUtils.trimToEmpty(ip));
+        blackList.remove(StringUtils.trimToEmpty(ip));
     }
 
     public static void initBlackList() {
-        dynamicBlackList.clear();
+        blackList.clearDynamic();
         try (InputStream is = new FileInputStream(new File("/opt/settings/black.list"))) {
-            String blackList = StringUtils.trimToEmpty(IOUtils.copyToString(is, StandardCharsets.UTF_8));
-            Arrays.stream(blackList.split(",")).filter(StringUtils::isNotEmpty)
-                .map(String::trim).forEach(it -> dynamicBlackList.put(it, 0L));
+            String content = StringUtils.trimToEmpty(IOUtils.copyToString(is, StandardCharsets.UTF_8));
+            Arrays.stream(content.split(",")).filter(StringUtils::isNotBlank).map(String::trim).forEach(it -> {
+                try {
+                    blackList.add(it, 0L);
+                } catch (Exception e) {
+                    logger.warn("忽略无效的黑名单条目: {}", it);
+                }
+            });
         } catch (Exception ignore) {
             // do nothing
         }
     }
 
-    private Mono<Void> error(ServerHttpResponse response, RestfulResponse error) {
-        DataBuffer dataBuffer = response.bufferFactory().wrap(StringUtils.getBytesUtf8(JsonUtils.toJson(error)));
-        HttpHeaders headers = response.getHeaders();
-        headers.set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
-        return response.writeAndFlushWith(Mono.just(Mono.just(dataBuffer)));
+    /**
+     * 连接的远端地址是否为可信代理
+     */
+    private boolean isFromTrustedProxy(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return null != remoteAddress && null != remoteAddress.getAddress()
+            && trustedProxies.matches(remoteAddress.getAddress().getHostAddress(), System.currentTimeMillis());
+    }
+
+    /**
+     * 解析直连来源IP
+     * <p>取连接的远端地址；远端地址是可信代理时，从右向左依次取X-Forwarded-For中的地址，直到遇到非可信代理的地址。
+     * 客户端自行填写的X-Forwarded-For位于可信代理追加的地址左侧，不会被采用</p>
+     *
+     * @param request 请求
+     * @return 直连来源IP
+     */
+    private String resolvePeer(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (null == remoteAddress || null == remoteAddress.getAddress()) {
+            return null;
+        }
+        String peer = remoteAddress.getAddress().getHostAddress();
+        List<String> forwarded = request.getHeaders().get(X_FORWARDED_FOR);
+        if (null == forwarded || forwarded.isEmpty()) {
+            return peer;
+        }
+        long now = System.currentTimeMillis();
+        IpPrefixTrie trusted = trustedProxies;
+        for (int i = forwarded.size() - 1; i >= 0 && trusted.matches(peer, now); --i) {
+            String[] hops = StringUtils.trimToEmpty(forwarded.get(i)).split(",");
+            for (int j = hops.length - 1; j >= 0 && trusted.matches(peer, now); --j) {
+                String hop = hops[j].trim();
+                if (null == IpPrefixTrie.parse(hop)) {
+                    return peer;
+                }
+                peer = hop;
+            }
+        }
+        return peer;
+    }
+
+    /**
+     * 解析Token，优先从已验签缓存中获取，未命中时进行签名校验并缓存结果
+     *
+     * @param token 原始Token
+     * @return Claims
+     */
+    private Claims resolveClaims(String token) {
+        Claims claims = tokenCache.get(token);
+        if (null == claims) {
+            claims = Jwts.parser()
+                .setSigningKey(publicKey)
+                .parseClaimsJws(token)
+                .getBody();
+            tokenCache.put(token, claims);
+        }
+        return claims;
     }
 }
@@ -0,0 +1,236 @@
+package org.spin.cloud.gateway.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.support.RouteIndex;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.CachingRouteLocator;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.NameUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 基于路由索引的路由匹配
+ * <p>默认的{@link RoutePredicateHandlerMapping}对每个请求按顺序逐个执行路由断言，路由数量较多时开销随路由数线性增长。
+ * 这里将路由定义中的Path、Host、Method断言编译为{@link RouteIndex}，每个请求先通过一次索引查询得到候选路由，
+ * 再按路由顺序对候选路由执行完整断言(断言可能设置路径变量等请求属性，不能省略)。</p>
+ * <p>没有可用Path或Host断言的路由(如只有Header、Query等断言，或使用了SpEL、{*var}的路由)不建立索引，每次都参与顺序匹配。
+ * 路由变化(RefreshRoutesEvent)时在后台线程重新构建路由与索引，完成后整体替换；首次构建完成前退回默认的顺序匹配</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class CompiledRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping implements ApplicationListener<RefreshRoutesEvent>, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(CompiledRoutePredicateHandlerMapping.class);
+
+    private final RouteDefinitionLocator routeDefinitionLocator;
+    private final List<RouteLocator> routeLocators;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ExecutorService compiler = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "route-matcher-compile");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile CompiledRoutes compiled;
+
+    /**
+     * @param webHandler             网关WebHandler
+     * @param routeLocator           默认(带缓存)的RouteLocator，首次构建完成前使用
+     * @param routeLocators          所有RouteLocator，其中带缓存的RouteLocator会被排除，索引使用独立构建的路由
+     * @param routeDefinitionLocator 路由定义
+     * @param globalCorsProperties   跨域配置
+     * @param environment            环境
+     */
+    public CompiledRoutePredicateHandlerMapping(FilteringWebHandler webHandler, RouteLocator routeLocator,
+                                                List<RouteLocator> routeLocators, RouteDefinitionLocator routeDefinitionLocator,
+                                                GlobalCorsProperties globalCorsProperties, Environment environment) {
+        super(webHandler, routeLocator, globalCorsProperties, environment);
+        this.routeDefinitionLocator = routeDefinitionLocator;
+        this.routeLocators = routeLocators.stream().filter(it -> !(it instanceof CachingRouteLocator)).collect(Collectors.toList());
+    }
+
+    @Override
+    protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+        CompiledRoutes current = compiled;
+        if (null == current) {
+            return super.lookupRoute(exchange);
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        // 断言按解码后的路径匹配，含转义字符时不按路径筛选
+        BitSet candidates = current.index.candidates(path.indexOf('%') >= 0 ? null : path,
+            request.getHeaders().getFirst(HttpHeaders.HOST), request.getMethod());
+        if (candidates.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return Flux.fromStream(candidates.stream().mapToObj(i -> current.routes[i]))
+            .concatMap(route -> Mono.just(route).filterWhen(r -> {
+                exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR, r.getId());
+                return r.getPredicate().apply(exchange);
+            }).doOnError(e -> logger.error("路由[{}]断言执行失败", route.getId(), e))
+                .onErrorResume(e -> Mono.empty()))
+            .next()
+            .map(route -> {
+                validateRoute(route, exchange);
+                return route;
+            });
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesEvent event) {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            compiler.execute(() -> {
+                rebuildScheduled.set(false);
+                rebuild();
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        compiler.shutdownNow();
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, RouteDefinition> definitions = new HashMap<>();
+            List<RouteDefinition> definitionList = routeDefinitionLocator.getRouteDefinitions().collectList().block();
+            if (null != definitionList) {
+                definitionList.forEach(it -> definitions.put(it.getId(), it));
+            }
+            List<Route> routes = Flux.fromIterable(routeLocators)
+                .concatMap(RouteLocator::getRoutes)
+                .sort(AnnotationAwareOrderComparator.INSTANCE)
+                .collectList()
+                .block();
+            if (null == routes) {
+                routes = new ArrayList<>(0);
+            }
+
+            RouteIndex.Builder builder = RouteIndex.builder(routes.size());
+            for (int i = 0; i < routes.size(); ++i) {
+                compile(builder, i, definitions.get(routes.get(i).getId()));
+            }
+            RouteIndex index = builder.build();
+            compiled = new CompiledRoutes(routes.toArray(new Route[0]), index);
+            logger.info("路由匹配索引已重建: 共{}条路由, 其中{}条顺序匹配, 耗时{}ms", index.size(), index.sequentialSize(),
+                System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("路由匹配索引构建失败, 继续使用原有索引", e);
+        }
+    }
+
+    /**
+     * 编译单个路由的断言。Path优先于Host作为索引键，Method只用于筛选
+     */
+    private static void compile(RouteIndex.Builder builder, int position, RouteDefinition definition) {
+        if (null == definition) {
+            builder.sequential(position);
+            return;
+        }
+        List<String> paths = null;
+        List<String> hosts = null;
+        for (PredicateDefinition predicate : definition.getPredicates()) {
+            if ("Path".equals(predicate.getName()) && null == paths) {
+                paths = patterns(predicate);
+                if (null != paths && paths.stream().anyMatch(it -> it.contains("{*"))) {
+                    paths = null;
+                }
+            } else if ("Host".equals(predicate.getName()) && null == hosts) {
+                hosts = patterns(predicate);
+                if (null != hosts && hosts.stream().anyMatch(it -> it.indexOf('*') >= 0 || it.indexOf('?') >= 0 || it.indexOf('{') >= 0)) {
+                    hosts = null;
+                }
+            } else if ("Method".equals(predicate.getName())) {
+                List<String> values = patterns(predicate);
+                HttpMethod method = null == values || values.size() != 1 ? null : HttpMethod.resolve(values.get(0).toUpperCase());
+                if (null != method) {
+                    builder.methods(position, method);
+                }
+            }
+        }
+
+        if (null != paths) {
+            for (String path : paths) {
+                builder.path(position, path);
+            }
+        } else if (null != hosts) {
+            for (String host : hosts) {
+                builder.host(position, host);
+            }
+        } else {
+            builder.sequential(position);
+        }
+    }
+
+    /**
+     * 提取断言参数中的模式，包括简写形式(_genkey_N)与pattern/patterns参数。无法静态确定时返回null
+     */
+    private static List<String> patterns(PredicateDefinition predicate) {
+        List<String> patterns = new ArrayList<>();
+        for (Map.Entry<String, String> arg : predicate.getArgs().entrySet()) {
+            String key = arg.getKey();
+            String value = arg.getValue();
+            if (null == value || !(key.startsWith(NameUtils.GENERATED_NAME_PREFIX) || key.startsWith("pattern") || "method".equals(key))) {
+                continue;
+            }
+            if (value.startsWith("#{")) {
+                return null;
+            }
+            if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+                // Path简写形式末尾的matchOptionalTrailingSeparator
+                continue;
+            }
+            if ("patterns".equals(key)) {
+                for (String it : value.split(",")) {
+                    patterns.add(it.trim());
+                }
+            } else {
+                patterns.add(value.trim());
+            }
+        }
+        return patterns.isEmpty() ? null : patterns;
+    }
+
+    private static final class CompiledRoutes {
+        private final Route[] routes;
+        private final RouteIndex index;
+
+        private CompiledRoutes(Route[] routes, RouteIndex index) {
+            this.routes = routes;
+            this.index = index;
+        }
+    }
+}
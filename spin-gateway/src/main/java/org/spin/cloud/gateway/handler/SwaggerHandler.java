@@ -1,11 +1,13 @@
 package org.spin.cloud.gateway.handler;
 
+import org.spin.cloud.gateway.config.GatewaySwaggerProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 import springfox.documentation.swagger.web.*;
 
@@ -47,7 +49,11 @@ public class SwaggerHandler {
     }
 
     @GetMapping
-    public Mono<ResponseEntity> swaggerResources() {
+    public Mono<ResponseEntity> swaggerResources(ServerWebExchange exchange) {
+        if (swaggerResources instanceof GatewaySwaggerProvider
+            && exchange.checkNotModified(((GatewaySwaggerProvider) swaggerResources).getVersion())) {
+            return Mono.empty();
+        }
         return Mono.just((new ResponseEntity<>(swaggerResources.get(), HttpStatus.OK)));
     }
 }
@@ -0,0 +1,35 @@
+package org.spin.cloud.gateway.metrics;
+
+import org.spin.cloud.gateway.cache.AbuseDetector;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 异常访问检测端点
+ * <pre>
+ *     GET /actuator/abuse 窗口内高频的IP与Token(哈希)及其请求数、401/403数、Token解析失败数与禁止状态
+ * </pre>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+@Endpoint(id = "abuse")
+public class AbuseDetectionEndpoint {
+
+    private final AbuseDetector detector;
+
+    public AbuseDetectionEndpoint(AbuseDetector detector) {
+        this.detector = detector;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> heavyHitters() {
+        return detector.status();
+    }
+}
@@ -0,0 +1,34 @@
+package org.spin.cloud.gateway.metrics;
+
+import org.spin.cloud.gateway.cache.ConcurrencyLimiterRegistry;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 并发限制端点
+ * <pre>
+ *     GET /actuator/concurrencylimits 各路由及其上游实例当前的并发限制、处理中的请求数、RTT与拒绝数
+ * </pre>
+ * <p>Created by xuweinan on 2019/12/20</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+@Endpoint(id = "concurrencylimits")
+public class ConcurrencyLimitEndpoint {
+
+    private final ConcurrencyLimiterRegistry registry;
+
+    public ConcurrencyLimitEndpoint(ConcurrencyLimiterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> limits() {
+        return registry.status();
+    }
+}
@@ -0,0 +1,34 @@
+package org.spin.cloud.gateway.metrics;
+
+import org.spin.cloud.gateway.filter.PeerAwareLoadBalancerClientFilter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 负载均衡端点
+ * <pre>
+ *     GET /actuator/loadbalancer 各服务实例处理中的请求数、耗时EWMA与摘除状态
+ * </pre>
+ * <p>Created by xuweinan on 2019/12/21</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+@Endpoint(id = "loadbalancer")
+public class LoadBalancerEndpoint {
+
+    private final PeerAwareLoadBalancerClientFilter loadBalancer;
+
+    public LoadBalancerEndpoint(PeerAwareLoadBalancerClientFilter loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> instances() {
+        return loadBalancer.status();
+    }
+}
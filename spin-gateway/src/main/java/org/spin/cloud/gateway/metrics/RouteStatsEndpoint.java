@@ -0,0 +1,94 @@
+package org.spin.cloud.gateway.metrics;
+
+import org.spin.cloud.gateway.support.LogLinearHistogram;
+import org.spin.cloud.gateway.support.RequestStats;
+import org.spin.core.util.StringUtils;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 路由统计端点
+ * <pre>
+ *     GET    /actuator/routestats                                   所有路由的统计汇总
+ *     GET    /actuator/routestats/{routeId}?quantiles=0.5,0.95,0.99 指定路由及其上游实例的统计与耗时分位数
+ *     DELETE /actuator/routestats                                   清空统计数据
+ * </pre>
+ * <p>Created by xuweinan on 2019/12/16</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+@Endpoint(id = "routestats")
+public class RouteStatsEndpoint {
+
+    private final RouteStatsRegistry registry;
+
+    public RouteStatsEndpoint(RouteStatsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> routes() {
+        Map<String, Object> result = new TreeMap<>();
+        registry.getRoutes().forEach((routeId, stats) -> result.put(routeId, stats.getTotal().summary()));
+        return result;
+    }
+
+    @ReadOperation
+    public Map<String, Object> route(@Selector String routeId, @Nullable String quantiles) {
+        RouteStatsRegistry.RouteStats stats = registry.getRoute(routeId);
+        if (null == stats) {
+            return null;
+        }
+        double[] qs = parseQuantiles(quantiles);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", detail(stats.getTotal(), qs));
+        Map<String, Object> instances = new TreeMap<>();
+        stats.getInstances().forEach((instance, instanceStats) -> instances.put(instance, detail(instanceStats, qs)));
+        result.put("instances", instances);
+        return result;
+    }
+
+    @DeleteOperation
+    public void reset() {
+        registry.reset();
+    }
+
+    private Map<String, Object> detail(RequestStats stats, double[] quantiles) {
+        Map<String, Object> summary = stats.summary();
+        if (null != quantiles) {
+            LogLinearHistogram.Snapshot snapshot = stats.latencySnapshot();
+            Map<String, Long> percentiles = new LinkedHashMap<>();
+            for (double q : quantiles) {
+                percentiles.put(String.valueOf(q), snapshot.percentile(q));
+            }
+            summary.put("percentiles", percentiles);
+        }
+        return summary;
+    }
+
+    private double[] parseQuantiles(String quantiles) {
+        String[] parts = StringUtils.split(quantiles, ",");
+        if (null == parts || parts.length == 0) {
+            return null;
+        }
+        double[] result = new double[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            try {
+                result[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的分位数: " + parts[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,180 @@
+package org.spin.cloud.gateway.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.support.RequestStats;
+import org.spin.cloud.gateway.support.SlidingWindowHistogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 路由请求统计
+ * <p>按路由及路由下的每个上游实例分别统计请求数、状态码类别、字节数与耗时分布。
+ * 路由维度的请求数与耗时分位数同时注册到Micrometer，实例维度只通过actuator端点查询，避免指标基数过大</p>
+ * <p>注册到Micrometer的耗时分位数取自最近gateway.instrumentation.latencyWindow(毫秒)内的滑动窗口，
+ * actuator端点中的统计为启动(或清空)以来的累计值。路由刷新后，已删除路由的统计与指标随之移除</p>
+ * <p>Created by xuweinan on 2019/12/16</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Component
+public class RouteStatsRegistry implements MeterBinder, ApplicationListener<RefreshRoutesEvent> {
+    private static final Logger logger = LoggerFactory.getLogger(RouteStatsRegistry.class);
+    private static final int LATENCY_WINDOW_BUCKETS = 6;
+
+    private final Map<String, RouteStats> routes = new ConcurrentHashMap<>();
+    private final RouteDefinitionLocator routeDefinitionLocator;
+    private volatile MeterRegistry meterRegistry;
+
+    @Value("${gateway.instrumentation.latencyWindow:60000}")
+    private long latencyWindow = 60_000L;
+
+    public RouteStatsRegistry(RouteDefinitionLocator routeDefinitionLocator) {
+        this.routeDefinitionLocator = routeDefinitionLocator;
+    }
+
+    /**
+     * 记录一次请求
+     *
+     * @param routeId       路由ID
+     * @param instance      上游实例(host:port)，未转发时为null
+     * @param status        HTTP状态码，未知时传0
+     * @param requestBytes  请求字节数，未知时传-1
+     * @param responseBytes 响应字节数，未知时传-1
+     * @param latencyMicros 耗时(微秒)
+     */
+    public void record(String routeId, String instance, int status, long requestBytes, long responseBytes, long latencyMicros) {
+        RouteStats stats = routes.get(routeId);
+        if (null == stats) {
+            stats = routes.computeIfAbsent(routeId, this::newRouteStats);
+        }
+        stats.total.record(status, requestBytes, responseBytes, latencyMicros);
+        stats.recentLatency.record(latencyMicros, System.currentTimeMillis());
+        if (null != instance) {
+            RequestStats instanceStats = stats.instances.get(instance);
+            if (null == instanceStats) {
+                instanceStats = stats.instances.computeIfAbsent(instance, k -> new RequestStats());
+            }
+            instanceStats.record(status, requestBytes, responseBytes, latencyMicros);
+        }
+    }
+
+    public Map<String, RouteStats> getRoutes() {
+        return routes;
+    }
+
+    public RouteStats getRoute(String routeId) {
+        return routes.get(routeId);
+    }
+
+    /**
+     * 清空统计数据(已注册的Micrometer指标保留，数值重新计数)
+     */
+    public void reset() {
+        routes.clear();
+    }
+
+    /**
+     * 移除指定路由的统计数据及其Micrometer指标
+     *
+     * @param routeId 路由ID
+     */
+    public void evictRoute(String routeId) {
+        RouteStats stats = routes.remove(routeId);
+        MeterRegistry registry = meterRegistry;
+        if (null != stats && null != registry) {
+            stats.meters.forEach(registry::remove);
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        routes.forEach((routeId, stats) -> stats.meters.addAll(registerMeters(registry, routeId)));
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull RefreshRoutesEvent event) {
+        routeDefinitionLocator.getRouteDefinitions().map(RouteDefinition::getId).collectList()
+            .subscribe(this::retainRoutes, e -> logger.warn("清理已删除路由的统计数据失败", e));
+    }
+
+    private void retainRoutes(List<String> routeIds) {
+        Set<String> current = new HashSet<>(routeIds);
+        for (String routeId : new ArrayList<>(routes.keySet())) {
+            if (!current.contains(routeId)) {
+                evictRoute(routeId);
+            }
+        }
+    }
+
+    private RouteStats newRouteStats(String routeId) {
+        RouteStats stats = new RouteStats(new SlidingWindowHistogram(latencyWindow, LATENCY_WINDOW_BUCKETS));
+        MeterRegistry registry = meterRegistry;
+        if (null != registry) {
+            stats.meters.addAll(registerMeters(registry, routeId));
+        }
+        return stats;
+    }
+
+    private List<Meter> registerMeters(MeterRegistry registry, String routeId) {
+        List<Meter> meters = new ArrayList<>(3);
+        meters.add(FunctionCounter.builder("gateway.route.requests", this, r -> r.requestsOf(routeId))
+            .tag("route", routeId).register(registry));
+        meters.add(Gauge.builder("gateway.route.latency", this, r -> r.percentileOf(routeId, 0.5))
+            .tag("route", routeId).tag("quantile", "0.5").baseUnit("microseconds").register(registry));
+        meters.add(Gauge.builder("gateway.route.latency", this, r -> r.percentileOf(routeId, 0.99))
+            .tag("route", routeId).tag("quantile", "0.99").baseUnit("microseconds").register(registry));
+        return meters;
+    }
+
+    private double requestsOf(String routeId) {
+        RouteStats stats = routes.get(routeId);
+        return null == stats ? 0 : stats.total.getRequests();
+    }
+
+    private double percentileOf(String routeId, double quantile) {
+        RouteStats stats = routes.get(routeId);
+        return null == stats ? 0 : stats.recentLatency.snapshot(System.currentTimeMillis()).percentile(quantile);
+    }
+
+    /**
+     * 单个路由的统计
+     */
+    public static final class RouteStats {
+        private final RequestStats total = new RequestStats();
+        private final Map<String, RequestStats> instances = new ConcurrentHashMap<>();
+        private final SlidingWindowHistogram recentLatency;
+        private final List<Meter> meters = new ArrayList<>(3);
+
+        private RouteStats(SlidingWindowHistogram recentLatency) {
+            this.recentLatency = recentLatency;
+        }
+
+        public RequestStats getTotal() {
+            return total;
+        }
+
+        public Map<String, RequestStats> getInstances() {
+            return instances;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package org.spin.cloud.gateway.service;
 
+import org.spin.cloud.gateway.vo.RouteImportResult;
+import org.spin.cloud.gateway.vo.RouteReloadResult;
 import org.springframework.cloud.gateway.route.RouteDefinition;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * 动态路由Service
  * <p>DESCRIPTION</p>
@@ -59,8 +63,50 @@ public interface DynamicRouteService {
     @Transactional
     void sendRouteDeleteEvent(String routeId);
 
+    /**
+     * 批量导入动态路由(新增或更新)
+     * <p>校验全部路由定义后，在一个事务中以一次批量语句写入数据库，并只发送一次路由变更事件</p>
+     *
+     * @param definitions 动态路由定义
+     * @param strict      严格模式，存在校验不通过的路由时整批不写入
+     * @return 每条路由的处理结果与导入耗时
+     */
+    @Transactional
+    RouteImportResult importRoutes(List<RouteDefinition> definitions, boolean strict);
+
+    /**
+     * 发送响应缓存清除事件，集群中所有网关节点清除指定路由的响应缓存
+     *
+     * @param routeId 路由ID，为空时清除全部缓存
+     */
+    void sendCachePurgeEvent(String routeId);
+
+    /**
+     * 重新加载动态路由，根据配置选择增量或全量加载
+     *
+     * @return 加载结果
+     */
+    RouteReloadResult reload();
+
     /**
      * 重新加载动态路由
+     *
+     * @param incremental 是否增量加载。增量加载时只应用与数据库相比新增、更新、删除的路由
+     * @return 加载结果
+     */
+    RouteReloadResult reload(boolean incremental);
+
+    /**
+     * 从本地快照加载动态路由，不访问数据库
+     *
+     * @return 加载结果，快照不存在、不完整或未启用时返回null
+     */
+    RouteReloadResult loadSnapshot();
+
+    /**
+     * 查询最近一次路由加载的结果
+     *
+     * @return 加载结果，尚未加载时返回null
      */
-    void reload();
+    RouteReloadResult getLastReloadResult();
 }
@@ -1,20 +1,38 @@
 package org.spin.cloud.gateway.service.impl;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.activemq.command.ActiveMQTopic;
 import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spin.cloud.gateway.cache.ResponseCache;
+import org.spin.cloud.gateway.cache.TokenBucketCache;
 import org.spin.cloud.gateway.repository.Tables;
 import org.spin.cloud.gateway.repository.tables.records.GatewayRouteDefinitionRecord;
 import org.spin.cloud.gateway.service.DynamicRouteService;
+import org.spin.cloud.gateway.support.RouteSnapshot;
+import org.spin.cloud.gateway.vo.RouteImportResult;
+import org.spin.cloud.gateway.vo.RouteReloadResult;
 import org.spin.cloud.gateway.vo.RouteUpdateEvent;
 import org.spin.core.Assert;
 import org.spin.core.collection.FixedVector;
 import org.spin.core.throwable.SimplifiedException;
 import org.spin.core.util.CollectionUtils;
 import org.spin.core.util.JsonUtils;
+import org.spin.core.util.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
 import org.springframework.cloud.gateway.route.RouteDefinition;
 import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
 import org.springframework.cloud.gateway.route.RouteDefinitionWriter;
@@ -31,35 +49,101 @@ import reactor.core.publisher.Mono;
 
 import javax.jms.JMSException;
 import javax.jms.TextMessage;
-import java.util.List;
-import java.util.NoSuchElementException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * 动态路由Service实现
- * <p>DESCRIPTION</p>
+ * <p>路由变更消息默认按批处理：在gateway.route.batchWindow(毫秒)内收到的消息合并为一批，同一路由只保留最后一次变更，
+ * 整批应用后只发布一次RefreshRoutesEvent。持续有消息到达时，最晚在gateway.route.batchMaxDelay后处理。
+ * batchWindow配置为0时逐条处理</p>
+ * <p>批量导入的路由在一个事务中以一次批量语句写入，整批只发送一条路由变更消息(opType为5)</p>
+ * <p>每次加载或应用路由变更后，将路由表写入本地快照gateway.route.snapshotFile(配置为空时不启用)。
+ * 启动时先从快照加载路由，再在后台与数据库做增量比对，见{@link org.spin.cloud.gateway.config.DynamicRouteDefinitionInitializer}</p>
  * <p>Created by xuweinan on 2019/3/12</p>
  *
  * @author xuweinan
  * @version 1.0
  */
 @Service
-public class DynamicRouteServiceImpl implements DynamicRouteService, ApplicationEventPublisherAware {
+public class DynamicRouteServiceImpl implements DynamicRouteService, ApplicationEventPublisherAware, DisposableBean {
     private static final Logger logger = LoggerFactory.getLogger(DynamicRouteServiceImpl.class);
     private static final String ROUTES_DEST = "bonade.cloud.gateway.routes";
     private static final String RELOAD_EVENT = JsonUtils.toJson(RouteUpdateEvent.forReload());
+    private static final int IMPORT_QUERY_CHUNK = 500;
+    private static final long SNAPSHOT_DELAY = 1000L;
 
     private ApplicationEventPublisher publisher;
     private final RouteDefinitionWriter routeDefinitionWriter;
     private final RouteDefinitionLocator routeDefinitionLocator;
     private final JmsMessagingTemplate jmsTemplate;
+    private final ResponseCache responseCache;
+    private final TokenBucketCache tokenBucketCache;
+    private final Set<String> predicateNames;
+    private final Set<String> filterNames;
 
     private final DSLContext dslContext;
 
+    /**
+     * 内存中各路由对应的数据库版本，用于增量加载时比对
+     */
+    private final Map<String, RouteRevision> revisions = new ConcurrentHashMap<>();
+    private volatile RouteReloadResult lastReloadResult;
+
+    @Value("${gateway.route.incrementalReload:true}")
+    private boolean incrementalReload = true;
+
+    @Value("${gateway.route.batchWindow:200}")
+    private long batchWindow = 200;
+
+    @Value("${gateway.route.batchMaxDelay:2000}")
+    private long batchMaxDelay = 2000;
+
+    @Value("${gateway.route.snapshotFile:/opt/settings/gateway-routes.snapshot}")
+    private String snapshotFile;
+
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+
+    /**
+     * 待处理的路由变更，key为路由ID
+     */
+    private final Object batchLock = new Object();
+    private Map<String, RouteUpdateEvent> pendingEvents = new LinkedHashMap<>();
+    private boolean pendingReload;
+    private long batchStartTime;
+    private ScheduledFuture<?> batchFuture;
+
+    private final ScheduledExecutorService batchExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "route-event-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter receivedEvents;
+    private final DistributionSummary batchSize;
+    private final Timer batchApplyTimer;
+    private final Timer importTimer;
+
     @Autowired
     public DynamicRouteServiceImpl(RouteDefinitionWriter routeDefinitionWriter,
                                    RouteDefinitionLocator routeDefinitionLocator,
                                    JmsMessagingTemplate jmsTemplate,
-                                   DSLContext dslContext) {
+                                   DSLContext dslContext,
+                                   ResponseCache responseCache,
+                                   TokenBucketCache tokenBucketCache,
+                                   List<RoutePredicateFactory> predicateFactories,
+                                   List<GatewayFilterFactory> filterFactories,
+                                   MeterRegistry meterRegistry) {
         this.routeDefinitionWriter = routeDefinitionWriter;
         this.routeDefinitionLocator = routeDefinitionLocator;
         this.jmsTemplate = jmsTemplate;
@@ -67,6 +151,17 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
             this.jmsTemplate.getJmsTemplate().setPubSubDomain(true);
         }
         this.dslContext = dslContext;
+        this.responseCache = responseCache;
+        this.tokenBucketCache = tokenBucketCache;
+        this.predicateNames = predicateFactories.stream().map(RoutePredicateFactory::name).collect(Collectors.toSet());
+        this.filterNames = filterFactories.stream().map(GatewayFilterFactory::name).collect(Collectors.toSet());
+        this.receivedEvents = meterRegistry.counter("gateway.route.events.received");
+        this.batchSize = DistributionSummary.builder("gateway.route.batch.size")
+            .description("每批应用的路由变更数(合并后)").register(meterRegistry);
+        this.batchApplyTimer = Timer.builder("gateway.route.batch.apply")
+            .description("每批路由变更的应用耗时").register(meterRegistry);
+        this.importTimer = Timer.builder("gateway.route.import")
+            .description("路由批量导入耗时").register(meterRegistry);
     }
 
 
@@ -79,6 +174,16 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
         } catch (JMSException ignore) {
             return;
         }
+        receivedEvents.increment();
+        if (event.getOpType() == 4) {
+            // 清除缓存不涉及路由变更，直接处理
+            responseCache.purge(event.getRouteId());
+            return;
+        }
+        if (batchWindow > 0) {
+            enqueue(event);
+            return;
+        }
         switch (event.getOpType()) {
             case 0:
                 logger.info("刷新路由");
@@ -96,11 +201,104 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
                 logger.info("删除路由: {}", event.getRouteId());
                 delete(event.getRouteId());
                 break;
+            case 5:
+                logger.info("批量新增/更新路由: {}条", event.getRouteDefinitions().size());
+                applyBatch(event.getRouteDefinitions().stream().map(RouteUpdateEvent::forUpdate).collect(Collectors.toList()));
+                break;
             default:
                 // do nothing
         }
     }
 
+    /**
+     * 将路由变更加入待处理批次，同一路由只保留最后一次变更；重新加载事件会覆盖之前所有未处理的变更
+     */
+    private void enqueue(RouteUpdateEvent event) {
+        synchronized (batchLock) {
+            if (event.getOpType() == 0) {
+                pendingReload = true;
+                pendingEvents.clear();
+            } else if (!pendingReload && event.getOpType() == 5) {
+                for (RouteDefinition definition : event.getRouteDefinitions()) {
+                    pendingEvents.remove(definition.getId());
+                    pendingEvents.put(definition.getId(), RouteUpdateEvent.forUpdate(definition));
+                }
+            } else if (!pendingReload) {
+                String routeId = event.getOpType() == 3 ? event.getRouteId() : event.getRouteDefinition().getId();
+                pendingEvents.remove(routeId);
+                pendingEvents.put(routeId, event);
+            }
+
+            long now = System.currentTimeMillis();
+            if (null == batchFuture) {
+                batchStartTime = now;
+            } else if (!batchFuture.cancel(false)) {
+                // 上一批已经开始处理，本次变更进入新的批次
+                batchStartTime = now;
+            }
+            long delay = Math.min(batchWindow, Math.max(0L, batchStartTime + batchMaxDelay - now));
+            batchFuture = batchExecutor.schedule(this::flushBatch, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushBatch() {
+        Map<String, RouteUpdateEvent> events;
+        boolean reload;
+        synchronized (batchLock) {
+            events = pendingEvents;
+            reload = pendingReload;
+            pendingEvents = new LinkedHashMap<>();
+            pendingReload = false;
+            batchFuture = null;
+        }
+        if (!reload && events.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (reload) {
+                logger.info("批量处理路由变更: 刷新路由");
+                reload();
+            } else {
+                logger.info("批量处理路由变更: {}条", events.size());
+                applyBatch(events.values());
+            }
+        } catch (Exception e) {
+            logger.error("批量处理路由变更失败", e);
+        } finally {
+            batchApplyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSize.record(reload ? 0 : events.size());
+        }
+    }
+
+    /**
+     * 应用一批路由变更，只发布一次路由刷新事件
+     */
+    private synchronized void applyBatch(Collection<RouteUpdateEvent> events) {
+        for (RouteUpdateEvent event : events) {
+            switch (event.getOpType()) {
+                case 1:
+                case 2:
+                    logger.debug("新增/更新路由: {}", event.getRouteDefinition().getId());
+                    saveRoute(event.getRouteDefinition());
+                    revisions.put(event.getRouteDefinition().getId(), RouteRevision.UNKNOWN);
+                    evictRouteState(event.getRouteDefinition().getId());
+                    break;
+                case 3:
+                    logger.debug("删除路由: {}", event.getRouteId());
+                    deleteRoute(event.getRouteId());
+                    revisions.remove(event.getRouteId());
+                    evictRouteState(event.getRouteId());
+                    break;
+                default:
+                    // do nothing
+            }
+        }
+        publisher.publishEvent(new RefreshRoutesEvent(this));
+        scheduleSnapshot();
+    }
+
     @Override
     public Flux<RouteDefinition> getRoutes() {
         return routeDefinitionLocator.getRouteDefinitions();
@@ -128,9 +326,14 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
             throw new SimplifiedException("已经存在ID为[" + definition.getId() + "]的路由");
         }
 
+        GatewayRouteDefinitionRecord record = GatewayRouteDefinitionRecord.fromRouteDefinition(definition);
+        LocalDateTime now = LocalDateTime.now();
+        record.setCreateTime(now);
+        record.setUpdateTime(now);
+        record.setVersion(1);
         try {
             dslContext.insertInto(Tables.GATEWAY_ROUTE_DEFINITION)
-                .set(GatewayRouteDefinitionRecord.fromRouteDefinition(definition))
+                .set(record)
                 .execute();
         } catch (DuplicateKeyException ignore) {
             throw new SimplifiedException("指定的路由ID[" + definition.getId() + "]已经存在");
@@ -144,6 +347,8 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
         Assert.notNull(definition, "路由定义不能为空");
         int cnt = dslContext.update(Tables.GATEWAY_ROUTE_DEFINITION)
             .set(GatewayRouteDefinitionRecord.fromRouteDefinition(definition))
+            .set(Tables.GATEWAY_ROUTE_DEFINITION.UPDATE_TIME, LocalDateTime.now())
+            .set(Tables.GATEWAY_ROUTE_DEFINITION.VERSION, DSL.nvl(Tables.GATEWAY_ROUTE_DEFINITION.VERSION, 0).plus(1))
             .where(Tables.GATEWAY_ROUTE_DEFINITION.ID.eq(definition.getId()))
             .execute();
 
@@ -163,16 +368,327 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
     }
 
     @Override
-    public void reload() {
+    @Transactional
+    public RouteImportResult importRoutes(List<RouteDefinition> definitions, boolean strict) {
+        Assert.notEmpty(definitions, "路由定义不能为空");
+        long start = System.nanoTime();
+        int size = definitions.size();
+        RouteImportResult.Status[] statuses = new RouteImportResult.Status[size];
+        String[] messages = new String[size];
+
+        // 逐条校验，同一批次中重复的路由ID以第一条为准
+        Map<String, Integer> valid = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; ++i) {
+            RouteDefinition definition = definitions.get(i);
+            String error = validate(definition);
+            if (null == error && valid.containsKey(definition.getId())) {
+                error = "同一批次中存在重复的路由ID";
+            }
+            if (null == error) {
+                valid.put(definition.getId(), i);
+            } else {
+                statuses[i] = RouteImportResult.Status.INVALID;
+                messages[i] = error;
+            }
+        }
+
+        RouteImportResult result = new RouteImportResult();
+        if (valid.isEmpty() || strict && valid.size() < size) {
+            valid.values().forEach(i -> statuses[i] = RouteImportResult.Status.SKIPPED);
+        } else {
+            List<RouteDefinition> changed = writeRoutes(definitions, valid, statuses);
+            if (!changed.isEmpty()) {
+                jmsTemplate.convertAndSend(new ActiveMQTopic(ROUTES_DEST), JsonUtils.toJson(RouteUpdateEvent.forBatch(changed)));
+            }
+            result.setApplied(true);
+        }
+
+        for (int i = 0; i < size; ++i) {
+            RouteDefinition definition = definitions.get(i);
+            result.add(null == definition ? null : definition.getId(), statuses[i], messages[i]);
+        }
+        long cost = System.nanoTime() - start;
+        importTimer.record(cost, TimeUnit.NANOSECONDS);
+        result.setCost(TimeUnit.NANOSECONDS.toMillis(cost));
+        logger.info("批量导入路由完成: {}", result);
+        return result;
+    }
+
+    @Override
+    public void sendCachePurgeEvent(String routeId) {
+        jmsTemplate.convertAndSend(new ActiveMQTopic(ROUTES_DEST), JsonUtils.toJson(RouteUpdateEvent.forCachePurge(routeId)));
+    }
 
+    @Override
+    public RouteReloadResult reload() {
+        return reload(incrementalReload);
+    }
+
+    @Override
+    public synchronized RouteReloadResult reload(boolean incremental) {
+        long start = System.currentTimeMillis();
         List<GatewayRouteDefinitionRecord> fetch = dslContext.select().from(Tables.GATEWAY_ROUTE_DEFINITION).fetch().into(Tables.GATEWAY_ROUTE_DEFINITION);
         if (CollectionUtils.isEmpty(fetch)) {
             throw new SimplifiedException("没有定义任何动态路由");
         }
-        routeDefinitionLocator.getRouteDefinitions().subscribe(it -> routeDefinitionWriter.delete(Mono.just(it.getId())));
 
-        fetch.stream().map(GatewayRouteDefinitionRecord::toRouteDefinition).forEach(route -> routeDefinitionWriter.save(Mono.just(route)).subscribe());
-        this.publisher.publishEvent(new RefreshRoutesEvent(this));
+        RouteReloadResult result = incremental ? applyIncremental(fetch) : applyFull(fetch);
+        if (result.getTouched() > 0) {
+            this.publisher.publishEvent(new RefreshRoutesEvent(this));
+        }
+        scheduleSnapshot();
+        result.setCost(System.currentTimeMillis() - start);
+        lastReloadResult = result;
+        logger.info("动态路由加载完成: {}", result);
+        return result;
+    }
+
+    @Override
+    public synchronized RouteReloadResult loadSnapshot() {
+        if (StringUtils.isEmpty(snapshotFile)) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        List<GatewayRouteDefinitionRecord> records;
+        try {
+            records = RouteSnapshot.read(Paths.get(snapshotFile));
+        } catch (Exception e) {
+            logger.warn("读取路由快照[{}]失败: {}", snapshotFile, e.getMessage());
+            return null;
+        }
+        if (CollectionUtils.isEmpty(records)) {
+            logger.info("路由快照[{}]不存在或不完整", snapshotFile);
+            return null;
+        }
+
+        RouteReloadResult result = new RouteReloadResult(false);
+        for (GatewayRouteDefinitionRecord record : records) {
+            saveRoute(record.toRouteDefinition());
+            revisions.put(record.getId(), null == record.getVersion() ? RouteRevision.UNKNOWN : RouteRevision.of(record));
+            result.incAdded();
+        }
+        publisher.publishEvent(new RefreshRoutesEvent(this));
+        result.setCost(System.currentTimeMillis() - start);
+        lastReloadResult = result;
+        logger.info("从本地快照加载动态路由完成: {}", result);
+        return result;
+    }
+
+    @Override
+    public RouteReloadResult getLastReloadResult() {
+        return lastReloadResult;
+    }
+
+    /**
+     * 在后台写入路由快照，短时间内的多次变更只写一次
+     */
+    private void scheduleSnapshot() {
+        if (StringUtils.isNotEmpty(snapshotFile) && snapshotScheduled.compareAndSet(false, true)) {
+            batchExecutor.schedule(this::writeSnapshot, SNAPSHOT_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeSnapshot() {
+        snapshotScheduled.set(false);
+        Map<String, RouteDefinition> definitions = new HashMap<>();
+        routeDefinitionLocator.getRouteDefinitions().subscribe(it -> definitions.put(it.getId(), it));
+        List<GatewayRouteDefinitionRecord> records = new ArrayList<>(revisions.size());
+        revisions.forEach((routeId, revision) -> {
+            if (null != revision.record) {
+                records.add(revision.record);
+            } else if (definitions.containsKey(routeId)) {
+                // 通过事件直接变更的路由，不记录版本，启动后比对时总是重新应用
+                records.add(GatewayRouteDefinitionRecord.fromRouteDefinition(definitions.get(routeId)));
+            }
+        });
+        Path file = Paths.get(snapshotFile);
+        try {
+            RouteSnapshot.write(file, records);
+            logger.debug("路由快照已写入[{}]: {}条", file, records.size());
+        } catch (IOException e) {
+            logger.warn("写入路由快照[{}]失败: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 全量加载：删除内存中的全部路由后重新保存
+     */
+    private RouteReloadResult applyFull(List<GatewayRouteDefinitionRecord> fetch) {
+        RouteReloadResult result = new RouteReloadResult(false);
+        for (String routeId : currentRouteIds()) {
+            deleteRoute(routeId);
+            tokenBucketCache.evictRoute(routeId);
+            result.incDeleted();
+        }
+        revisions.clear();
+        responseCache.purge(null);
+        for (GatewayRouteDefinitionRecord record : fetch) {
+            saveRoute(record.toRouteDefinition());
+            revisions.put(record.getId(), RouteRevision.of(record));
+            result.incAdded();
+        }
+        return result;
+    }
+
+    /**
+     * 增量加载：以版本号、更新时间与路由内容比对数据库与内存中的路由，只应用发生变化的部分
+     */
+    private RouteReloadResult applyIncremental(List<GatewayRouteDefinitionRecord> fetch) {
+        RouteReloadResult result = new RouteReloadResult(true);
+        Set<String> current = currentRouteIds();
+        Set<String> fetched = new HashSet<>(fetch.size() * 2);
+        for (GatewayRouteDefinitionRecord record : fetch) {
+            String routeId = record.getId();
+            fetched.add(routeId);
+            RouteRevision revision = RouteRevision.of(record);
+            if (!current.contains(routeId)) {
+                saveRoute(record.toRouteDefinition());
+                result.incAdded();
+            } else if (!revision.equals(revisions.get(routeId))) {
+                deleteRoute(routeId);
+                saveRoute(record.toRouteDefinition());
+                evictRouteState(routeId);
+                result.incUpdated();
+            } else {
+                result.incUnchanged();
+            }
+            revisions.put(routeId, revision);
+        }
+        for (String routeId : current) {
+            if (!fetched.contains(routeId)) {
+                deleteRoute(routeId);
+                revisions.remove(routeId);
+                evictRouteState(routeId);
+                result.incDeleted();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 与数据库中的现有定义比对后，以一次批量语句写入新增与变更的路由
+     *
+     * @return 新增与变更的路由
+     */
+    private List<RouteDefinition> writeRoutes(List<RouteDefinition> definitions, Map<String, Integer> valid,
+                                              RouteImportResult.Status[] statuses) {
+        Map<String, GatewayRouteDefinitionRecord> existing = new HashMap<>(valid.size() * 2);
+        List<String> ids = new ArrayList<>(valid.keySet());
+        for (int i = 0; i < ids.size(); i += IMPORT_QUERY_CHUNK) {
+            dslContext.selectFrom(Tables.GATEWAY_ROUTE_DEFINITION)
+                .where(Tables.GATEWAY_ROUTE_DEFINITION.ID.in(ids.subList(i, Math.min(ids.size(), i + IMPORT_QUERY_CHUNK))))
+                .fetch()
+                .forEach(it -> existing.put(it.getId(), it));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Query> queries = new ArrayList<>(valid.size());
+        List<RouteDefinition> changed = new ArrayList<>(valid.size());
+        for (Map.Entry<String, Integer> entry : valid.entrySet()) {
+            RouteDefinition definition = definitions.get(entry.getValue());
+            GatewayRouteDefinitionRecord record = GatewayRouteDefinitionRecord.fromRouteDefinition(definition);
+            GatewayRouteDefinitionRecord current = existing.get(entry.getKey());
+            if (null != current && Objects.equals(current.getUri(), record.getUri())
+                && Objects.equals(current.getPredicates(), record.getPredicates())
+                && Objects.equals(current.getFilters(), record.getFilters())
+                && Objects.equals(current.getOrderNo(), record.getOrderNo())
+                && Objects.equals(current.getValid(), record.getValid())) {
+                statuses[entry.getValue()] = RouteImportResult.Status.UNCHANGED;
+                continue;
+            }
+            if (null == current) {
+                record.setCreateTime(now);
+                record.setUpdateTime(now);
+                record.setVersion(1);
+                queries.add(dslContext.insertInto(Tables.GATEWAY_ROUTE_DEFINITION).set(record));
+                statuses[entry.getValue()] = RouteImportResult.Status.INSERTED;
+            } else {
+                queries.add(dslContext.update(Tables.GATEWAY_ROUTE_DEFINITION)
+                    .set(record)
+                    .set(Tables.GATEWAY_ROUTE_DEFINITION.UPDATE_TIME, now)
+                    .set(Tables.GATEWAY_ROUTE_DEFINITION.VERSION, DSL.nvl(Tables.GATEWAY_ROUTE_DEFINITION.VERSION, 0).plus(1))
+                    .where(Tables.GATEWAY_ROUTE_DEFINITION.ID.eq(entry.getKey())));
+                statuses[entry.getValue()] = RouteImportResult.Status.UPDATED;
+            }
+            changed.add(definition);
+        }
+
+        if (!queries.isEmpty()) {
+            try {
+                dslContext.batch(queries).execute();
+            } catch (DuplicateKeyException e) {
+                throw new SimplifiedException("批量导入时路由ID冲突，可能有其他操作正在新增相同的路由，请重试", e);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 校验路由定义
+     *
+     * @return 校验失败的原因，校验通过时返回null
+     */
+    private String validate(RouteDefinition definition) {
+        if (null == definition) {
+            return "路由定义不能为空";
+        }
+        if (StringUtils.isEmpty(definition.getId())) {
+            return "路由ID不能为空";
+        }
+        if (definition.getId().length() > 64) {
+            return "路由ID长度不能超过64";
+        }
+        if (null == definition.getUri() || StringUtils.isEmpty(definition.getUri().getScheme())) {
+            return "路由URI不能为空，且必须包含协议";
+        }
+        if (definition.getUri().toString().length() > 255) {
+            return "路由URI长度不能超过255";
+        }
+        if (null == definition.getPredicates()) {
+            return "断言定义不能为空";
+        }
+        if (null == definition.getFilters()) {
+            return "过滤器定义不能为空";
+        }
+        for (PredicateDefinition predicate : definition.getPredicates()) {
+            if (null == predicate || !predicateNames.contains(predicate.getName())) {
+                return "不支持的断言[" + (null == predicate ? null : predicate.getName()) + "]";
+            }
+        }
+        for (FilterDefinition filter : definition.getFilters()) {
+            if (null == filter || !filterNames.contains(filter.getName())) {
+                return "不支持的过滤器[" + (null == filter ? null : filter.getName()) + "]";
+            }
+        }
+        if (JsonUtils.toJson(definition.getPredicates()).length() > 2000) {
+            return "断言定义长度不能超过2000";
+        }
+        if (JsonUtils.toJson(definition.getFilters()).length() > 2000) {
+            return "过滤器定义长度不能超过2000";
+        }
+        return null;
+    }
+
+    private Set<String> currentRouteIds() {
+        Set<String> ids = new HashSet<>();
+        routeDefinitionLocator.getRouteDefinitions().subscribe(it -> ids.add(it.getId()));
+        return ids;
+    }
+
+    /**
+     * 清除路由在本地保存的运行状态(响应缓存、限流令牌桶)，路由更新或删除后调用
+     */
+    private void evictRouteState(String routeId) {
+        responseCache.purge(routeId);
+        tokenBucketCache.evictRoute(routeId);
+    }
+
+    private void saveRoute(RouteDefinition definition) {
+        routeDefinitionWriter.save(Mono.just(definition)).subscribe(null, e -> logger.warn("保存路由[{}]失败: {}", definition.getId(), e.getMessage()));
+    }
+
+    private void deleteRoute(String routeId) {
+        routeDefinitionWriter.delete(Mono.just(routeId)).subscribe(null, e -> logger.warn("删除路由[{}]失败: {}", routeId, e.getMessage()));
     }
 
     /**
@@ -180,9 +696,11 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
      *
      * @param definition 动态路由定义
      */
-    private void add(RouteDefinition definition) {
+    private synchronized void add(RouteDefinition definition) {
         routeDefinitionWriter.save(Mono.just(definition)).subscribe();
+        revisions.put(definition.getId(), RouteRevision.UNKNOWN);
         publisher.publishEvent(new RefreshRoutesEvent(this));
+        scheduleSnapshot();
     }
 
     /**
@@ -190,7 +708,7 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
      *
      * @param definition 动态路由定义
      */
-    private void update(RouteDefinition definition) {
+    private synchronized void update(RouteDefinition definition) {
         try {
             routeDefinitionWriter.delete(Mono.just(definition.getId())).subscribe();
         } catch (Exception ignore) {
@@ -199,7 +717,10 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
 
         try {
             routeDefinitionWriter.save(Mono.just(definition)).subscribe();
+            revisions.put(definition.getId(), RouteRevision.UNKNOWN);
+            evictRouteState(definition.getId());
             publisher.publishEvent(new RefreshRoutesEvent(this));
+            scheduleSnapshot();
         } catch (Exception ignore) {
             // do nothing
         }
@@ -210,13 +731,66 @@ public class DynamicRouteServiceImpl implements DynamicRouteService, Application
      *
      * @param routeId 动态路由ID
      */
-    private void delete(String routeId) {
+    private synchronized void delete(String routeId) {
         routeDefinitionWriter.delete(Mono.just(routeId)).subscribe();
+        revisions.remove(routeId);
+        evictRouteState(routeId);
         publisher.publishEvent(new RefreshRoutesEvent(this));
+        scheduleSnapshot();
+    }
+
+    @Override
+    public void destroy() {
+        batchExecutor.shutdownNow();
     }
 
     @Override
     public void setApplicationEventPublisher(@NonNull ApplicationEventPublisher applicationEventPublisher) {
         this.publisher = applicationEventPublisher;
     }
+
+    /**
+     * 路由版本信息
+     * <p>通过事件直接变更的路由没有数据库版本信息，记为UNKNOWN，下次增量加载时总是重新应用。
+     * 来自数据库的版本保留原始记录，用于写入本地快照</p>
+     */
+    private static final class RouteRevision {
+        private static final RouteRevision UNKNOWN = new RouteRevision(null, null, 0, null);
+
+        private final Integer version;
+        private final LocalDateTime updateTime;
+        private final int contentHash;
+        private final GatewayRouteDefinitionRecord record;
+
+        private RouteRevision(Integer version, LocalDateTime updateTime, int contentHash, GatewayRouteDefinitionRecord record) {
+            this.version = version;
+            this.updateTime = updateTime;
+            this.contentHash = contentHash;
+            this.record = record;
+        }
+
+        private static RouteRevision of(GatewayRouteDefinitionRecord record) {
+            return new RouteRevision(record.getVersion(), record.getUpdateTime(),
+                Objects.hash(record.getUri(), record.getPredicates(), record.getFilters(), record.getOrderNo()), record);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return this != UNKNOWN;
+            }
+            if (!(o instanceof RouteRevision) || o == UNKNOWN) {
+                return false;
+            }
+            RouteRevision that = (RouteRevision) o;
+            return contentHash == that.contentHash &&
+                Objects.equals(version, that.version) &&
+                Objects.equals(updateTime, that.updateTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, updateTime, contentHash);
+        }
+    }
 }
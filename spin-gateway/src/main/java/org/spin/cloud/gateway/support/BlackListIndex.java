@@ -0,0 +1,138 @@
+package org.spin.cloud.gateway.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.core.Assert;
+
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IP黑名单索引
+ * <p>支持单个地址与CIDR网段，分为两部分:</p>
+ * <ul>
+ *     <li>配置黑名单: 来自配置中心，整体替换</li>
+ *     <li>动态黑名单: 来自黑名单文件与运行时添加，支持过期时间，过期条目由时间轮在后台线程中清理</li>
+ * </ul>
+ * <p>查询时会同时校验过期时间，因此清理的时机不影响判断结果</p>
+ * <p>Created by xuweinan on 2019/12/12</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class BlackListIndex {
+    private static final Logger logger = LoggerFactory.getLogger(BlackListIndex.class);
+
+    private volatile IpPrefixTrie configured = new IpPrefixTrie();
+    private final IpPrefixTrie dynamic = new IpPrefixTrie();
+    private final TimingWheel<Expiry> expiryWheel = new TimingWheel<>(1000L, 512);
+
+    public BlackListIndex() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "blacklist-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::purgeExpired, 1L, 1L, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 判断地址是否在黑名单中
+     *
+     * @param ip IP地址
+     * @return 是否被禁止
+     */
+    public boolean isBlocked(String ip) {
+        if (null == ip) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        return configured.matches(ip, now) || dynamic.matches(ip, now);
+    }
+
+    /**
+     * 替换配置黑名单，无法解析的条目会被忽略
+     *
+     * @param entries 地址或网段
+     */
+    public void replaceConfigured(Collection<String> entries) {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        if (null != entries) {
+            for (String entry : entries) {
+                IpPrefixTrie.Prefix prefix = IpPrefixTrie.parse(entry);
+                if (null == prefix) {
+                    logger.warn("忽略无效的黑名单配置: {}", entry);
+                    continue;
+                }
+                trie.put(prefix, IpPrefixTrie.PERMANENT);
+            }
+        }
+        configured = trie;
+    }
+
+    /**
+     * 添加动态黑名单
+     *
+     * @param ipOrCidr  地址或网段
+     * @param expiredIn 有效期(毫秒)，0表示永久有效
+     */
+    public void add(String ipOrCidr, long expiredIn) {
+        IpPrefixTrie.Prefix prefix = IpPrefixTrie.parse(ipOrCidr);
+        Assert.notNull(prefix, "无效的IP地址或网段: " + ipOrCidr);
+        if (expiredIn == 0) {
+            dynamic.put(prefix, IpPrefixTrie.PERMANENT);
+        } else {
+            long expireAt = System.currentTimeMillis() + expiredIn;
+            dynamic.put(prefix, expireAt);
+            expiryWheel.schedule(new Expiry(prefix, expireAt), expireAt);
+        }
+    }
+
+    /**
+     * 移除动态黑名单
+     *
+     * @param ipOrCidr 地址或网段
+     */
+    public void remove(String ipOrCidr) {
+        IpPrefixTrie.Prefix prefix = IpPrefixTrie.parse(ipOrCidr);
+        if (null != prefix) {
+            dynamic.remove(prefix);
+        }
+    }
+
+    /**
+     * 清空动态黑名单
+     */
+    public void clearDynamic() {
+        dynamic.clear();
+        expiryWheel.clear();
+    }
+
+    public int configuredSize() {
+        return configured.size();
+    }
+
+    public int dynamicSize() {
+        return dynamic.size();
+    }
+
+    private void purgeExpired() {
+        try {
+            expiryWheel.advance(System.currentTimeMillis(), expiry -> dynamic.removeIfExpireAt(expiry.prefix, expiry.expireAt));
+        } catch (Exception e) {
+            logger.warn("清理过期黑名单失败", e);
+        }
+    }
+
+    private static final class Expiry {
+        private final IpPrefixTrie.Prefix prefix;
+        private final long expireAt;
+
+        private Expiry(IpPrefixTrie.Prefix prefix, long expireAt) {
+            this.prefix = prefix;
+            this.expireAt = expireAt;
+        }
+    }
+}
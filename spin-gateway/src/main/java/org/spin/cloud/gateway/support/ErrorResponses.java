@@ -0,0 +1,263 @@
+package org.spin.cloud.gateway.support;
+
+import org.spin.core.ErrorCode;
+import org.spin.core.util.StringUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预编码的错误响应
+ * <p>网关拒绝请求时返回的错误信息结构固定，只有timestamp与path是动态的。这里按(状态码, 错误类型, 错误信息)
+ * 将固定部分预先序列化为只读的直接内存缓冲区，每次响应只拼接时间戳与路径，不再构造Map并做完整的JSON序列化。</p>
+ * <p>输出格式与{@link org.spin.cloud.gateway.vo.RestfulResponse}序列化结果一致(空字段不输出):</p>
+ * <pre>
+ *     {"timestamp":1576000000000,"path":"/a/b","status":401,"error":"...","message":"..."}
+ * </pre>
+ * <p>只有内容固定的错误信息通过{@link #of(int, String, String)}获取并缓存模板；包含异常信息、主机地址、请求路径等
+ * 动态内容的错误信息通过{@link #render(int, String, String)}直接编码，不进入缓存，避免一次性的内容占满缓存。
+ * 缓存的模板数量仍有上限，作为误用时的保护</p>
+ * <p>Created by xuweinan on 2019/12/17</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public final class ErrorResponses {
+    private static final int MAX_TEMPLATES = 512;
+    private static final Map<String, Template> TEMPLATES = new ConcurrentHashMap<>();
+
+    private static final ByteBuffer HEAD = readOnly(StringUtils.getBytesUtf8("{\"timestamp\":"));
+    private static final ByteBuffer PATH = readOnly(StringUtils.getBytesUtf8(",\"path\":"));
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile Timestamp lastTimestamp = new Timestamp(0L);
+
+    private ErrorResponses() {
+    }
+
+    /**
+     * 获取错误码对应的响应模板，状态码与信息的处理同{@link org.spin.cloud.gateway.vo.RestfulResponse#error(ErrorCode)}
+     *
+     * @param errorCode 错误码
+     * @return 响应模板
+     */
+    public static Template of(ErrorCode errorCode) {
+        return of(errorCode, null);
+    }
+
+    /**
+     * 获取错误码对应的响应模板，状态码的处理同{@link org.spin.cloud.gateway.vo.RestfulResponse#error(ErrorCode, String)}
+     *
+     * @param errorCode 错误码
+     * @param message   错误信息，为空时使用错误码的描述
+     * @return 响应模板
+     */
+    public static Template of(ErrorCode errorCode, String message) {
+        ErrorCode c = errorCode.getCode() >= 400 || errorCode.getCode() == 200 ? errorCode : ErrorCode.INTERNAL_ERROR;
+        return of(c.getCode(), null == message ? c.getDesc() : message, null);
+    }
+
+    /**
+     * 获取响应模板，模板会被缓存，只能用于内容固定的错误信息
+     *
+     * @param status  状态码
+     * @param message 错误信息
+     * @param error   错误类型，可以为空
+     * @return 响应模板
+     */
+    public static Template of(int status, String message, String error) {
+        String key = status + "\n" + error + "\n" + message;
+        Template template = TEMPLATES.get(key);
+        if (null == template) {
+            if (TEMPLATES.size() < MAX_TEMPLATES) {
+                template = new Template(status, message, error, true);
+                Template exists = TEMPLATES.putIfAbsent(key, template);
+                if (null != exists) {
+                    template = exists;
+                }
+            } else {
+                template = new Template(status, message, error, false);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 编码包含动态内容的错误响应，结果不缓存
+     *
+     * @param status  状态码
+     * @param message 错误信息
+     * @param error   错误类型，可以为空
+     * @return 响应模板(仅本次使用)
+     */
+    public static Template render(int status, String message, String error) {
+        return new Template(status, message, error, false);
+    }
+
+    static int cachedSize() {
+        return TEMPLATES.size();
+    }
+
+    /**
+     * 将字符串编码为JSON字符串(含引号)
+     */
+    static byte[] quote(String value) {
+        return quote(new StringBuilder(value.length() + 2), value).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(ch);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20 || ch == 0x2028 || ch == 0x2029) {
+                        sb.append("\\u").append(HEX[ch >> 12 & 0xF]).append(HEX[ch >> 8 & 0xF])
+                            .append(HEX[ch >> 4 & 0xF]).append(HEX[ch & 0xF]);
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    private static ByteBuffer timestamp() {
+        long now = System.currentTimeMillis();
+        Timestamp current = lastTimestamp;
+        if (current.millis != now) {
+            current = new Timestamp(now);
+            lastTimestamp = current;
+        }
+        return current.bytes.duplicate();
+    }
+
+    private static ByteBuffer readOnly(byte[] bytes) {
+        return readOnly(bytes, true);
+    }
+
+    private static ByteBuffer readOnly(byte[] bytes, boolean direct) {
+        if (!direct) {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * 预编码的错误响应模板，线程安全
+     */
+    public static final class Template {
+        private final int status;
+        private final String message;
+        private final String error;
+        private final ByteBuffer tail;
+
+        private Template(int status, String message, String error, boolean cached) {
+            this.status = status;
+            this.message = message;
+            this.error = error;
+            StringBuilder sb = new StringBuilder(",\"status\":").append(status);
+            if (null != error) {
+                sb.append(",\"error\":");
+                quote(sb, error);
+            }
+            if (null != message) {
+                sb.append(",\"message\":");
+                quote(sb, message);
+            }
+            // 只有缓存的模板才分配直接内存，临时模板用完即丢弃
+            this.tail = readOnly(StringUtils.getBytesUtf8(sb.append('}').toString()), cached);
+        }
+
+        /**
+         * 写出错误响应(不包含路径)
+         *
+         * @param response 响应
+         * @return 写出结果
+         */
+        public Mono<Void> write(ReactiveHttpOutputMessage response) {
+            return write(response, null);
+        }
+
+        /**
+         * 写出错误响应
+         *
+         * @param response 响应
+         * @param path     请求路径，为空时不输出
+         * @return 写出结果
+         */
+        public Mono<Void> write(ReactiveHttpOutputMessage response, String path) {
+            DataBuffer buffer = encode(response.bufferFactory(), path);
+            HttpHeaders headers = response.getHeaders();
+            headers.set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
+            headers.setContentLength(buffer.readableByteCount());
+            return response.writeWith(Mono.just(buffer));
+        }
+
+        /**
+         * 拼接出完整的响应内容，固定部分直接引用共享的只读缓冲区，不做拷贝
+         *
+         * @param bufferFactory DataBuffer工厂
+         * @param path          请求路径，为空时不输出
+         * @return 响应内容
+         */
+        public DataBuffer encode(DataBufferFactory bufferFactory, String path) {
+            List<DataBuffer> parts = new ArrayList<>(5);
+            parts.add(bufferFactory.wrap(HEAD.duplicate()));
+            parts.add(bufferFactory.wrap(timestamp()));
+            if (null != path) {
+                parts.add(bufferFactory.wrap(PATH.duplicate()));
+                parts.add(bufferFactory.wrap(quote(path)));
+            }
+            parts.add(bufferFactory.wrap(tail.duplicate()));
+            return bufferFactory.join(parts);
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    private static final class Timestamp {
+        private final long millis;
+        private final ByteBuffer bytes;
+
+        private Timestamp(long millis) {
+            this.millis = millis;
+            this.bytes = ByteBuffer.wrap(StringUtils.getBytesUtf8(Long.toString(millis))).asReadOnlyBuffer();
+        }
+    }
+}
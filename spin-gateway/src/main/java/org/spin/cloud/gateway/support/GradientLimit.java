@@ -0,0 +1,203 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制
+ * <p>梯度算法(参考Netflix concurrency-limits的Gradient2)：以长期RTT的指数移动平均作为基准，
+ * 每个请求完成时用 基准RTT × 容忍系数 / 本次RTT 得到梯度(取值[0.5, 1])，新的限制为 当前限制 × 梯度 + √当前限制，
+ * 再经过平滑后限制在[minLimit, maxLimit]之内。RTT上升时限制随之收缩，RTT稳定时限制缓慢增长</p>
+ * <p>获取许可只有一次CAS；更新限制时如果其他线程正在更新则跳过本次采样，不会阻塞请求</p>
+ * <p>Created by xuweinan on 2019/12/20</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class GradientLimit {
+    private static final int LONG_WINDOW = 600;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final Settings settings;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile double limit;
+    private volatile long lastRtt;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private double longRtt;
+
+    public GradientLimit(Settings settings) {
+        this.settings = settings;
+        this.limit = settings.initialLimit;
+    }
+
+    /**
+     * 尝试获取许可
+     *
+     * @return 获取成功时返回获取后正在处理的请求数，失败时返回-1
+     */
+    public int acquire() {
+        lastUsed = System.currentTimeMillis();
+        for (; ; ) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return -1;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * 请求正常完成，释放许可并根据RTT调整限制
+     *
+     * @param rttNanos 请求耗时(纳秒)
+     * @param inflight 获取许可时正在处理的请求数
+     */
+    public void onSuccess(long rttNanos, int inflight) {
+        this.inflight.decrementAndGet();
+        completed.increment();
+        if (rttNanos <= 0 || !lock.tryLock()) {
+            return;
+        }
+        try {
+            lastRtt = rttNanos;
+            if (longRtt <= 0) {
+                longRtt = rttNanos;
+                return;
+            }
+            longRtt += (rttNanos - longRtt) / LONG_WINDOW;
+            // 负载下降后长期RTT偏高，逐步向当前RTT靠拢，避免限制长时间过于宽松
+            if (longRtt / rttNanos > 2) {
+                longRtt *= 0.95;
+            }
+            double current = limit;
+            // 并发远低于限制时RTT不能反映容量，不调整
+            if (inflight < current / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, settings.tolerance * longRtt / rttNanos));
+            double newLimit = current * gradient + Math.sqrt(current);
+            newLimit = current * (1 - settings.smoothing) + newLimit * settings.smoothing;
+            limit = Math.max(settings.minLimit, Math.min(settings.maxLimit, newLimit));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求超时或被上游拒绝，释放许可并按比例收缩限制
+     */
+    public void onDropped() {
+        inflight.decrementAndGet();
+        dropped.increment();
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            limit = Math.max(settings.minLimit, limit * BACKOFF_RATIO);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求被取消，只释放许可
+     */
+    public void onIgnore() {
+        inflight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 当前状态
+     *
+     * @return 状态信息
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("limit", getLimit());
+        result.put("inflight", getInflight());
+        result.put("rttMicros", lastRtt / 1000L);
+        result.put("longRttMicros", (long) longRtt / 1000L);
+        result.put("completed", completed.sum());
+        result.put("rejected", rejected.sum());
+        result.put("dropped", dropped.sum());
+        return result;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 限制参数
+     */
+    public static final class Settings {
+        private final int initialLimit;
+        private final int minLimit;
+        private final int maxLimit;
+        private final double tolerance;
+        private final double smoothing;
+
+        /**
+         * 构造限制参数
+         *
+         * @param initialLimit 初始限制
+         * @param minLimit     最小限制
+         * @param maxLimit     最大限制
+         * @param tolerance    RTT容忍系数，本次RTT不超过基准RTT的tolerance倍时不收缩限制
+         * @param smoothing    平滑系数，取值(0, 1]，越小调整越平缓
+         */
+        public Settings(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+            this.minLimit = Math.max(1, minLimit);
+            this.maxLimit = Math.max(this.minLimit, maxLimit);
+            this.initialLimit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+            this.tolerance = Math.max(1.0, tolerance);
+            this.smoothing = Math.max(0.01, Math.min(1.0, smoothing));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings that = (Settings) o;
+            return initialLimit == that.initialLimit && minLimit == that.minLimit && maxLimit == that.maxLimit
+                && Double.compare(that.tolerance, tolerance) == 0 && Double.compare(that.smoothing, smoothing) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(initialLimit, minLimit, maxLimit, tolerance, smoothing);
+        }
+    }
+}
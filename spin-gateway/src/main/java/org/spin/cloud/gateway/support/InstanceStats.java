@@ -0,0 +1,130 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上游实例的负载均衡统计
+ * <p>记录处理中的请求数、耗时的指数移动平均(EWMA)，以及当前统计周期内的请求数与失败数，全部为原子变量，不加锁。
+ * 统计周期由离群检测任务推进，检测结果以"摘除截止时间"的形式保存</p>
+ * <p>Created by xuweinan on 2019/12/21</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class InstanceStats {
+    private static final double ALPHA = 0.2;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToLongBits(0.0));
+    private final AtomicLong windowRequests = new AtomicLong();
+    private final AtomicLong windowErrors = new AtomicLong();
+    private final AtomicInteger ejections = new AtomicInteger();
+
+    private volatile long ejectedUntil;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * 开始一次请求
+     */
+    public void start() {
+        outstanding.incrementAndGet();
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * 结束一次请求
+     *
+     * @param latencyNanos 耗时(纳秒)
+     * @param success      是否成功
+     */
+    public void finish(long latencyNanos, boolean success) {
+        outstanding.decrementAndGet();
+        windowRequests.incrementAndGet();
+        if (!success) {
+            windowErrors.incrementAndGet();
+        }
+        for (; ; ) {
+            long bits = ewmaBits.get();
+            double current = Double.longBitsToDouble(bits);
+            double next = current <= 0 ? latencyNanos : current + (latencyNanos - current) * ALPHA;
+            if (ewmaBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 请求被取消，只减少处理中的请求数
+     */
+    public void cancel() {
+        outstanding.decrementAndGet();
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * 耗时的EWMA(纳秒)，没有数据时为0
+     */
+    public double getEwma() {
+        return Double.longBitsToDouble(ewmaBits.get());
+    }
+
+    public boolean isEjected(long now) {
+        return ejectedUntil > now;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 结束当前统计周期
+     *
+     * @return 本周期的请求数与失败数
+     */
+    public long[] rollWindow() {
+        return new long[]{windowRequests.getAndSet(0), windowErrors.getAndSet(0)};
+    }
+
+    /**
+     * 摘除实例，连续摘除时摘除时长按次数递增
+     *
+     * @param now          当前时间(毫秒)
+     * @param baseDuration 基础摘除时长(毫秒)
+     * @param maxDuration  最长摘除时长(毫秒)
+     */
+    public void eject(long now, long baseDuration, long maxDuration) {
+        int times = ejections.incrementAndGet();
+        ejectedUntil = now + Math.min(maxDuration, baseDuration * times);
+    }
+
+    /**
+     * 一个统计周期内表现正常，逐步降低摘除次数
+     */
+    public void recover() {
+        int times = ejections.get();
+        if (times > 0) {
+            ejections.compareAndSet(times, times - 1);
+        }
+    }
+
+    /**
+     * 当前状态
+     *
+     * @param now 当前时间(毫秒)
+     * @return 状态信息
+     */
+    public Map<String, Object> status(long now) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("outstanding", getOutstanding());
+        result.put("ewmaMicros", (long) getEwma() / 1000L);
+        result.put("ejected", isEjected(now));
+        result.put("ejections", ejections.get());
+        return result;
+    }
+}
@@ -0,0 +1,388 @@
+package org.spin.cloud.gateway.support;
+
+import org.spin.core.util.StringUtils;
+
+/**
+ * IP地址前缀树
+ * <p>基于二进制前缀树(bit trie)保存IPv4/IPv6地址与CIDR网段，每个条目带有过期时间。
+ * 查询时沿地址的二进制位逐层下降，复杂度为O(前缀长度)，查询过程不产生对象分配。</p>
+ * <p>写操作串行化执行，读操作无锁(节点字段均为volatile)。IPv4映射的IPv6地址(::ffff:a.b.c.d)按IPv4处理</p>
+ * <p>Created by xuweinan on 2019/12/12</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class IpPrefixTrie {
+
+    /**
+     * 无条目
+     */
+    private static final long NONE = -1L;
+
+    /**
+     * 永久有效
+     */
+    public static final long PERMANENT = 0L;
+
+    private static final ThreadLocal<long[]> IPV6_BUFFER = ThreadLocal.withInitial(() -> new long[10]);
+
+    private final Node v4Root = new Node();
+    private final Node v6Root = new Node();
+    private int size;
+
+    /**
+     * 添加(或覆盖)条目
+     *
+     * @param prefix   地址或网段
+     * @param expireAt 过期时间戳，{@link #PERMANENT}表示永久有效
+     */
+    public synchronized void put(Prefix prefix, long expireAt) {
+        Node node = prefix.v6 ? v6Root : v4Root;
+        for (int i = 0; i < prefix.bits; i++) {
+            if (prefix.bit(i) == 0) {
+                if (null == node.zero) {
+                    node.zero = new Node();
+                }
+                node = node.zero;
+            } else {
+                if (null == node.one) {
+                    node.one = new Node();
+                }
+                node = node.one;
+            }
+        }
+        if (node.expireAt == NONE) {
+            ++size;
+        }
+        node.expireAt = Math.max(expireAt, PERMANENT);
+    }
+
+    /**
+     * 移除条目
+     *
+     * @param prefix 地址或网段
+     * @return 是否存在并移除
+     */
+    public synchronized boolean remove(Prefix prefix) {
+        return remove(prefix.v6 ? v6Root : v4Root, prefix, 0, NONE);
+    }
+
+    /**
+     * 当条目的过期时间仍为指定值时移除(条目被重新添加后不受影响)
+     *
+     * @param prefix   地址或网段
+     * @param expireAt 过期时间戳
+     * @return 是否移除
+     */
+    public synchronized boolean removeIfExpireAt(Prefix prefix, long expireAt) {
+        return remove(prefix.v6 ? v6Root : v4Root, prefix, 0, expireAt);
+    }
+
+    /**
+     * 清空所有条目
+     */
+    public synchronized void clear() {
+        v4Root.zero = v4Root.one = null;
+        v4Root.expireAt = NONE;
+        v6Root.zero = v6Root.one = null;
+        v6Root.expireAt = NONE;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 判断地址是否命中任意一个有效的条目
+     *
+     * @param ip  IP地址字符串
+     * @param now 当前时间戳
+     * @return 是否命中
+     */
+    public boolean matches(String ip, long now) {
+        if (StringUtils.isEmpty(ip)) {
+            return false;
+        }
+        int start = 0;
+        int end = ip.length();
+        if (ip.charAt(0) == '[' && ip.charAt(end - 1) == ']') {
+            ++start;
+            --end;
+        }
+        int zone = ip.indexOf('%', start);
+        if (zone > 0 && zone < end) {
+            end = zone;
+        }
+        if (ip.indexOf(':', start) < 0) {
+            long v4 = parseIpv4(ip, start, end);
+            return v4 >= 0 && matchesV4(v4, now);
+        }
+
+        long[] buf = IPV6_BUFFER.get();
+        if (!parseIpv6(ip, start, end, buf)) {
+            return false;
+        }
+        if (buf[0] == 0L && (buf[1] >>> 32) == 0xFFFFL) {
+            return matchesV4(buf[1] & 0xFFFFFFFFL, now);
+        }
+        return matchesV6(buf[0], buf[1], now);
+    }
+
+    private boolean matchesV4(long addr, long now) {
+        Node node = v4Root;
+        for (int i = 0; ; ++i) {
+            if (active(node.expireAt, now)) {
+                return true;
+            }
+            if (i == 32) {
+                return false;
+            }
+            node = ((addr >>> (31 - i)) & 1L) == 0 ? node.zero : node.one;
+            if (null == node) {
+                return false;
+            }
+        }
+    }
+
+    private boolean matchesV6(long hi, long lo, long now) {
+        Node node = v6Root;
+        for (int i = 0; ; ++i) {
+            if (active(node.expireAt, now)) {
+                return true;
+            }
+            if (i == 128) {
+                return false;
+            }
+            long bit = i < 64 ? (hi >>> (63 - i)) & 1L : (lo >>> (127 - i)) & 1L;
+            node = bit == 0 ? node.zero : node.one;
+            if (null == node) {
+                return false;
+            }
+        }
+    }
+
+    private static boolean active(long expireAt, long now) {
+        return expireAt == PERMANENT || expireAt > now;
+    }
+
+    private boolean remove(Node node, Prefix prefix, int depth, long expectExpireAt) {
+        if (depth == prefix.bits) {
+            if (node.expireAt == NONE || (expectExpireAt != NONE && node.expireAt != expectExpireAt)) {
+                return false;
+            }
+            node.expireAt = NONE;
+            --size;
+            return true;
+        }
+        boolean zero = prefix.bit(depth) == 0;
+        Node child = zero ? node.zero : node.one;
+        if (null == child || !remove(child, prefix, depth + 1, expectExpireAt)) {
+            return false;
+        }
+        if (child.expireAt == NONE && null == child.zero && null == child.one) {
+            if (zero) {
+                node.zero = null;
+            } else {
+                node.one = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析IP地址或CIDR网段
+     *
+     * @param cidr 形如 10.0.0.1, 10.0.0.0/8, 2001:db8::/32 的字符串
+     * @return 解析结果，格式不正确时返回null
+     */
+    public static Prefix parse(String cidr) {
+        String str = StringUtils.trimToNull(cidr);
+        if (null == str) {
+            return null;
+        }
+        int slash = str.indexOf('/');
+        String addr = slash < 0 ? str : str.substring(0, slash);
+        int bits = -1;
+        if (slash >= 0) {
+            try {
+                bits = Integer.parseInt(str.substring(slash + 1));
+            } catch (NumberFormatException ignore) {
+                return null;
+            }
+            if (bits < 0) {
+                return null;
+            }
+        }
+
+        if (addr.indexOf(':') < 0) {
+            long v4 = parseIpv4(addr, 0, addr.length());
+            if (v4 < 0 || bits > 32) {
+                return null;
+            }
+            return new Prefix(false, 0L, v4 << 32, bits < 0 ? 32 : bits);
+        }
+
+        long[] buf = new long[10];
+        if (!parseIpv6(addr, 0, addr.length(), buf) || bits > 128) {
+            return null;
+        }
+        if (buf[0] == 0L && (buf[1] >>> 32) == 0xFFFFL && (bits < 0 || bits >= 96)) {
+            return new Prefix(false, 0L, buf[1] << 32, bits < 0 ? 32 : bits - 96);
+        }
+        return new Prefix(true, buf[0], buf[1], bits < 0 ? 128 : bits);
+    }
+
+    /**
+     * 解析IPv4地址
+     *
+     * @return 32位无符号地址，格式不正确时返回-1
+     */
+    static long parseIpv4(String s, int start, int end) {
+        long result = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = start; i < end; ++i) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && value >= 0 && octets < 3) {
+                result = (result << 8) | value;
+                ++octets;
+                value = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (octets != 3 || value < 0) {
+            return -1;
+        }
+        return (result << 8) | value;
+    }
+
+    /**
+     * 解析IPv6地址，结果的高64位与低64位分别写入buf[0]与buf[1]，buf[2..9]作为分组暂存区
+     *
+     * @return 是否解析成功
+     */
+    static boolean parseIpv6(String s, int start, int end, long[] buf) {
+        int groups = 0;
+        int compressAt = -1;
+        int i = start;
+        if (i + 1 < end && s.charAt(i) == ':') {
+            if (s.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressAt = 0;
+            i += 2;
+        }
+        while (i < end) {
+            if (groups >= 8) {
+                return false;
+            }
+            int segEnd = i;
+            boolean dotted = false;
+            while (segEnd < end && s.charAt(segEnd) != ':') {
+                if (s.charAt(segEnd) == '.') {
+                    dotted = true;
+                }
+                ++segEnd;
+            }
+            if (dotted) {
+                long v4 = parseIpv4(s, i, segEnd);
+                if (segEnd != end || groups > 6 || v4 < 0) {
+                    return false;
+                }
+                buf[2 + groups++] = v4 >>> 16;
+                buf[2 + groups++] = v4 & 0xFFFFL;
+                break;
+            }
+            int len = segEnd - i;
+            if (len == 0 || len > 4) {
+                return false;
+            }
+            long value = 0;
+            for (int j = i; j < segEnd; ++j) {
+                int d = Character.digit(s.charAt(j), 16);
+                if (d < 0) {
+                    return false;
+                }
+                value = (value << 4) | d;
+            }
+            buf[2 + groups++] = value;
+            i = segEnd;
+            if (i < end) {
+                ++i;
+                if (i < end && s.charAt(i) == ':') {
+                    if (compressAt >= 0) {
+                        return false;
+                    }
+                    compressAt = groups;
+                    ++i;
+                } else if (i == end) {
+                    return false;
+                }
+            }
+        }
+        if (compressAt < 0 ? groups != 8 : groups >= 8) {
+            return false;
+        }
+
+        int zeros = 8 - groups;
+        int idx = 0;
+        long hi = 0;
+        long lo = 0;
+        for (int g = 0; g < 8; ++g) {
+            long v = compressAt >= 0 && g >= compressAt && g < compressAt + zeros ? 0L : buf[2 + idx++];
+            if (g < 4) {
+                hi = (hi << 16) | v;
+            } else {
+                lo = (lo << 16) | v;
+            }
+        }
+        buf[0] = hi;
+        buf[1] = lo;
+        return true;
+    }
+
+    private static final class Node {
+        private volatile Node zero;
+        private volatile Node one;
+        private volatile long expireAt = NONE;
+    }
+
+    /**
+     * 地址前缀(IPv4地址左对齐保存在lo的高32位)
+     */
+    public static final class Prefix {
+        private final boolean v6;
+        private final long hi;
+        private final long lo;
+        private final int bits;
+
+        private Prefix(boolean v6, long hi, long lo, int bits) {
+            this.v6 = v6;
+            this.hi = hi;
+            this.lo = lo;
+            this.bits = bits;
+        }
+
+        private int bit(int i) {
+            if (!v6) {
+                return (int) ((lo >>> (63 - i)) & 1L);
+            }
+            return (int) (i < 64 ? (hi >>> (63 - i)) & 1L : (lo >>> (127 - i)) & 1L);
+        }
+
+        public boolean isV6() {
+            return v6;
+        }
+
+        public int getBits() {
+            return bits;
+        }
+    }
+}
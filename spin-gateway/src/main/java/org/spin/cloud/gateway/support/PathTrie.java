@@ -0,0 +1,291 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 路径前缀树
+ * <p>以路径段为单位保存Ant风格的路径模式，支持 *、?、{变量} 与 **。
+ * 构建完成后调用{@link #compact()}将只有单个后继的字面量路径段合并为一条边(压缩前缀树)，之后只读，可多线程并发查询。</p>
+ * <p>查询时沿请求路径逐段下降，优先级为: 字面量 &gt; 段内通配 &gt; **，只有当优先级高的分支无法完整匹配时才回溯尝试其他分支，
+ * 与Spring按模式精确程度选择处理器的规则基本一致。路径变量的正则约束不做校验，按*处理</p>
+ * <p>Created by xuweinan on 2019/12/15</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class PathTrie<T> {
+    private static final String[] EMPTY = new String[0];
+    private static final String DOUBLE_WILDCARD = "**";
+    private static final Comparator<Node<?>> SPECIFICITY = (a, b) -> b.pattern.literals - a.pattern.literals;
+
+    private final Node<T> root = new Node<>(EMPTY, null);
+    private int size;
+
+    /**
+     * 添加路径模式，同一模式重复添加时覆盖
+     *
+     * @param pattern 路径模式
+     * @param value   值
+     */
+    public void insert(String pattern, T value) {
+        Node<T> node = root;
+        for (String segment : tokenize(pattern)) {
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                if (null == node.doubleWildcard) {
+                    node.doubleWildcard = new Node<>(EMPTY, null);
+                }
+                node = node.doubleWildcard;
+            } else if (SegmentPattern.isPattern(segment)) {
+                Node<T> child = null;
+                for (Node<T> p : node.patterns) {
+                    if (p.pattern.source.equals(segment)) {
+                        child = p;
+                        break;
+                    }
+                }
+                if (null == child) {
+                    child = new Node<>(EMPTY, new SegmentPattern(segment));
+                    node.patterns.add(child);
+                    node.patterns.sort(SPECIFICITY);
+                }
+                node = child;
+            } else {
+                node = node.literals.computeIfAbsent(segment, k -> new Node<>(new String[]{k}, null));
+            }
+        }
+        if (null == node.value) {
+            ++size;
+        }
+        node.value = value;
+    }
+
+    /**
+     * 压缩字面量路径段
+     */
+    public void compact() {
+        compact(root);
+    }
+
+    /**
+     * 查找与路径匹配的值
+     *
+     * @param path 请求路径
+     * @return 匹配的值，不存在时返回null
+     */
+    public T match(String path) {
+        return match(root, tokenize(path), 0);
+    }
+
+    /**
+     * 查找与路径匹配的全部值，不区分优先级。同一个值可能被回调多次(如存在多个**时)，由调用方去重
+     *
+     * @param path     请求路径
+     * @param consumer 匹配值的回调
+     */
+    public void matchAll(String path, Consumer<T> consumer) {
+        matchAll(root, tokenize(path), 0, consumer);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private T match(Node<T> node, String[] segments, int idx) {
+        if (idx == segments.length) {
+            if (null != node.value) {
+                return node.value;
+            }
+            return null == node.doubleWildcard ? null : matchDoubleWildcard(node.doubleWildcard, segments, idx);
+        }
+
+        Node<T> child = node.literals.get(segments[idx]);
+        if (null != child && child.matchesLabel(segments, idx)) {
+            T value = match(child, segments, idx + child.label.length);
+            if (null != value) {
+                return value;
+            }
+        }
+
+        for (Node<T> p : node.patterns) {
+            if (p.pattern.matches(segments[idx])) {
+                T value = match(p, segments, idx + 1);
+                if (null != value) {
+                    return value;
+                }
+            }
+        }
+
+        return null == node.doubleWildcard ? null : matchDoubleWildcard(node.doubleWildcard, segments, idx);
+    }
+
+    private T matchDoubleWildcard(Node<T> node, String[] segments, int idx) {
+        for (int i = idx; i <= segments.length; ++i) {
+            T value = match(node, segments, i);
+            if (null != value) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private void matchAll(Node<T> node, String[] segments, int idx, Consumer<T> consumer) {
+        if (idx == segments.length) {
+            if (null != node.value) {
+                consumer.accept(node.value);
+            }
+        } else {
+            Node<T> child = node.literals.get(segments[idx]);
+            if (null != child && child.matchesLabel(segments, idx)) {
+                matchAll(child, segments, idx + child.label.length, consumer);
+            }
+            for (Node<T> p : node.patterns) {
+                if (p.pattern.matches(segments[idx])) {
+                    matchAll(p, segments, idx + 1, consumer);
+                }
+            }
+        }
+        if (null != node.doubleWildcard) {
+            for (int i = idx; i <= segments.length; ++i) {
+                matchAll(node.doubleWildcard, segments, i, consumer);
+            }
+        }
+    }
+
+    private void compact(Node<T> node) {
+        for (Map.Entry<String, Node<T>> entry : node.literals.entrySet()) {
+            Node<T> child = entry.getValue();
+            while (null == child.value && child.patterns.isEmpty() && null == child.doubleWildcard && child.literals.size() == 1) {
+                Node<T> grandChild = child.literals.values().iterator().next();
+                String[] label = Arrays.copyOf(child.label, child.label.length + grandChild.label.length);
+                System.arraycopy(grandChild.label, 0, label, child.label.length, grandChild.label.length);
+                grandChild.label = label;
+                child = grandChild;
+            }
+            entry.setValue(child);
+            compact(child);
+        }
+        for (Node<T> p : node.patterns) {
+            compact(p);
+        }
+        if (null != node.doubleWildcard) {
+            compact(node.doubleWildcard);
+        }
+    }
+
+    private static String[] tokenize(String path) {
+        if (null == path || path.isEmpty()) {
+            return EMPTY;
+        }
+        List<String> segments = new ArrayList<>(8);
+        int start = 0;
+        int len = path.length();
+        for (int i = 0; i <= len; ++i) {
+            if (i == len || path.charAt(i) == '/') {
+                if (i > start) {
+                    segments.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return segments.toArray(EMPTY);
+    }
+
+    private static final class Node<T> {
+        private String[] label;
+        private final SegmentPattern pattern;
+        private final Map<String, Node<T>> literals = new HashMap<>(4);
+        private final List<Node<T>> patterns = new ArrayList<>(1);
+        private Node<T> doubleWildcard;
+        private T value;
+
+        private Node(String[] label, SegmentPattern pattern) {
+            this.label = label;
+            this.pattern = pattern;
+        }
+
+        /**
+         * 校验压缩边上第一个路径段之后的其余路径段(第一个路径段已通过Map查找匹配)
+         */
+        private boolean matchesLabel(String[] segments, int idx) {
+            if (idx + label.length > segments.length) {
+                return false;
+            }
+            for (int i = 1; i < label.length; ++i) {
+                if (!label[i].equals(segments[idx + i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 单个路径段内的通配模式，{变量}视为*。同一层级的模式按字面量字符数降序尝试(如*.json先于{id})
+     */
+    private static final class SegmentPattern {
+        private final String source;
+        private final String glob;
+        private final int literals;
+
+        private SegmentPattern(String source) {
+            this.source = source;
+            StringBuilder sb = new StringBuilder(source.length());
+            int depth = 0;
+            for (int i = 0; i < source.length(); ++i) {
+                char c = source.charAt(i);
+                if (c == '{') {
+                    if (depth++ == 0) {
+                        sb.append('*');
+                    }
+                } else if (c == '}') {
+                    depth = Math.max(0, depth - 1);
+                } else if (depth == 0) {
+                    sb.append(c);
+                }
+            }
+            this.glob = sb.toString();
+            int count = 0;
+            for (int i = 0; i < glob.length(); ++i) {
+                if (glob.charAt(i) != '*') {
+                    ++count;
+                }
+            }
+            this.literals = count;
+        }
+
+        private static boolean isPattern(String segment) {
+            return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0;
+        }
+
+        private boolean matches(String segment) {
+            int s = 0;
+            int g = 0;
+            int star = -1;
+            int mark = 0;
+            while (s < segment.length()) {
+                if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == segment.charAt(s))) {
+                    ++s;
+                    ++g;
+                } else if (g < glob.length() && glob.charAt(g) == '*') {
+                    star = g++;
+                    mark = s;
+                } else if (star >= 0) {
+                    g = star + 1;
+                    s = ++mark;
+                } else {
+                    return false;
+                }
+            }
+            while (g < glob.length() && glob.charAt(g) == '*') {
+                ++g;
+            }
+            return g == glob.length();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求统计
+ * <p>记录请求数、各状态码类别(1xx~5xx)的数量、请求/响应字节数与耗时分布(微秒)。所有字段均为无锁计数器</p>
+ * <p>Created by xuweinan on 2019/12/16</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RequestStats {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder[] statusClasses = new LongAdder[6];
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LogLinearHistogram latency = new LogLinearHistogram();
+    private final long startTime = System.currentTimeMillis();
+
+    public RequestStats() {
+        for (int i = 0; i < statusClasses.length; ++i) {
+            statusClasses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次请求
+     *
+     * @param status        HTTP状态码，未知时传0
+     * @param requestBytes  请求字节数，未知时传-1
+     * @param responseBytes 响应字节数，未知时传-1
+     * @param latencyMicros 耗时(微秒)
+     */
+    public void record(int status, long requestBytes, long responseBytes, long latencyMicros) {
+        requests.increment();
+        int statusClass = status / 100;
+        statusClasses[statusClass > 0 && statusClass < 6 ? statusClass : 0].increment();
+        if (requestBytes > 0) {
+            bytesIn.add(requestBytes);
+        }
+        if (responseBytes > 0) {
+            bytesOut.add(responseBytes);
+        }
+        latency.record(latencyMicros);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public LogLinearHistogram.Snapshot latencySnapshot() {
+        return latency.snapshot();
+    }
+
+    /**
+     * 汇总统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long requestCount = requests.sum();
+        result.put("requests", requestCount);
+        long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+        result.put("throughput", requestCount * 1000.0 / elapsed);
+        Map<String, Long> status = new LinkedHashMap<>();
+        for (int i = 1; i < statusClasses.length; ++i) {
+            status.put(i + "xx", statusClasses[i].sum());
+        }
+        status.put("unknown", statusClasses[0].sum());
+        result.put("status", status);
+        result.put("bytesIn", bytesIn.sum());
+        result.put("bytesOut", bytesOut.sum());
+
+        LogLinearHistogram.Snapshot snapshot = latency.snapshot();
+        Map<String, Object> latencyInfo = new LinkedHashMap<>();
+        latencyInfo.put("mean", snapshot.getMean());
+        for (int i = 0; i < QUANTILES.length; ++i) {
+            latencyInfo.put(QUANTILE_NAMES[i], snapshot.percentile(QUANTILES[i]));
+        }
+        latencyInfo.put("max", snapshot.getMax());
+        result.put("latencyMicros", latencyInfo);
+        return result;
+    }
+}
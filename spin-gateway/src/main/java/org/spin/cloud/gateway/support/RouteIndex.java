@@ -0,0 +1,169 @@
+package org.spin.cloud.gateway.support;
+
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 路由索引
+ * <p>以路由在路由表中的序号为值，建立路径前缀树与Host索引，并记录每个路由允许的请求方法。
+ * 一次查询得到可能匹配的路由序号集合(按路由顺序)，调用方只需对这些路由执行完整的断言。</p>
+ * <p>索引只做预筛选，必须保证不漏掉真正匹配的路由：无法建立索引的路由作为顺序匹配的路由，总是出现在候选集合中。
+ * 构建完成后只读，可多线程并发查询</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RouteIndex {
+    private static final int ALL_METHODS = (1 << HttpMethod.values().length) - 1;
+
+    private final int size;
+    private final PathTrie<int[]> paths;
+    private final Map<String, int[]> hosts;
+    private final BitSet sequential;
+    private final int[] methods;
+
+    private RouteIndex(Builder builder) {
+        this.size = builder.size;
+        this.paths = new PathTrie<>();
+        builder.paths.forEach((pattern, positions) -> paths.insert(pattern, toArray(positions)));
+        this.paths.compact();
+        this.hosts = new HashMap<>(builder.hosts.size());
+        builder.hosts.forEach((host, positions) -> hosts.put(host, toArray(positions)));
+        this.sequential = builder.sequential;
+        this.methods = builder.methods;
+    }
+
+    public static Builder builder(int size) {
+        return new Builder(size);
+    }
+
+    /**
+     * 查询可能匹配的路由
+     *
+     * @param path   请求路径，为null时不按路径筛选
+     * @param host   请求的Host头
+     * @param method 请求方法
+     * @return 候选路由的序号集合
+     */
+    public BitSet candidates(String path, String host, HttpMethod method) {
+        BitSet result;
+        if (null == path) {
+            result = new BitSet(size);
+            result.set(0, size);
+        } else {
+            result = (BitSet) sequential.clone();
+            paths.matchAll(path, positions -> {
+                for (int position : positions) {
+                    result.set(position);
+                }
+            });
+            int[] positions = null == host ? null : hosts.get(host);
+            if (null != positions) {
+                for (int position : positions) {
+                    result.set(position);
+                }
+            }
+        }
+        if (null != method) {
+            int bit = 1 << method.ordinal();
+            for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                if ((methods[i] & bit) == 0) {
+                    result.clear(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 顺序匹配(未建立索引)的路由数量
+     */
+    public int sequentialSize() {
+        return sequential.cardinality();
+    }
+
+    private static int[] toArray(List<Integer> positions) {
+        return positions.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+
+    public static final class Builder {
+        private final int size;
+        private final Map<String, List<Integer>> paths = new LinkedHashMap<>();
+        private final Map<String, List<Integer>> hosts = new HashMap<>();
+        private final BitSet sequential = new BitSet();
+        private final int[] methods;
+
+        private Builder(int size) {
+            this.size = size;
+            this.methods = new int[size];
+            Arrays.fill(methods, ALL_METHODS);
+        }
+
+        /**
+         * 按路径模式建立索引
+         *
+         * @param position 路由序号
+         * @param pattern  路径模式
+         * @return 当前Builder
+         */
+        public Builder path(int position, String pattern) {
+            paths.computeIfAbsent(pattern, k -> new ArrayList<>(1)).add(position);
+            return this;
+        }
+
+        /**
+         * 按Host(不含通配符)建立索引
+         *
+         * @param position 路由序号
+         * @param host     Host
+         * @return 当前Builder
+         */
+        public Builder host(int position, String host) {
+            hosts.computeIfAbsent(host, k -> new ArrayList<>(1)).add(position);
+            return this;
+        }
+
+        /**
+         * 限制路由允许的请求方法，多次调用时取交集
+         *
+         * @param position 路由序号
+         * @param allowed  允许的请求方法
+         * @return 当前Builder
+         */
+        public Builder methods(int position, HttpMethod... allowed) {
+            int mask = 0;
+            for (HttpMethod method : allowed) {
+                mask |= 1 << method.ordinal();
+            }
+            methods[position] &= mask;
+            return this;
+        }
+
+        /**
+         * 无法建立索引的路由，每次查询都作为候选
+         *
+         * @param position 路由序号
+         * @return 当前Builder
+         */
+        public Builder sequential(int position) {
+            sequential.set(position);
+            return this;
+        }
+
+        public RouteIndex build() {
+            return new RouteIndex(this);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.spin.cloud.gateway.support;
+
+import org.spin.cloud.gateway.repository.tables.records.GatewayRouteDefinitionRecord;
+import org.spin.core.util.JsonUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 路由表本地快照
+ * <p>JSON Lines格式：第一行为文件头(格式版本、路由数量、生成时间)，之后每行一条路由记录，保留数据库中的版本号与更新时间，
+ * 启动时据此与数据库做增量比对。写入时先写临时文件再原子替换，读取时校验路由数量，不完整的快照视为不存在</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public final class RouteSnapshot {
+    private static final int FORMAT = 1;
+
+    private RouteSnapshot() {
+    }
+
+    /**
+     * 写入快照
+     *
+     * @param file    快照文件
+     * @param records 路由记录
+     * @throws IOException 写入失败时抛出
+     */
+    public static void write(Path file, Collection<GatewayRouteDefinitionRecord> records) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (null != dir) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(JsonUtils.toJson(new Header(records.size())));
+            writer.newLine();
+            for (GatewayRouteDefinitionRecord record : records) {
+                writer.write(JsonUtils.toJson(Entry.of(record)));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照
+     *
+     * @param file 快照文件
+     * @return 路由记录，快照不存在或不完整时返回null
+     * @throws IOException 读取失败时抛出
+     */
+    public static List<GatewayRouteDefinitionRecord> read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            Header header = null == line ? null : JsonUtils.fromJson(line, Header.class);
+            if (null == header || header.format != FORMAT) {
+                return null;
+            }
+            List<GatewayRouteDefinitionRecord> records = new ArrayList<>(header.count);
+            while (null != (line = reader.readLine())) {
+                if (!line.isEmpty()) {
+                    records.add(JsonUtils.fromJson(line, Entry.class).toRecord());
+                }
+            }
+            return records.size() == header.count ? records : null;
+        }
+    }
+
+    private static final class Header {
+        private int format;
+        private int count;
+        private long createTime;
+
+        private Header(int count) {
+            this.format = FORMAT;
+            this.count = count;
+            this.createTime = System.currentTimeMillis();
+        }
+    }
+
+    private static final class Entry {
+        private String id;
+        private String uri;
+        private String predicates;
+        private String filters;
+        private Integer orderNo;
+        private Integer valid;
+        private Integer version;
+        private String updateTime;
+
+        private static Entry of(GatewayRouteDefinitionRecord record) {
+            Entry entry = new Entry();
+            entry.id = record.getId();
+            entry.uri = record.getUri();
+            entry.predicates = record.getPredicates();
+            entry.filters = record.getFilters();
+            entry.orderNo = record.getOrderNo();
+            entry.valid = record.getValid();
+            entry.version = record.getVersion();
+            entry.updateTime = null == record.getUpdateTime() ? null : record.getUpdateTime().toString();
+            return entry;
+        }
+
+        private GatewayRouteDefinitionRecord toRecord() {
+            GatewayRouteDefinitionRecord record = new GatewayRouteDefinitionRecord();
+            record.setId(id);
+            record.setUri(uri);
+            record.setPredicates(predicates);
+            record.setFilters(filters);
+            record.setOrderNo(orderNo);
+            record.setValid(valid);
+            record.setVersion(version);
+            record.setUpdateTime(null == updateTime ? null : LocalDateTime.parse(updateTime));
+            return record;
+        }
+    }
+}
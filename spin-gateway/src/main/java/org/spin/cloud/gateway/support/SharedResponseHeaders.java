@@ -0,0 +1,92 @@
+package org.spin.cloud.gateway.support;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 可共享的响应头
+ * <p>响应在不同调用者之间共享(请求合并、响应缓存)时，只能共享描述响应内容的响应头。
+ * CORS相关的Access-Control-*(由CorsConfig按每个请求的Origin设置)、Set-Cookie以及Connection、Transfer-Encoding等逐跳头
+ * 与具体的调用者或连接相关，既不记录也不覆盖调用者自身的响应头；Vary与调用者响应中已有的值合并</p>
+ * <p>Created by xuweinan on 2019/12/18</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public final class SharedResponseHeaders {
+    private static final String CORS_PREFIX = "access-control-";
+    private static final Set<String> PER_CLIENT = new HashSet<>(Arrays.asList(
+        "connection", "keep-alive", "proxy-connection", "proxy-authenticate", "te", "trailer", "transfer-encoding", "upgrade",
+        "set-cookie", "set-cookie2"));
+
+    private SharedResponseHeaders() {
+    }
+
+    /**
+     * 响应头是否可以在调用者之间共享
+     *
+     * @param name 响应头名称
+     * @return 是否可以共享
+     */
+    public static boolean isShareable(String name) {
+        String lower = name.toLowerCase();
+        return !PER_CLIENT.contains(lower) && !lower.startsWith(CORS_PREFIX);
+    }
+
+    /**
+     * 复制可共享的响应头
+     *
+     * @param source 上游响应头
+     * @return 可共享的响应头(副本)
+     */
+    public static HttpHeaders copyOf(HttpHeaders source) {
+        HttpHeaders headers = new HttpHeaders();
+        source.forEach((name, values) -> {
+            if (isShareable(name)) {
+                headers.put(name, new ArrayList<>(values));
+            }
+        });
+        return headers;
+    }
+
+    /**
+     * 将共享的响应头写入调用者的响应，调用者自身的CORS等响应头保持不变
+     *
+     * @param shared 共享的响应头
+     * @param target 调用者的响应头
+     */
+    public static void apply(HttpHeaders shared, HttpHeaders target) {
+        shared.forEach((name, values) -> {
+            if (HttpHeaders.VARY.equalsIgnoreCase(name)) {
+                List<String> vary = new ArrayList<>(target.getVary());
+                for (String value : shared.getVary()) {
+                    if (vary.stream().noneMatch(value::equalsIgnoreCase)) {
+                        vary.add(value);
+                    }
+                }
+                target.setVary(vary);
+            } else {
+                target.put(name, new ArrayList<>(values));
+            }
+        });
+    }
+
+    /**
+     * 移除响应中的可共享响应头，保留与调用者相关的响应头
+     *
+     * @param target 调用者的响应头
+     */
+    public static void clearShareable(HttpHeaders target) {
+        List<String> names = new ArrayList<>(target.keySet());
+        for (String name : names) {
+            if (isShareable(name)) {
+                target.remove(name);
+            }
+        }
+    }
+}
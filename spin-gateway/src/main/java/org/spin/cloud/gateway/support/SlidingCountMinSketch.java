@@ -0,0 +1,134 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 滑动窗口Count-Min Sketch
+ * <p>将时间窗口划分为若干个时间片，每个时间片一个depth×width的计数矩阵，内存占用固定，与不同键的数量无关。
+ * 估计值为各行在窗口内计数之和的最小值，只会高估不会低估(哈希冲突导致)，适合做阈值判断。</p>
+ * <p>计数矩阵比窗口多一个时间片，{@link #rotate(long)}提前清空下一个时间片，需要以不超过时间片长度的间隔调用。
+ * 写入与查询只有原子操作，可多线程并发使用</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class SlidingCountMinSketch {
+    private final int width;
+    private final int depth;
+    private final int slots;
+    private final long slotMillis;
+    private final AtomicIntegerArray counters;
+    private final long[] clearedEpochs;
+
+    /**
+     * @param width      每行的计数器数量，向上取整为2的幂
+     * @param depth      行数(哈希函数数量)
+     * @param buckets    窗口划分的时间片数量
+     * @param slotMillis 时间片长度(毫秒)
+     */
+    public SlidingCountMinSketch(int width, int depth, int buckets, long slotMillis) {
+        int w = 16;
+        while (w < width) {
+            w <<= 1;
+        }
+        this.width = w;
+        this.depth = Math.max(1, depth);
+        this.slots = Math.max(1, buckets) + 1;
+        this.slotMillis = Math.max(1L, slotMillis);
+        this.counters = new AtomicIntegerArray(this.slots * this.depth * this.width);
+        this.clearedEpochs = new long[this.slots];
+    }
+
+    /**
+     * 计数加1
+     *
+     * @param hash 键的64位哈希，见{@link #hash(CharSequence)}
+     * @param now  当前时间(毫秒)
+     * @return 计数后窗口内的估计值
+     */
+    public int add(long hash, long now) {
+        int slot = (int) ((now / slotMillis) % slots);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            int col = (h1 + row * h2) & (width - 1);
+            counters.incrementAndGet(index(slot, row, col));
+            min = Math.min(min, sum(row, col));
+        }
+        return min;
+    }
+
+    /**
+     * 窗口内的估计值
+     *
+     * @param hash 键的64位哈希
+     * @return 估计值
+     */
+    public int estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            min = Math.min(min, sum(row, (h1 + row * h2) & (width - 1)));
+        }
+        return min;
+    }
+
+    /**
+     * 清空即将使用的下一个时间片(其中是已经移出窗口的计数)
+     *
+     * @param now 当前时间(毫秒)
+     */
+    public synchronized void rotate(long now) {
+        long next = now / slotMillis + 1;
+        int slot = (int) (next % slots);
+        if (clearedEpochs[slot] != next) {
+            int from = slot * depth * width;
+            int to = from + depth * width;
+            for (int i = from; i < to; ++i) {
+                counters.lazySet(i, 0);
+            }
+            clearedEpochs[slot] = next;
+        }
+    }
+
+    /**
+     * 计数矩阵占用的内存(字节)
+     */
+    public long memoryBytes() {
+        return 4L * counters.length();
+    }
+
+    /**
+     * 64位FNV-1a哈希(按字符计算，不做编码转换)，再经过一次混淆，保证高低32位都足够分散
+     *
+     * @param key 键
+     * @return 哈希值
+     */
+    public static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); ++i) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        // 第二个哈希(高32位)保持为奇数，避免各行落在同一列
+        return h | (1L << 32);
+    }
+
+    private int sum(int row, int col) {
+        int total = 0;
+        for (int slot = 0; slot < slots; ++slot) {
+            total += counters.get(index(slot, row, col));
+        }
+        return total;
+    }
+
+    private int index(int slot, int row, int col) {
+        return (slot * depth + row) * width + col;
+    }
+}
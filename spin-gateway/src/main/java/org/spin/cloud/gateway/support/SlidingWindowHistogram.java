@@ -0,0 +1,75 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滑动窗口直方图
+ * <p>将时间窗口划分为若干个时间片，每个时间片一个{@link LogLinearHistogram}。写入时只记录到当前时间片，
+ * 时间片首次进入新的周期时清空；快照只合并仍在窗口内的时间片，分位数反映最近一个窗口的数据，不会被启动以来的累计数据稀释。</p>
+ * <p>写入只有原子操作(切换时间片时短暂加锁)，可多线程并发使用</p>
+ * <p>Created by xuweinan on 2019/12/16</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class SlidingWindowHistogram {
+    private final long slotMillis;
+    private final LogLinearHistogram[] slots;
+    private final AtomicLongArray epochs;
+
+    /**
+     * @param windowMillis 窗口长度(毫秒)
+     * @param buckets      窗口划分的时间片数量
+     */
+    public SlidingWindowHistogram(long windowMillis, int buckets) {
+        int n = Math.max(1, buckets);
+        this.slotMillis = Math.max(1L, windowMillis / n);
+        this.slots = new LogLinearHistogram[n];
+        this.epochs = new AtomicLongArray(n);
+        for (int i = 0; i < n; ++i) {
+            slots[i] = new LogLinearHistogram();
+            epochs.set(i, -1L);
+        }
+    }
+
+    /**
+     * 记录一个数值
+     *
+     * @param value 数值
+     * @param now   当前时间(毫秒)
+     */
+    public void record(long value, long now) {
+        long epoch = now / slotMillis;
+        int slot = (int) (epoch % slots.length);
+        if (epochs.get(slot) != epoch) {
+            advance(slot, epoch);
+        }
+        slots[slot].record(value);
+    }
+
+    /**
+     * 窗口内数据的快照
+     *
+     * @param now 当前时间(毫秒)
+     * @return 快照
+     */
+    public LogLinearHistogram.Snapshot snapshot(long now) {
+        long epoch = now / slotMillis;
+        LogLinearHistogram.Snapshot result = null;
+        for (int i = 0; i < slots.length; ++i) {
+            long slotEpoch = epochs.get(i);
+            if (slotEpoch > epoch - slots.length && slotEpoch <= epoch) {
+                LogLinearHistogram.Snapshot snapshot = slots[i].snapshot();
+                result = null == result ? snapshot : result.merge(snapshot);
+            }
+        }
+        return null == result ? new LogLinearHistogram().snapshot() : result;
+    }
+
+    private synchronized void advance(int slot, long epoch) {
+        if (epochs.get(slot) < epoch) {
+            slots[slot].reset();
+            epochs.set(slot, epoch);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.spin.cloud.gateway.support;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 流式压缩器
+ * <p>逐块压缩响应体，支持gzip与deflate(zlib格式)两种编码，输出可以直接作为对应Content-Encoding的响应体。
+ * Deflater占用较多的堆外内存，创建与销毁的开销都比较大，通过{@link Pool}复用</p>
+ * <p>一个实例只用于一个响应，close可能由取消信号在其他线程触发，因此各方法互斥执行。
+ * close之后Deflater已归还给其他响应使用，此后的update与finish不再产生任何数据</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class StreamingCompressor implements AutoCloseable {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 内容编码
+     */
+    public enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private final String value;
+
+        Encoding(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    private final Pool pool;
+    private final Encoding encoding;
+    private Deflater deflater;
+    private final CRC32 crc;
+    private final byte[] scratch = new byte[8192];
+    private byte[] input = new byte[0];
+    private boolean headerWritten;
+    private boolean finished;
+    private boolean closed;
+    private long bytesIn;
+    private long bytesOut;
+    private long nanos;
+
+    private StreamingCompressor(Pool pool, Encoding encoding, Deflater deflater) {
+        this.pool = pool;
+        this.encoding = encoding;
+        this.deflater = deflater;
+        this.crc = Encoding.GZIP == encoding ? new CRC32() : null;
+    }
+
+    /**
+     * 压缩一块数据，缓冲区的读取位置会被移动到末尾
+     *
+     * @param data 原始数据
+     * @return 本次产生的压缩数据，可能为空；已关闭时返回空数组
+     */
+    public synchronized byte[] update(ByteBuffer data) {
+        if (closed) {
+            return EMPTY;
+        }
+        long start = System.nanoTime();
+        int len = data.remaining();
+        byte[] bytes;
+        int offset;
+        if (data.hasArray()) {
+            bytes = data.array();
+            offset = data.arrayOffset() + data.position();
+            data.position(data.limit());
+        } else {
+            if (input.length < len) {
+                input = new byte[len];
+            }
+            data.get(input, 0, len);
+            bytes = input;
+            offset = 0;
+        }
+        bytesIn += len;
+        if (null != crc) {
+            crc.update(bytes, offset, len);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, len / 4));
+        writeHeader(out);
+        deflater.setInput(bytes, offset, len);
+        drain(out);
+        nanos += System.nanoTime() - start;
+        return collect(out);
+    }
+
+    /**
+     * 结束压缩，输出剩余的压缩数据(gzip编码还包括文件尾)
+     *
+     * @return 剩余的压缩数据，已关闭时返回空数组
+     */
+    public synchronized byte[] finish() {
+        if (closed) {
+            return EMPTY;
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeHeader(out);
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.write(scratch, 0, deflater.deflate(scratch));
+        }
+        if (null != crc) {
+            writeIntLe(out, (int) crc.getValue());
+            writeIntLe(out, (int) bytesIn);
+        }
+        finished = true;
+        nanos += System.nanoTime() - start;
+        return collect(out);
+    }
+
+    /**
+     * 归还Deflater，可以重复调用
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            pool.release(deflater, encoding);
+            deflater = null;
+        }
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * 压缩耗费的时间(纳秒)
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    private void drain(ByteArrayOutputStream out) {
+        int len;
+        while ((len = deflater.deflate(scratch)) > 0) {
+            out.write(scratch, 0, len);
+        }
+    }
+
+    private void writeHeader(ByteArrayOutputStream out) {
+        if (!headerWritten) {
+            headerWritten = true;
+            if (null != crc) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+        }
+    }
+
+    private byte[] collect(ByteArrayOutputStream out) {
+        bytesOut += out.size();
+        return out.toByteArray();
+    }
+
+    private static void writeIntLe(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+
+    /**
+     * Deflater池，gzip与deflate编码的Deflater格式不同(是否包含zlib头)，分别缓存
+     */
+    public static class Pool {
+        private final BlockingQueue<Deflater> gzip;
+        private final BlockingQueue<Deflater> deflate;
+
+        /**
+         * @param capacity 每种编码最多缓存的Deflater数量
+         */
+        public Pool(int capacity) {
+            this.gzip = new ArrayBlockingQueue<>(Math.max(1, capacity));
+            this.deflate = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        }
+
+        /**
+         * 取得一个压缩器，使用完毕后需要调用{@link StreamingCompressor#close()}
+         *
+         * @param encoding 内容编码
+         * @param level    压缩级别(1-9)
+         * @return 压缩器
+         */
+        public StreamingCompressor open(Encoding encoding, int level) {
+            Deflater deflater = queue(encoding).poll();
+            if (null == deflater) {
+                deflater = new Deflater(level, Encoding.GZIP == encoding);
+            } else {
+                deflater.setLevel(level);
+            }
+            return new StreamingCompressor(this, encoding, deflater);
+        }
+
+        public int size() {
+            return gzip.size() + deflate.size();
+        }
+
+        private void release(Deflater deflater, Encoding encoding) {
+            deflater.reset();
+            if (!queue(encoding).offer(deflater)) {
+                deflater.end();
+            }
+        }
+
+        private BlockingQueue<Deflater> queue(Encoding encoding) {
+            return Encoding.GZIP == encoding ? gzip : deflate;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮
+ * <p>将到期任务按到期刻度散列到固定数量的槽中，由调用方定时推进时间轮，推进时只处理经过的槽，
+ * 与任务总数无关。超过一圈的任务通过剩余圈数区分</p>
+ * <p>Created by xuweinan on 2019/12/12</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class TimingWheel<T> {
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timeout<T>>> buckets;
+    private final long startTime;
+    private long currentTick;
+    private int size;
+
+    /**
+     * 构造时间轮
+     *
+     * @param tickMillis 刻度时长(毫秒)
+     * @param wheelSize  槽数量，会被调整为2的幂
+     */
+    public TimingWheel(long tickMillis, int wheelSize) {
+        this.tickMillis = Math.max(1L, tickMillis);
+        int n = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.mask = n - 1;
+        this.buckets = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            buckets.add(new ArrayList<>(4));
+        }
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 添加到期任务
+     *
+     * @param item     任务
+     * @param deadline 到期时间戳
+     */
+    public synchronized void schedule(T item, long deadline) {
+        long tick = Math.max(currentTick, (deadline - startTime + tickMillis - 1) / tickMillis);
+        Timeout<T> timeout = new Timeout<>(item, (tick - currentTick) / buckets.size());
+        buckets.get((int) (tick & mask)).add(timeout);
+        ++size;
+    }
+
+    /**
+     * 推进时间轮至指定时间，依次回调所有到期的任务
+     *
+     * @param now     当前时间戳
+     * @param expired 到期回调
+     */
+    public synchronized void advance(long now, Consumer<T> expired) {
+        long targetTick = (now - startTime) / tickMillis;
+        while (currentTick <= targetTick) {
+            Iterator<Timeout<T>> it = buckets.get((int) (currentTick & mask)).iterator();
+            while (it.hasNext()) {
+                Timeout<T> timeout = it.next();
+                if (timeout.rounds <= 0) {
+                    it.remove();
+                    --size;
+                    expired.accept(timeout.item);
+                } else {
+                    --timeout.rounds;
+                }
+            }
+            ++currentTick;
+        }
+    }
+
+    /**
+     * 清空所有任务
+     */
+    public synchronized void clear() {
+        buckets.forEach(List::clear);
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static final class Timeout<T> {
+        private final T item;
+        private long rounds;
+
+        private Timeout(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.spin.cloud.gateway.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁令牌桶
+ * <p>采用GCRA(通用信元速率算法)实现，与令牌桶等价：只维护一个"理论到达时间"(TAT)，
+ * 每次获取令牌通过一次CAS完成，不需要加锁，也不会产生对象分配</p>
+ * <p>Created by xuweinan on 2019/12/13</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final double replenishRate;
+    private final int burstCapacity;
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final AtomicLong tat;
+    private final LongAdder consumed = new LongAdder();
+
+    /**
+     * 构造令牌桶
+     *
+     * @param replenishRate 每秒补充的令牌数
+     * @param burstCapacity 桶容量(允许的突发请求数)
+     */
+    public TokenBucket(double replenishRate, int burstCapacity) {
+        this.replenishRate = replenishRate;
+        this.burstCapacity = Math.max(1, burstCapacity);
+        this.emissionInterval = Math.max(1L, (long) (NANOS_PER_SECOND / Math.max(replenishRate, 1e-6)));
+        this.burstTolerance = emissionInterval * this.burstCapacity;
+        this.tat = new AtomicLong(System.nanoTime() - burstTolerance);
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @param now 当前时间(纳秒，{@link System#nanoTime()})
+     * @return 是否获取成功
+     */
+    public boolean tryAcquire(long now) {
+        for (; ; ) {
+            long current = tat.get();
+            long next = Math.max(current, now) + emissionInterval;
+            if (next - now > burstTolerance) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                consumed.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 扣除其他节点消耗的令牌，令牌不足时最多扣至桶空
+     *
+     * @param tokens 令牌数
+     * @param now    当前时间(纳秒)
+     */
+    public void consume(long tokens, long now) {
+        if (tokens <= 0) {
+            return;
+        }
+        for (; ; ) {
+            long current = tat.get();
+            long next = Math.min(Math.max(current, now) + tokens * emissionInterval, now + burstTolerance);
+            if (next <= current || tat.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 当前剩余令牌数
+     *
+     * @param now 当前时间(纳秒)
+     * @return 剩余令牌数
+     */
+    public long remaining(long now) {
+        long used = Math.max(tat.get(), now) - now;
+        return Math.max(0L, (burstTolerance - used) / emissionInterval);
+    }
+
+    /**
+     * 令牌桶是否已满(已满的令牌桶与不存在等价，可以安全回收)
+     *
+     * @param now 当前时间(纳秒)
+     * @return 是否已满
+     */
+    public boolean isIdle(long now) {
+        return tat.get() <= now;
+    }
+
+    /**
+     * 取出自上次调用以来本节点消耗的令牌数
+     *
+     * @return 令牌数
+     */
+    public long drainConsumed() {
+        return consumed.sumThenReset();
+    }
+
+    public boolean isSameConfig(double replenishRate, int burstCapacity) {
+        return Double.compare(this.replenishRate, replenishRate) == 0 && this.burstCapacity == Math.max(1, burstCapacity);
+    }
+
+    public double getReplenishRate() {
+        return replenishRate;
+    }
+
+    public int getBurstCapacity() {
+        return burstCapacity;
+    }
+}
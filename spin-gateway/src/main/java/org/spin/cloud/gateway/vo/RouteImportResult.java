@@ -0,0 +1,177 @@
+package org.spin.cloud.gateway.vo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 动态路由批量导入结果
+ * <p>包含每条路由的处理结果与整批导入的耗时</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RouteImportResult {
+
+    /**
+     * 单条路由的处理状态
+     */
+    public enum Status {
+        /**
+         * 新增
+         */
+        INSERTED,
+
+        /**
+         * 更新
+         */
+        UPDATED,
+
+        /**
+         * 与数据库中的定义相同，未写入
+         */
+        UNCHANGED,
+
+        /**
+         * 校验不通过，未写入
+         */
+        INVALID,
+
+        /**
+         * 校验通过，但因同批次存在无效路由(严格模式)未写入
+         */
+        SKIPPED
+    }
+
+    /**
+     * 是否已写入数据库并发布路由变更
+     */
+    private boolean applied;
+
+    private int inserted;
+
+    private int updated;
+
+    private int unchanged;
+
+    private int invalid;
+
+    /**
+     * 导入耗时(毫秒)，包括校验、写入与发布路由变更
+     */
+    private long cost;
+
+    private List<Item> items = new ArrayList<>();
+
+    public void add(String routeId, Status status, String message) {
+        items.add(new Item(routeId, status, message));
+        switch (status) {
+            case INSERTED:
+                ++inserted;
+                break;
+            case UPDATED:
+                ++updated;
+                break;
+            case UNCHANGED:
+                ++unchanged;
+                break;
+            case INVALID:
+                ++invalid;
+                break;
+            default:
+                // do nothing
+        }
+    }
+
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public void setApplied(boolean applied) {
+        this.applied = applied;
+    }
+
+    public int getTotal() {
+        return items.size();
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public int getInvalid() {
+        return invalid;
+    }
+
+    public long getCost() {
+        return cost;
+    }
+
+    public void setCost(long cost) {
+        this.cost = cost;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteImportResult{" +
+            "applied=" + applied +
+            ", total=" + items.size() +
+            ", inserted=" + inserted +
+            ", updated=" + updated +
+            ", unchanged=" + unchanged +
+            ", invalid=" + invalid +
+            ", cost=" + cost +
+            '}';
+    }
+
+    public static class Item {
+        private String routeId;
+        private Status status;
+        private String message;
+
+        public Item() {
+        }
+
+        public Item(String routeId, Status status, String message) {
+            this.routeId = routeId;
+            this.status = status;
+            this.message = message;
+        }
+
+        public String getRouteId() {
+            return routeId;
+        }
+
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.spin.cloud.gateway.vo;
+
+/**
+ * 动态路由加载结果
+ * <p>记录一次路由加载实际新增、更新、删除的路由数量</p>
+ * <p>Created by xuweinan on 2019/12/14</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RouteReloadResult {
+
+    /**
+     * 是否为增量加载
+     */
+    private boolean incremental;
+
+    /**
+     * 新增路由数
+     */
+    private int added;
+
+    /**
+     * 更新路由数
+     */
+    private int updated;
+
+    /**
+     * 删除路由数
+     */
+    private int deleted;
+
+    /**
+     * 未变化的路由数
+     */
+    private int unchanged;
+
+    /**
+     * 加载时间
+     */
+    private long reloadTime;
+
+    /**
+     * 加载耗时(毫秒)
+     */
+    private long cost;
+
+    public RouteReloadResult() {
+    }
+
+    public RouteReloadResult(boolean incremental) {
+        this.incremental = incremental;
+        this.reloadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 实际变更的路由数
+     *
+     * @return 路由数
+     */
+    public int getTouched() {
+        return added + updated + deleted;
+    }
+
+    public void incAdded() {
+        ++added;
+    }
+
+    public void incUpdated() {
+        ++updated;
+    }
+
+    public void incDeleted() {
+        ++deleted;
+    }
+
+    public void incUnchanged() {
+        ++unchanged;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public void setAdded(int added) {
+        this.added = added;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(int deleted) {
+        this.deleted = deleted;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public void setUnchanged(int unchanged) {
+        this.unchanged = unchanged;
+    }
+
+    public long getReloadTime() {
+        return reloadTime;
+    }
+
+    public void setReloadTime(long reloadTime) {
+        this.reloadTime = reloadTime;
+    }
+
+    public long getCost() {
+        return cost;
+    }
+
+    public void setCost(long cost) {
+        this.cost = cost;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteReloadResult{" +
+            "incremental=" + incremental +
+            ", added=" + added +
+            ", updated=" + updated +
+            ", deleted=" + deleted +
+            ", unchanged=" + unchanged +
+            ", cost=" + cost +
+            '}';
+    }
+}
@@ -2,6 +2,8 @@ package org.spin.cloud.gateway.vo;
 
 import org.springframework.cloud.gateway.route.RouteDefinition;
 
+import java.util.List;
+
 /**
  * 动态路由变更事件，用来触发集群的路由更新与同步
  * <p>DESCRIPTION</p>
@@ -12,7 +14,7 @@ import org.springframework.cloud.gateway.route.RouteDefinition;
  */
 public class RouteUpdateEvent {
     /**
-     * 事件类型：0-重新加载 1-新增 2-更新 3-删除
+     * 事件类型：0-重新加载 1-新增 2-更新 3-删除 4-清除响应缓存 5-批量新增或更新
      */
     private int opType;
 
@@ -20,6 +22,8 @@ public class RouteUpdateEvent {
 
     private RouteDefinition routeDefinition;
 
+    private List<RouteDefinition> routeDefinitions;
+
     public static RouteUpdateEvent forReload() {
         RouteUpdateEvent event = new RouteUpdateEvent();
         event.setOpType(0);
@@ -47,6 +51,32 @@ public class RouteUpdateEvent {
         return event;
     }
 
+    /**
+     * 清除响应缓存
+     *
+     * @param routeId 路由ID，为空时清除全部缓存
+     * @return 事件
+     */
+    public static RouteUpdateEvent forCachePurge(String routeId) {
+        RouteUpdateEvent event = new RouteUpdateEvent();
+        event.setOpType(4);
+        event.setRouteId(routeId);
+        return event;
+    }
+
+    /**
+     * 批量新增或更新路由
+     *
+     * @param definitions 路由定义
+     * @return 事件
+     */
+    public static RouteUpdateEvent forBatch(List<RouteDefinition> definitions) {
+        RouteUpdateEvent event = new RouteUpdateEvent();
+        event.setOpType(5);
+        event.setRouteDefinitions(definitions);
+        return event;
+    }
+
     public int getOpType() {
         return opType;
     }
@@ -70,4 +100,12 @@ public class RouteUpdateEvent {
     private void setRouteDefinition(RouteDefinition routeDefinition) {
         this.routeDefinition = routeDefinition;
     }
+
+    public List<RouteDefinition> getRouteDefinitions() {
+        return routeDefinitions;
+    }
+
+    private void setRouteDefinitions(List<RouteDefinition> routeDefinitions) {
+        this.routeDefinitions = routeDefinitions;
+    }
 }
@@ -1,57 +1,153 @@
 package org.spin.cloud.gateway.vo;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.lang.NonNull;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 服务白名单实例信息
- * <p>DESCRIPTION</p>
+ * <p>白名单以不可变快照的形式保存，刷新时构建新快照后整体替换，查询无锁且不会看到中间状态。</p>
+ * <p>快照在独立的后台线程中构建，由服务发现的心跳事件(注册中心缓存刷新)触发，
+ * 同时按固定间隔兜底刷新，不会在请求线程中访问注册中心</p>
  * <p>Created by xuweinan on 2019/3/15</p>
  *
  * @author xuweinan
  * @version 1.0
  */
-public class WhiteListInfo {
+public class WhiteListInfo implements ApplicationListener<HeartbeatEvent>, MeterBinder, DisposableBean {
     private static final Logger logger = LoggerFactory.getLogger(WhiteListInfo.class);
+    private static final long REFRESH_INTERVAL = 60_000L;
 
-    private Set<String> hosts = new HashSet<>();
-    private long updateTime;
-    private DiscoveryClient discoveryClient;
-    private final Object lock = new Object();
+    private final DiscoveryClient discoveryClient;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private volatile Snapshot snapshot;
 
     public WhiteListInfo(DiscoveryClient discoveryClient) {
         this.discoveryClient = discoveryClient;
-        updateHosts();
+        this.snapshot = buildSnapshot();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "whitelist-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_INTERVAL, REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     public boolean contains(String host) {
-        updateHosts();
-        return hosts.contains(host);
-    }
-
-    private boolean isExpired() {
-        return System.currentTimeMillis() - 60_000L > updateTime;
-    }
-
-    private void updateHosts() {
-        if (isExpired()) {
-            synchronized (lock) {
-                if (isExpired()) {
-                    logger.info("更新服务实例信息");
-                    hosts.clear();
-                    hosts.addAll(discoveryClient.getServices().stream().flatMap(i -> discoveryClient.getInstances(i).stream()).map(ServiceInstance::getHost).collect(Collectors.toSet()));
-                    hosts.add("localhost");
-                    hosts.add("127.0.0.1");
-                    hosts.add("0:0:0:0:0:0:0:1");
-                    updateTime = System.currentTimeMillis();
-                }
+        return null != host && snapshot.hosts.contains(host);
+    }
+
+    /**
+     * 异步刷新白名单，已有刷新任务在等待执行时不会重复提交
+     */
+    public void refreshAsync() {
+        if (refreshPending.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::refresh);
+            } catch (Exception e) {
+                refreshPending.set(false);
+                logger.warn("提交白名单刷新任务失败", e);
             }
         }
     }
+
+    @Override
+    public void onApplicationEvent(@NonNull HeartbeatEvent event) {
+        refreshAsync();
+    }
+
+    /**
+     * 当前快照的年龄(毫秒)
+     *
+     * @return 距离快照构建完成的时间
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - snapshot.updateTime;
+    }
+
+    /**
+     * 当前快照的构建耗时(毫秒)
+     *
+     * @return 构建耗时
+     */
+    public long getBuildCost() {
+        return snapshot.buildCost;
+    }
+
+    public long getUpdateTime() {
+        return snapshot.updateTime;
+    }
+
+    public int size() {
+        return snapshot.hosts.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("gateway.whitelist.age", this, WhiteListInfo::getAge).baseUnit("milliseconds").register(registry);
+        Gauge.builder("gateway.whitelist.build.cost", this, WhiteListInfo::getBuildCost).baseUnit("milliseconds").register(registry);
+        Gauge.builder("gateway.whitelist.size", this, WhiteListInfo::size).register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private void refresh() {
+        refreshPending.set(false);
+        try {
+            snapshot = buildSnapshot();
+        } catch (Exception e) {
+            logger.warn("更新服务实例信息失败，继续使用旧的白名单", e);
+        }
+    }
+
+    private Snapshot buildSnapshot() {
+        long start = System.currentTimeMillis();
+        Set<String> hosts = new HashSet<>();
+        for (String service : discoveryClient.getServices()) {
+            for (ServiceInstance instance : discoveryClient.getInstances(service)) {
+                hosts.add(instance.getHost());
+            }
+        }
+        hosts.add("localhost");
+        hosts.add("127.0.0.1");
+        hosts.add("0:0:0:0:0:0:0:1");
+        long now = System.currentTimeMillis();
+        logger.debug("更新服务实例信息: {}个地址, 耗时{}ms", hosts.size(), now - start);
+        return new Snapshot(Collections.unmodifiableSet(hosts), now, now - start);
+    }
+
+    /**
+     * 白名单快照
+     */
+    private static final class Snapshot {
+        private final Set<String> hosts;
+        private final long updateTime;
+        private final long buildCost;
+
+        private Snapshot(Set<String> hosts, long updateTime, long buildCost) {
+            this.hosts = hosts;
+            this.updateTime = updateTime;
+            this.buildCost = buildCost;
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+import org.spin.core.ErrorCode;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预编码错误响应测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/17</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class ErrorResponsesTest {
+
+    @Test
+    void testEncode() {
+        DefaultDataBufferFactory factory = new DefaultDataBufferFactory();
+        ErrorResponses.Template template = ErrorResponses.of(ErrorCode.ACCESS_DENINED, "禁止\"访问\"");
+        assertSame(template, ErrorResponses.of(ErrorCode.ACCESS_DENINED, "禁止\"访问\""));
+
+        for (int i = 0; i < 2; i++) {
+            String json = toString(template.encode(factory, null));
+            assertTrue(json.matches("\\{\"timestamp\":\\d+,\"status\":" + ErrorCode.ACCESS_DENINED.getCode()
+                + ",\"message\":\"禁止\\\\\"访问\\\\\"\"}"), json);
+        }
+
+        String json = toString(ErrorResponses.of(404, "请求的资源不存在", "404 NOT_FOUND").encode(factory, "/a/\"b\"\n"));
+        assertTrue(json.matches("\\{\"timestamp\":\\d+,\"path\":\"/a/\\\\\"b\\\\\"\\\\n\",\"status\":404,"
+            + "\"error\":\"404 NOT_FOUND\",\"message\":\"请求的资源不存在\"}"), json);
+
+        int cached = ErrorResponses.cachedSize();
+        ErrorResponses.Template dynamic = ErrorResponses.render(801, "远程服务连接超时: 10.0.0.1:8080", null);
+        assertNotSame(dynamic, ErrorResponses.render(801, "远程服务连接超时: 10.0.0.1:8080", null));
+        assertEquals(cached, ErrorResponses.cachedSize());
+        json = toString(dynamic.encode(factory, null));
+        assertTrue(json.matches("\\{\"timestamp\":\\d+,\"status\":801,\"message\":\"远程服务连接超时: 10.0.0.1:8080\"}"), json);
+    }
+
+    private static String toString(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应并发限制测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/20</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class GradientLimitTest {
+
+    @Test
+    void testAcquire() {
+        GradientLimit limit = new GradientLimit(new GradientLimit.Settings(2, 1, 10, 1.5, 0.2));
+        assertEquals(1, limit.acquire());
+        assertEquals(2, limit.acquire());
+        assertEquals(-1, limit.acquire());
+        limit.onIgnore();
+        assertEquals(2, limit.acquire());
+        assertEquals(2, limit.getInflight());
+    }
+
+    @Test
+    void testAdjust() {
+        GradientLimit limit = new GradientLimit(new GradientLimit.Settings(20, 4, 200, 1.5, 0.2));
+        // RTT稳定且并发较高时，限制逐步增长
+        for (int i = 0; i < 200; i++) {
+            int inflight = limit.acquire();
+            limit.onSuccess(10_000_000L, Math.max(inflight, limit.getLimit()));
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > 20);
+
+        // RTT显著上升时，限制收缩
+        for (int i = 0; i < 50; i++) {
+            int inflight = limit.acquire();
+            limit.onSuccess(100_000_000L, Math.max(inflight, limit.getLimit()));
+        }
+        assertTrue(limit.getLimit() < grown);
+        assertTrue(limit.getLimit() >= 4);
+
+        int before = limit.getLimit();
+        limit.acquire();
+        limit.onDropped();
+        assertTrue(limit.getLimit() <= before);
+        assertEquals(0, limit.getInflight());
+    }
+}
@@ -0,0 +1,54 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 实例负载均衡统计测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/21</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class InstanceStatsTest {
+
+    @Test
+    void testWindow() {
+        InstanceStats stats = new InstanceStats();
+        stats.start();
+        stats.start();
+        stats.start();
+        assertEquals(3, stats.getOutstanding());
+        stats.finish(10_000_000L, true);
+        stats.finish(30_000_000L, false);
+        stats.cancel();
+        assertEquals(0, stats.getOutstanding());
+        assertEquals(10_000_000L + 20_000_000L * 0.2, stats.getEwma(), 1);
+
+        long[] window = stats.rollWindow();
+        assertArrayEquals(new long[]{2, 1}, window);
+        assertArrayEquals(new long[]{0, 0}, stats.rollWindow());
+    }
+
+    @Test
+    void testEject() {
+        InstanceStats stats = new InstanceStats();
+        stats.eject(1000L, 100L, 250L);
+        assertTrue(stats.isEjected(1099L));
+        assertFalse(stats.isEjected(1100L));
+
+        // 连续摘除时长递增，且不超过上限
+        stats.eject(2000L, 100L, 250L);
+        assertTrue(stats.isEjected(2199L));
+        stats.eject(3000L, 100L, 250L);
+        assertTrue(stats.isEjected(3249L));
+        assertFalse(stats.isEjected(3250L));
+
+        stats.recover();
+        stats.eject(4000L, 100L, 250L);
+        assertFalse(stats.isEjected(4250L));
+        assertTrue(stats.isEjected(4249L));
+    }
+}
@@ -0,0 +1,83 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IP前缀树测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/12</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class IpPrefixTrieTest {
+
+    @Test
+    void testParse() {
+        assertEquals(0x0A000001L, IpPrefixTrie.parseIpv4("10.0.0.1", 0, 8));
+        assertEquals(-1L, IpPrefixTrie.parseIpv4("10.0.0.256", 0, 10));
+        assertEquals(-1L, IpPrefixTrie.parseIpv4("10.0.0", 0, 6));
+        assertEquals(-1L, IpPrefixTrie.parseIpv4("10..0.1", 0, 7));
+
+        long[] buf = new long[10];
+        assertTrue(IpPrefixTrie.parseIpv6("2001:db8::1", 0, 11, buf));
+        assertEquals(0x20010DB800000000L, buf[0]);
+        assertEquals(1L, buf[1]);
+        assertTrue(IpPrefixTrie.parseIpv6("::", 0, 2, buf));
+        assertEquals(0L, buf[0] | buf[1]);
+        assertTrue(IpPrefixTrie.parseIpv6("::ffff:10.0.0.1", 0, 15, buf));
+        assertEquals(0xFFFF0A000001L, buf[1]);
+        assertFalse(IpPrefixTrie.parseIpv6("1::2::3", 0, 7, buf));
+        assertFalse(IpPrefixTrie.parseIpv6("1:2:3:4:5:6:7", 0, 13, buf));
+        assertFalse(IpPrefixTrie.parseIpv6("1:", 0, 2, buf));
+
+        assertNull(IpPrefixTrie.parse("10.0.0.0/33"));
+        assertNull(IpPrefixTrie.parse("10.0.0.0/-1"));
+        assertNull(IpPrefixTrie.parse("2001:db8::/-8"));
+        assertNull(IpPrefixTrie.parse("abc"));
+        assertEquals(8, IpPrefixTrie.parse("10.0.0.0/8").getBits());
+    }
+
+    @Test
+    void testMatches() {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        long now = System.currentTimeMillis();
+        trie.put(IpPrefixTrie.parse("10.0.0.0/8"), IpPrefixTrie.PERMANENT);
+        trie.put(IpPrefixTrie.parse("192.168.1.10"), now + 1000L);
+        trie.put(IpPrefixTrie.parse("2001:db8::/32"), IpPrefixTrie.PERMANENT);
+
+        assertTrue(trie.matches("10.1.2.3", now));
+        assertTrue(trie.matches("::ffff:10.1.2.3", now));
+        assertFalse(trie.matches("11.0.0.1", now));
+        assertTrue(trie.matches("192.168.1.10", now));
+        assertFalse(trie.matches("192.168.1.10", now + 1000L));
+        assertFalse(trie.matches("192.168.1.11", now));
+        assertTrue(trie.matches("2001:db8:1::1", now));
+        assertTrue(trie.matches("[2001:db8::1%eth0]", now));
+        assertFalse(trie.matches("2001:db9::1", now));
+        assertFalse(trie.matches("unknown", now));
+        assertEquals(3, trie.size());
+
+        assertTrue(trie.removeIfExpireAt(IpPrefixTrie.parse("192.168.1.10"), now + 1000L));
+        assertFalse(trie.remove(IpPrefixTrie.parse("192.168.1.10")));
+        assertTrue(trie.remove(IpPrefixTrie.parse("10.0.0.0/8")));
+        assertFalse(trie.matches("10.1.2.3", now));
+        assertEquals(1, trie.size());
+    }
+
+    @Test
+    void testTimingWheel() {
+        TimingWheel<String> wheel = new TimingWheel<>(10L, 4);
+        long now = System.currentTimeMillis();
+        wheel.schedule("a", now + 20L);
+        wheel.schedule("b", now + 200L);
+        StringBuilder expired = new StringBuilder();
+        wheel.advance(now + 50L, expired::append);
+        assertEquals("a", expired.toString());
+        wheel.advance(now + 250L, expired::append);
+        assertEquals("ab", expired.toString());
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,60 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对数线性直方图测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/16</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class LogLinearHistogramTest {
+
+    @Test
+    void testBuckets() {
+        for (long v = 0; v < 100_000; v++) {
+            int idx = LogLinearHistogram.indexOf(v);
+            assertTrue(LogLinearHistogram.upperBoundOf(idx) >= v);
+            assertTrue(idx == 0 || LogLinearHistogram.upperBoundOf(idx - 1) < v);
+        }
+    }
+
+    @Test
+    void testPercentile() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10000L, snapshot.getCount());
+        assertEquals(10000L, snapshot.getMax());
+        assertEquals(5000.5, snapshot.getMean(), 0.001);
+        assertEquals(5000.0, snapshot.percentile(0.5), 5000 / 16.0);
+        assertEquals(9900.0, snapshot.percentile(0.99), 9900 / 16.0);
+        assertEquals(10000L, snapshot.percentile(1.0));
+    }
+
+    @Test
+    void testSlidingWindow() {
+        SlidingWindowHistogram histogram = new SlidingWindowHistogram(60_000L, 6);
+        long now = 1_000_000L;
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(100_000L, now);
+        }
+        assertEquals(100_000L, histogram.snapshot(now).percentile(0.5), 100_000 / 16.0);
+
+        // 慢请求移出窗口后，分位数只反映最近的数据
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100L, now + 30_000L);
+        }
+        assertEquals(100_000L, histogram.snapshot(now + 30_000L).percentile(0.5), 100_000 / 16.0);
+        LogLinearHistogram.Snapshot snapshot = histogram.snapshot(now + 65_000L);
+        assertEquals(10L, snapshot.getCount());
+        assertEquals(100L, snapshot.percentile(0.99));
+        assertEquals(0L, histogram.snapshot(now + 200_000L).getCount());
+    }
+}
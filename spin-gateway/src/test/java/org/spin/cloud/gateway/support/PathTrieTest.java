@@ -0,0 +1,60 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 路径前缀树测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/15</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class PathTrieTest {
+
+    @Test
+    void testMatch() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.insert("/api/v1/user/list", "list");
+        trie.insert("/api/v1/user/{id}", "detail");
+        trie.insert("/api/v1/user/*.json", "json");
+        trie.insert("/api/v1/file/**", "file");
+        trie.insert("/api/**/export", "export");
+        trie.insert("/api/v?/order", "order");
+        trie.compact();
+
+        assertEquals(6, trie.size());
+        assertEquals("list", trie.match("/api/v1/user/list"));
+        assertEquals("list", trie.match("/api/v1/user/list/"));
+        assertEquals("detail", trie.match("/api/v1/user/123"));
+        assertEquals("json", trie.match("/api/v1/user/a.json"));
+        assertEquals("file", trie.match("/api/v1/file"));
+        assertEquals("file", trie.match("/api/v1/file/a/b/c.png"));
+        assertEquals("export", trie.match("/api/v2/user/export"));
+        assertEquals("order", trie.match("/api/v2/order"));
+        assertNull(trie.match("/api/v10/order"));
+        assertNull(trie.match("/api/v1/user"));
+        assertNull(trie.match("/other"));
+    }
+
+    @Test
+    void testMatchAll() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.insert("/api/**", "api");
+        trie.insert("/api/v1/user/{id}", "detail");
+        trie.insert("/api/**/export", "export");
+        trie.insert("/**", "all");
+        trie.insert("/other/**", "other");
+        trie.compact();
+
+        Set<String> matched = new HashSet<>();
+        trie.matchAll("/api/v1/user/export", matched::add);
+        assertEquals(new HashSet<>(Arrays.asList("api", "detail", "export", "all")), matched);
+    }
+}
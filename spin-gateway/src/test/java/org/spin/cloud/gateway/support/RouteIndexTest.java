@@ -0,0 +1,46 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 路由索引测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RouteIndexTest {
+
+    @Test
+    void testCandidates() {
+        RouteIndex index = RouteIndex.builder(5)
+            .path(0, "/user/**").methods(0, HttpMethod.GET)
+            .path(1, "/user/{id}")
+            .path(1, "/member/{id}")
+            .host(2, "api.example.com")
+            .sequential(3)
+            .path(4, "/order/**")
+            .build();
+
+        assertEquals(bits(0, 1, 3), index.candidates("/user/1", "localhost", HttpMethod.GET));
+        assertEquals(bits(1, 3), index.candidates("/user/1", "localhost", HttpMethod.POST));
+        assertEquals(bits(1, 2, 3), index.candidates("/member/1", "api.example.com", HttpMethod.POST));
+        assertEquals(bits(3), index.candidates("/none", null, null));
+        assertEquals(bits(1, 2, 3, 4), index.candidates(null, null, HttpMethod.PUT));
+        assertEquals(1, index.sequentialSize());
+    }
+
+    private static BitSet bits(int... positions) {
+        BitSet bits = new BitSet();
+        for (int position : positions) {
+            bits.set(position);
+        }
+        return bits;
+    }
+}
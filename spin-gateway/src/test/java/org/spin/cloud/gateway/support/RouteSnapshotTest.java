@@ -0,0 +1,53 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spin.cloud.gateway.repository.tables.records.GatewayRouteDefinitionRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 路由快照测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RouteSnapshotTest {
+
+    @Test
+    void testReadWrite(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("routes.snapshot");
+        assertNull(RouteSnapshot.read(file));
+
+        LocalDateTime time = LocalDateTime.of(2019, 12, 22, 10, 30, 15);
+        GatewayRouteDefinitionRecord user = new GatewayRouteDefinitionRecord("user", "lb://user-service",
+            "[{\"name\":\"Path\",\"args\":{\"_genkey_0\":\"/user/**\"}}]", "[]", time, time, 3, 1, 0);
+        GatewayRouteDefinitionRecord order = new GatewayRouteDefinitionRecord("order", "lb://order-service",
+            "[]", null, null, null, null, 1, 1);
+        RouteSnapshot.write(file, Arrays.asList(user, order));
+
+        List<GatewayRouteDefinitionRecord> records = RouteSnapshot.read(file);
+        assertNotNull(records);
+        assertEquals(2, records.size());
+        assertEquals("user", records.get(0).getId());
+        assertEquals(user.getPredicates(), records.get(0).getPredicates());
+        assertEquals(Integer.valueOf(3), records.get(0).getVersion());
+        assertEquals(time, records.get(0).getUpdateTime());
+        assertNull(records.get(1).getVersion());
+        assertNull(records.get(1).getFilters());
+
+        // 不完整的快照视为不存在
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Files.write(file, lines.subList(0, 2), StandardCharsets.UTF_8);
+        assertNull(RouteSnapshot.read(file));
+    }
+}
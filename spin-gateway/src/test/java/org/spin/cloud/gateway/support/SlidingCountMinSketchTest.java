@@ -0,0 +1,51 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 滑动窗口Count-Min Sketch测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/22</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class SlidingCountMinSketchTest {
+
+    @Test
+    void testEstimate() {
+        SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, 4, 6, 1000L);
+        long a = SlidingCountMinSketch.hash("10.0.0.1");
+        long b = SlidingCountMinSketch.hash("10.0.0.2");
+        for (int i = 0; i < 100; ++i) {
+            sketch.add(a, 500L);
+        }
+        assertEquals(101, sketch.add(a, 500L));
+        assertTrue(sketch.estimate(b) < 101);
+        for (int i = 0; i < 500; ++i) {
+            sketch.add(SlidingCountMinSketch.hash("192.168.1." + i), 500L);
+        }
+        assertTrue(sketch.estimate(a) >= 101);
+    }
+
+    @Test
+    void testWindow() {
+        SlidingCountMinSketch sketch = new SlidingCountMinSketch(64, 2, 3, 1000L);
+        long key = SlidingCountMinSketch.hash("token");
+        for (long now = 0; now < 3000L; now += 500L) {
+            sketch.rotate(now);
+            sketch.add(key, now);
+        }
+        assertEquals(6, sketch.estimate(key));
+
+        // 第一个时间片移出窗口
+        sketch.rotate(3000L);
+        assertEquals(4, sketch.estimate(key));
+        sketch.rotate(4000L);
+        assertEquals(2, sketch.estimate(key));
+        sketch.rotate(5000L);
+        assertEquals(0, sketch.estimate(key));
+    }
+}
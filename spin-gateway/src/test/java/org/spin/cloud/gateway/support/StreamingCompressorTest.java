@@ -0,0 +1,90 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式压缩器测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class StreamingCompressorTest {
+
+    @Test
+    void testRoundTrip() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; ++i) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"route-").append(i % 17).append("\"},");
+        }
+        byte[] content = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+
+        StreamingCompressor.Pool pool = new StreamingCompressor.Pool(1);
+        for (StreamingCompressor.Encoding encoding : StreamingCompressor.Encoding.values()) {
+            // 连续两次，第二次使用池中归还的Deflater
+            for (int round = 0; round < 2; ++round) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (StreamingCompressor compressor = pool.open(encoding, 6)) {
+                    for (int pos = 0; pos < content.length; pos += 1000) {
+                        int len = Math.min(1000, content.length - pos);
+                        ByteBuffer chunk = round == 0 ? ByteBuffer.wrap(content, pos, len) : ByteBuffer.allocateDirect(len);
+                        if (round == 1) {
+                            chunk.put(content, pos, len).flip();
+                        }
+                        out.write(compressor.update(chunk));
+                        assertFalse(chunk.hasRemaining());
+                    }
+                    out.write(compressor.finish());
+                    assertEquals(content.length, compressor.getBytesIn());
+                    assertEquals(out.size(), compressor.getBytesOut());
+                }
+                assertTrue(out.size() < content.length / 5);
+                InputStream in = StreamingCompressor.Encoding.GZIP == encoding
+                    ? new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))
+                    : new InflaterInputStream(new ByteArrayInputStream(out.toByteArray()));
+                assertArrayEquals(content, readAll(in));
+            }
+        }
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    void testUseAfterClose() throws IOException {
+        byte[] content = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        StreamingCompressor.Pool pool = new StreamingCompressor.Pool(1);
+        StreamingCompressor closed = pool.open(StreamingCompressor.Encoding.GZIP, 6);
+        closed.close();
+
+        // 已归还的Deflater被其他响应取得后，迟到的update/finish不能影响它
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StreamingCompressor compressor = pool.open(StreamingCompressor.Encoding.GZIP, 6)) {
+            out.write(compressor.update(ByteBuffer.wrap(content)));
+            assertEquals(0, closed.update(ByteBuffer.wrap(new byte[]{1, 2, 3})).length);
+            assertEquals(0, closed.finish().length);
+            out.write(compressor.finish());
+        }
+        assertArrayEquals(content, readAll(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+        }
+        return out.toByteArray();
+    }
+}
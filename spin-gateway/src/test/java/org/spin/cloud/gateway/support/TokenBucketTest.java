@@ -0,0 +1,47 @@
+package org.spin.cloud.gateway.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 令牌桶测试
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2019/12/13</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class TokenBucketTest {
+
+    @Test
+    void testAcquire() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        assertEquals(5L, bucket.remaining(now));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(now));
+        }
+        assertFalse(bucket.tryAcquire(now));
+        assertFalse(bucket.isIdle(now));
+
+        // 100ms补充一个令牌
+        assertTrue(bucket.tryAcquire(now + 100_000_000L));
+        assertFalse(bucket.tryAcquire(now + 100_000_000L));
+        assertTrue(bucket.isIdle(now + 1_000_000_000L));
+        assertEquals(6L, bucket.drainConsumed());
+        assertEquals(0L, bucket.drainConsumed());
+    }
+
+    @Test
+    void testConsume() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        bucket.consume(3, now);
+        assertEquals(2L, bucket.remaining(now));
+        bucket.consume(100, now);
+        assertEquals(0L, bucket.remaining(now));
+        assertFalse(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now + 100_000_000L));
+    }
+}